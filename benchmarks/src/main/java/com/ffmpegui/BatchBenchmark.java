@@ -0,0 +1,372 @@
+package com.ffmpegui;
+
+import com.sun.management.OperatingSystemMXBean;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * @description: 端到端批处理吞吐基准：合成素材 + 替身 ffmpeg，按不同并发数跑各种操作，报告每小时文件数、CPU 和调度开销
+ * 每次运行都在独立的子进程中执行 BatchCli（{@link BatchRunner}），PATH 前面放替身 ffmpeg/ffprobe，
+ * user.home 指向空目录（探测缓存从冷开始）。替身按固定倍速模拟编码时间，理想耗时 = 替身模拟秒数之和 / 并发数，
+ * 实际耗时超出的部分就是编排层（启动、探测、排队、校验、进程管理）的开销，这一项变大说明调度变慢了。
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.ffmpegui.BatchBenchmark --files 24 --duration 120 --jobs 1,2,4
+ * java -cp benchmarks/target/benchmarks.jar com.ffmpegui.BatchBenchmark --mode real --files 4 --duration 20
+ * </pre>
+ */
+public final class BatchBenchmark {
+    private static final List<String> ALL_OPERATIONS =
+            List.of("compress", "remove-subtitle", "remove-trailer", "combined", "splice");
+    // 替身启动耗时的测量次数
+    private static final int LAUNCH_SAMPLES = 5;
+    private static final long CPU_SAMPLE_MILLIS = 250;
+    private static final Pattern FINISHED = Pattern.compile(
+            "\"event\":\"batch_finished\",\"total\":(\\d+),\"done\":(\\d+),\"failed\":(\\d+)");
+
+    private static final String USAGE = """
+            用法: java -cp benchmarks.jar com.ffmpegui.BatchBenchmark [选项]
+              --mode <stub|real>     stub（默认）用替身 ffmpeg，real 用真实 ffmpeg 和 lavfi 合成素材
+              --files <n>            每种操作的文件数，默认 24
+              --duration <秒>        素材的基准时长，实际在 0.5~1.5 倍之间，默认 120
+              --jobs <n,...>         要测的并发数，默认 1,2,4
+              --ops <操作,...>       compress,remove-subtitle,remove-trailer,combined,splice，默认全部
+              --speed <倍数>         替身的编码速度（媒体秒/实际秒），默认 60，流复制再快 10 倍
+              --ffmpeg-args <参数>   传给 BatchCli 的压缩参数
+              --work <目录>          工作目录，默认新建临时目录，结束后删除
+              --keep                 保留工作目录（素材、输出、每次运行的事件和日志）
+            """;
+
+    // 一次运行的结果
+    private record Result(String operation, int jobs, int files, int done, int failed, double wallSeconds,
+                          double cpuSeconds, double gcSeconds, double machineCpu, double simulatedSeconds,
+                          int ffmpegCalls, int probeCalls) {
+        double filesPerHour() {
+            return wallSeconds > 0 ? done * 3600 / wallSeconds : 0;
+        }
+
+        // 每个并发槽位上理想情况下的耗时，真实模式下未知
+        double idealSeconds() {
+            return Double.isNaN(simulatedSeconds) ? Double.NaN : simulatedSeconds / jobs;
+        }
+
+        double overheadSeconds() {
+            return wallSeconds - idealSeconds();
+        }
+
+        // 平均每个文件在槽位上额外占用的时间
+        double overheadMillisPerFile() {
+            return files == 0 ? Double.NaN : overheadSeconds() * jobs / files * 1000;
+        }
+    }
+
+    private final boolean stub;
+    private final int files;
+    private final double baseSeconds;
+    private final List<Integer> jobLevels;
+    private final List<String> operations;
+    private final double speed;
+    private final String ffmpegArgs;
+    private final Path work;
+    private final Path bin;
+    private final Path java = Path.of(System.getProperty("java.home"), "bin", "java");
+    private final String classPath = System.getProperty("java.class.path");
+
+    private BatchBenchmark(Map<String, String> options, Path work) {
+        this.stub = !options.getOrDefault("--mode", "stub").equals("real");
+        this.files = Integer.parseInt(options.getOrDefault("--files", "24"));
+        this.baseSeconds = Double.parseDouble(options.getOrDefault("--duration", "120"));
+        this.jobLevels = Stream.of(options.getOrDefault("--jobs", "1,2,4").split(","))
+                .map(String::trim).map(Integer::parseInt).toList();
+        this.operations = options.containsKey("--ops")
+                ? Stream.of(options.get("--ops").split(",")).map(String::trim).toList() : ALL_OPERATIONS;
+        this.speed = Double.parseDouble(options.getOrDefault("--speed", String.valueOf(StubMedia.DEFAULT_SPEED)));
+        this.ffmpegArgs = options.get("--ffmpeg-args");
+        this.work = work;
+        this.bin = work.resolve("bin");
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--keep")) {
+                options.put("--keep", "");
+            } else if (args[i].startsWith("--") && i + 1 < args.length) {
+                options.put(args[i], args[++i]);
+            } else {
+                System.err.print(USAGE);
+                System.exit(2);
+            }
+        }
+        for (String operation : options.getOrDefault("--ops", "").split(",")) {
+            if (!operation.isBlank() && !ALL_OPERATIONS.contains(operation.trim())) {
+                System.err.println("未知操作: " + operation);
+                System.exit(2);
+            }
+        }
+
+        Path work = options.containsKey("--work")
+                ? Files.createDirectories(Path.of(options.get("--work"))) : Files.createTempDirectory("ffmpegui-bench");
+        BatchBenchmark benchmark = new BatchBenchmark(options, work);
+        if (benchmark.stub && System.getProperty("os.name").startsWith("Windows")) {
+            System.err.println("替身模式需要 POSIX shell，Windows 上请用 --mode real");
+            System.exit(2);
+        }
+        try {
+            benchmark.run();
+        } finally {
+            if (!options.containsKey("--keep")) {
+                ScratchManager.deleteRecursively(work);
+            } else {
+                System.out.println("工作目录: " + work);
+            }
+        }
+    }
+
+    private void run() throws Exception {
+        System.out.printf(Locale.ROOT, "模式 %s，每种操作 %d 个文件，基准时长 %.0f 秒，CPU %d 核%n",
+                stub ? "stub（%.0fx）".formatted(speed) : "real", files, baseSeconds,
+                Runtime.getRuntime().availableProcessors());
+
+        SyntheticCorpus corpus = new SyntheticCorpus(stub, StubMedia.DEFAULT_BYTES_PER_SECOND);
+        Path plain = work.resolve("corpus");
+        Path pairs = work.resolve("pairs");
+        long start = System.nanoTime();
+        if (operations.stream().anyMatch(operation -> !operation.equals("splice"))) {
+            corpus.generate(plain, files, baseSeconds);
+        }
+        if (operations.contains("splice")) {
+            corpus.generatePairs(pairs, files, baseSeconds);
+        }
+        System.out.printf(Locale.ROOT, "生成素材用时 %.1f 秒%n", (System.nanoTime() - start) / 1e9);
+
+        double launchMillis = Double.NaN;
+        if (stub) {
+            installStubs();
+            launchMillis = measureLaunch();
+            System.out.printf(Locale.ROOT, "替身进程启动耗时约 %.0f ms/次（计入调度开销）%n", launchMillis);
+        }
+
+        List<Result> results = new ArrayList<>();
+        for (String operation : operations) {
+            for (int jobs : jobLevels) {
+                Result result = runOnce(operation, jobs, operation.equals("splice") ? pairs : plain);
+                results.add(result);
+                System.out.printf(Locale.ROOT, "  %s × %d: %.1f 秒，成功 %d，失败 %d%n",
+                        operation, jobs, result.wallSeconds(), result.done(), result.failed());
+            }
+        }
+        printTable(results, launchMillis);
+    }
+
+    // 写出 ffmpeg/ffprobe 两个 sh 脚本，用当前 JVM 和类路径启动 StubMedia
+    private void installStubs() throws IOException {
+        Files.createDirectories(bin);
+        for (String command : List.of("ffmpeg", "ffprobe")) {
+            Path script = bin.resolve(command);
+            Files.writeString(script, """
+                    #!/bin/sh
+                    exec "%s" -XX:TieredStopAtLevel=1 -XX:+UseSerialGC -XX:-UsePerfData -Xshare:auto \
+                    -cp "%s" com.ffmpegui.StubMedia %s "$@"
+                    """.formatted(java, classPath, command), StandardCharsets.UTF_8);
+            if (!script.toFile().setExecutable(true)) {
+                throw new IOException("无法设置可执行权限: " + script);
+            }
+        }
+    }
+
+    private double measureLaunch() throws IOException, InterruptedException {
+        long total = 0;
+        for (int i = 0; i < LAUNCH_SAMPLES; i++) {
+            long begin = System.nanoTime();
+            Process process = new ProcessBuilder(bin.resolve("ffprobe").toString(), "-version")
+                    .redirectErrorStream(true).start();
+            try (InputStream in = process.getInputStream()) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            process.waitFor();
+            total += System.nanoTime() - begin;
+        }
+        return total / 1e6 / LAUNCH_SAMPLES;
+    }
+
+    private Result runOnce(String operation, int jobs, Path folder) throws IOException, InterruptedException {
+        // 上一次运行的输出和任务日志
+        Path previous = folder.resolve("OK");
+        if (Files.isDirectory(previous)) {
+            ScratchManager.deleteRecursively(previous);
+        }
+        try (Stream<Path> entries = Files.list(folder)) {
+            for (Path entry : entries.filter(path -> path.getFileName().toString().startsWith(".ffmpeg_batch_")).toList()) {
+                Files.deleteIfExists(entry);
+            }
+        }
+        String name = operation + "-" + jobs;
+        Path runDir = Files.createDirectories(work.resolve("runs").resolve(name));
+        Path home = Files.createDirectories(runDir.resolve("home"));
+        Path stubLog = runDir.resolve("stub-calls.txt");
+        Path report = runDir.resolve("report.properties");
+        Path events = runDir.resolve("events.jsonl");
+        Files.deleteIfExists(stubLog);
+
+        List<String> command = new ArrayList<>(List.of(java.toString(), "-Duser.home=" + home,
+                "-D" + BatchRunner.REPORT_PROPERTY + "=" + report, "-cp", classPath, "com.ffmpegui.BatchRunner"));
+        command.addAll(operationArgs(operation));
+        command.addAll(List.of("--folder", folder.toString(), "--jobs", String.valueOf(jobs), "--no-resume",
+                "--scratch-dir", work.resolve("scratch").toString()));
+        if (ffmpegArgs != null) {
+            command.addAll(List.of("--ffmpeg-args", ffmpegArgs));
+        }
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectOutput(events.toFile());
+        pb.redirectError(runDir.resolve("stderr.log").toFile());
+        if (stub) {
+            Map<String, String> env = pb.environment();
+            env.put("PATH", bin + File.pathSeparator + env.getOrDefault("PATH", ""));
+            env.put(StubMedia.SPEED_ENV, String.valueOf(speed));
+            env.put(StubMedia.LOG_ENV, stubLog.toString());
+        }
+
+        CpuSampler sampler = new CpuSampler();
+        sampler.start();
+        long begin = System.nanoTime();
+        Process process = pb.start();
+        process.waitFor();
+        double wall = (System.nanoTime() - begin) / 1e9;
+        double machineCpu = sampler.stop();
+
+        Properties props = new Properties();
+        if (Files.isRegularFile(report)) {
+            try (InputStream in = Files.newInputStream(report)) {
+                props.load(in);
+            }
+        }
+        int done = 0;
+        int failed = 0;
+        int total = 0;
+        Matcher matcher = FINISHED.matcher(Files.readString(events, StandardCharsets.UTF_8));
+        if (matcher.find()) {
+            total = Integer.parseInt(matcher.group(1));
+            done = Integer.parseInt(matcher.group(2));
+            failed = Integer.parseInt(matcher.group(3));
+        }
+
+        double simulated = Double.NaN;
+        int ffmpegCalls = 0;
+        int probeCalls = 0;
+        if (stub) {
+            simulated = 0;
+            if (Files.isRegularFile(stubLog)) {
+                for (String line : Files.readAllLines(stubLog, StandardCharsets.UTF_8)) {
+                    String[] fields = line.trim().split(" ");
+                    if (fields.length != 2) {
+                        continue;
+                    }
+                    if (fields[0].equals("ffmpeg")) {
+                        ffmpegCalls++;
+                        simulated += Double.parseDouble(fields[1]);
+                    } else {
+                        probeCalls++;
+                    }
+                }
+            }
+        }
+        return new Result(operation, jobs, total, done, failed, wall,
+                Long.parseLong(props.getProperty("cpuNanos", "0")) / 1e9,
+                Long.parseLong(props.getProperty("gcMillis", "0")) / 1e3,
+                machineCpu, simulated, ffmpegCalls, probeCalls);
+    }
+
+    private static List<String> operationArgs(String operation) {
+        String lastDuration = String.format(Locale.ROOT, "%.1f", SyntheticCorpus.TRAILER_SECONDS);
+        return switch (operation) {
+            case "compress" -> List.of("compress");
+            case "remove-subtitle" -> List.of("remove-subtitle", "--delogo", SyntheticCorpus.SUBTITLE_BOX);
+            case "remove-trailer" -> List.of("remove-trailer", "--delogo", SyntheticCorpus.TRAILER_BOX,
+                    "--last-duration", lastDuration);
+            case "combined" -> List.of("combined", "--steps", "remove-subtitle,remove-trailer,compress",
+                    "--delogo", SyntheticCorpus.SUBTITLE_BOX + "&" + SyntheticCorpus.TRAILER_BOX,
+                    "--last-duration", lastDuration, "--trim-start", "1", "--trim-end", "1");
+            case "splice" -> List.of("splice", "--splice-head", "--splice-tail");
+            default -> throw new IllegalArgumentException("未知操作: " + operation);
+        };
+    }
+
+    private void printTable(List<Result> results, double launchMillis) {
+        System.out.println();
+        System.out.println("操作              并发  文件  成功  失败   耗时(s)   文件/小时  调度CPU(s)  调度CPU%  GC(s)  整机CPU%"
+                + "   理想(s)   开销(s)  开销ms/文件  ffmpeg  ffprobe");
+        for (Result r : results) {
+            System.out.printf(Locale.ROOT,
+                    "%-16s %5d %5d %5d %5d %9.1f %11.0f %11.2f %9.1f %6.2f %9.1f %9s %9s %12s %7d %8d%n",
+                    r.operation(), r.jobs(), r.files(), r.done(), r.failed(), r.wallSeconds(), r.filesPerHour(),
+                    r.cpuSeconds(), r.wallSeconds() > 0 ? r.cpuSeconds() / r.wallSeconds() * 100 : 0,
+                    r.gcSeconds(), r.machineCpu() * 100,
+                    format(r.idealSeconds(), "%.1f"), format(r.overheadSeconds(), "%.1f"),
+                    format(r.overheadMillisPerFile(), "%.0f"), r.ffmpegCalls(), r.probeCalls());
+        }
+        System.out.println();
+        System.out.println("调度CPU% 是 BatchCli 进程的 CPU 时间占耗时的比例（100% = 一个核），不含 ffmpeg 进程；");
+        System.out.println("理想耗时 = 替身模拟的编码秒数之和 / 并发数，开销 = 耗时 - 理想耗时，包括 JVM 启动、探测、校验和排队。");
+        if (!Double.isNaN(launchMillis)) {
+            System.out.printf(Locale.ROOT, "开销中包括替身进程的启动（约 %.0f ms/次 × (ffmpeg + ffprobe 次数) / 并发数）。%n",
+                    launchMillis);
+        }
+    }
+
+    private static String format(double value, String pattern) {
+        return Double.isNaN(value) ? "-" : String.format(Locale.ROOT, pattern, value);
+    }
+
+    // 运行期间定时采样整机 CPU 使用率
+    private static final class CpuSampler {
+        private final OperatingSystemMXBean os = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        private final AtomicBoolean running = new AtomicBoolean(true);
+        private final Thread thread = new Thread(this::sample, "cpu-sampler");
+        private double sum;
+        private int count;
+
+        void start() {
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        // 停止采样，返回平均使用率（0~1）
+        double stop() throws InterruptedException {
+            running.set(false);
+            thread.join();
+            return count == 0 ? Double.NaN : sum / count;
+        }
+
+        private void sample() {
+            while (running.get()) {
+                try {
+                    Thread.sleep(CPU_SAMPLE_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                double load = os.getCpuLoad();
+                if (load >= 0) {
+                    sum += load;
+                    count++;
+                }
+            }
+        }
+    }
+}
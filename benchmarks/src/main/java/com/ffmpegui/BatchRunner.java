@@ -0,0 +1,54 @@
+package com.ffmpegui;
+
+import com.sun.management.OperatingSystemMXBean;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * @description: 端到端基准测试的子进程入口：执行一次 BatchCli，结束时把本进程的 CPU 时间写入报告文件
+ * 由 {@link BatchBenchmark} 以 -Dbench.report=文件 启动，参数与 BatchCli 相同。
+ * 子进程的 CPU 时间只包括调度、探测解析、校验和日志等 Java 侧的开销，不包括 ffmpeg 进程。
+ */
+public final class BatchRunner {
+    static final String REPORT_PROPERTY = "bench.report";
+
+    private BatchRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int exitCode;
+        try {
+            exitCode = BatchCli.run(args);
+        } catch (BatchCli.UsageException e) {
+            System.err.println("参数错误: " + e.getMessage());
+            exitCode = BatchCli.EXIT_USAGE;
+        }
+        writeReport(exitCode);
+        System.exit(exitCode);
+    }
+
+    private static void writeReport(int exitCode) throws IOException {
+        String report = System.getProperty(REPORT_PROPERTY);
+        if (report == null) {
+            return;
+        }
+        OperatingSystemMXBean os = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcMillis += Math.max(0, gc.getCollectionTime());
+        }
+        Properties props = new Properties();
+        props.setProperty("exitCode", String.valueOf(exitCode));
+        props.setProperty("cpuNanos", String.valueOf(os.getProcessCpuTime()));
+        props.setProperty("uptimeMillis", String.valueOf(ManagementFactory.getRuntimeMXBean().getUptime()));
+        props.setProperty("gcMillis", String.valueOf(gcMillis));
+        try (OutputStream out = Files.newOutputStream(Path.of(report))) {
+            props.store(out, null);
+        }
+    }
+}
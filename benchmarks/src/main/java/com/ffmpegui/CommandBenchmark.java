@@ -0,0 +1,92 @@
+package com.ffmpegui;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @description: processFile 的命令构建：delogo 滤镜（String.formatted + 文本块）、压缩参数拆分和命令列表
+ * 只构建命令，不启动 ffmpeg。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CommandBenchmark {
+    private static final String INPUT = "/data/in/S01/第01集.mp4";
+    private static final String OUTPUT = "/data/in/S01/OK/第01集_w.mp4";
+    private static final String DURATION = "2712.48";
+
+    // 单个区域、两个区域（小字 + 未完待续）、四个区域
+    @Param({"98,1169,879,155", "369,576,280,150&98,1169,879,155",
+            "10,10,200,80&369,576,280,150&1500,40,300,90&98,1169,879,155"})
+    public String delogoParams;
+
+    private JobScheduler scheduler;
+    private MediaProcessor mediaProcessor;
+    private Path scratchRoot;
+
+    @Setup
+    public void setUp() throws IOException {
+        scheduler = new JobScheduler(1);
+        scratchRoot = Files.createTempDirectory("bench-scratch");
+        ScratchManager scratch = new ScratchManager(scratchRoot, 0, scheduler.processes(), line -> {
+        });
+        mediaProcessor = new MediaProcessor(scheduler, scratch, line -> {
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        ScratchManager.deleteRecursively(scratchRoot);
+    }
+
+    // 去小字：所有区域整集生效
+    @Benchmark
+    public String subtitleFilter() {
+        return mediaProcessor.buildDelogoFilter(null, delogoParams, "", null);
+    }
+
+    // 去未完待续：最后一个区域只在结尾生效，多一次 %.2f 格式化
+    @Benchmark
+    public String trailerFilter() {
+        return mediaProcessor.buildDelogoFilter(null, delogoParams, "2.2", DURATION);
+    }
+
+    @Benchmark
+    public List<String> splitArgs() {
+        return MediaProcessor.splitArgs(MediaProcessor.DEFAULT_COMPRESS_PARAMS);
+    }
+
+    // 与 processFile 中不裁剪、不分段时的命令相同
+    @Benchmark
+    public List<String> trailerCommand() {
+        String delogoFilter = mediaProcessor.buildDelogoFilter(null, delogoParams, "2.2", DURATION);
+        List<String> command = new ArrayList<>();
+        command.add("ffmpeg");
+        command.add("-i");
+        command.add(INPUT);
+        command.add("-vf");
+        command.add(delogoFilter);
+        command.addAll(MediaProcessor.splitArgs(MediaProcessor.DEFAULT_COMPRESS_PARAMS));
+        command.add(OUTPUT);
+        return command;
+    }
+}
@@ -0,0 +1,85 @@
+package com.ffmpegui;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @description: 图形界面日志链路（addLogMessage → updateLogFromQueue）在多个生产者下的吞吐
+ * 4 个线程模拟并发任务的 ffmpeg 输出读取线程写入 LogBuffer，1 个线程模拟界面定时器取走并拼接文本；
+ * spill=file 时每行同时写入轮转日志文件。两个方法的结果分别是写入和取走的行数/微秒。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class LogPipelineBenchmark {
+    private static final String LINE = "[第01集.mp4] [libx264 @ 0x55d0c3a4b2c0] frame I:12 Avg QP:18.42 size:184213";
+
+    @Param({"none", "file"})
+    public String spill;
+
+    // 界面保留的行数，与 FFmpegBatchProcessor 相同
+    @Param({"5000"})
+    public int capacity;
+
+    private LogBuffer logBuffer;
+    private RotatingLogFile logFile;
+    private Path logDir;
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup
+    public void setUp() throws IOException {
+        if (spill.equals("file")) {
+            logDir = Files.createTempDirectory("bench-log");
+            logFile = new RotatingLogFile(logDir.resolve("bench.log"));
+        }
+        logBuffer = new LogBuffer(capacity, logFile);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (logFile != null) {
+            logFile.close();
+            ScratchManager.deleteRecursively(logDir);
+        }
+    }
+
+    @Benchmark
+    @Group("pipeline")
+    @GroupThreads(4)
+    public void produce() {
+        logBuffer.add(LINE + sequence.incrementAndGet());
+    }
+
+    // 与 updateLogFromQueue 相同：取走全部并拼成一段文本
+    @Benchmark
+    @Group("pipeline")
+    @GroupThreads(1)
+    public int consume() {
+        LogBuffer.Drain drain = logBuffer.drain();
+        StringBuilder sb = new StringBuilder();
+        for (String message : drain.lines()) {
+            sb.append(message).append("\n");
+        }
+        return sb.length() + (int) drain.dropped();
+    }
+}
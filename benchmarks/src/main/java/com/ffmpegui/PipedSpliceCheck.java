@@ -0,0 +1,205 @@
+package com.ffmpegui;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * @description: 经管道合并的端到端检查，需要真实的 ffmpeg/ffprobe
+ * 用 lavfi 合成素材跑三种把一个部分经标准输入送给合并命令的处理：分段拼接、智能剪切拼接、局部去未完待续，
+ * 然后逐个比较输出与输入的时长，并完整解码一遍输出，解码有任何错误都算失败。
+ * 合并命令如果开着 ffmpeg 的按键交互，会从标准输入的数据流中取走字节（解码报错），取到 q 时提前退出（输出变短）。
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.ffmpegui.PipedSpliceCheck --files 2 --duration 60
+ * </pre>
+ */
+public final class PipedSpliceCheck {
+    // 输出与输入的时长允许相差的秒数，拼接处最多差一两帧
+    private static final double TOLERANCE_SECONDS = 0.5;
+    private static final Pattern EPISODE = Pattern.compile("^(episode_\\d{3})");
+
+    private static final String USAGE = """
+            用法: java -cp benchmarks.jar com.ffmpegui.PipedSpliceCheck [选项]
+              --files <n>        每种处理的文件数，默认 2
+              --duration <秒>    素材的基准时长，实际在 0.5~1.5 倍之间，默认 60
+              --work <目录>      工作目录，默认新建临时目录，结束后删除
+              --keep             保留工作目录
+            """;
+
+    // 一种处理：pairs 为 true 时使用带 _no_sub 的拼接素材
+    private record Case(String name, boolean pairs, List<String> args) {
+    }
+
+    private static final List<Case> CASES = List.of(
+            new Case("splice-segments", true, List.of("splice", "--splice-head", "--splice-tail",
+                    "--head-duration", "5", "--tail-duration", "5", "--splice-mode", "segments")),
+            new Case("splice-smart-cut", true, List.of("splice", "--splice-head", "--splice-tail",
+                    "--head-duration", "5", "--tail-duration", "5", "--splice-mode", "smart-cut")),
+            new Case("partial-trailer", false, List.of("remove-trailer", "--partial-trailer",
+                    "--delogo", SyntheticCorpus.TRAILER_BOX,
+                    "--last-duration", String.format(Locale.ROOT, "%.1f", SyntheticCorpus.TRAILER_SECONDS))));
+
+    private final Path work;
+    private final Path java = Path.of(System.getProperty("java.home"), "bin", "java");
+    private final String classPath = System.getProperty("java.class.path");
+
+    private PipedSpliceCheck(Path work) {
+        this.work = work;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--keep")) {
+                options.put("--keep", "");
+            } else if (args[i].startsWith("--") && i + 1 < args.length) {
+                options.put(args[i], args[++i]);
+            } else {
+                System.err.print(USAGE);
+                System.exit(2);
+            }
+        }
+        int files = Integer.parseInt(options.getOrDefault("--files", "2"));
+        double baseSeconds = Double.parseDouble(options.getOrDefault("--duration", "60"));
+
+        Path work = options.containsKey("--work")
+                ? Files.createDirectories(Path.of(options.get("--work"))) : Files.createTempDirectory("ffmpegui-check");
+        int failures;
+        try {
+            failures = new PipedSpliceCheck(work).run(files, baseSeconds);
+        } finally {
+            if (!options.containsKey("--keep")) {
+                ScratchManager.deleteRecursively(work);
+            } else {
+                System.out.println("工作目录: " + work);
+            }
+        }
+        System.out.println(failures == 0 ? "全部通过" : "失败 " + failures + " 项");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    // 返回失败的项数
+    private int run(int files, double baseSeconds) throws Exception {
+        SyntheticCorpus corpus = new SyntheticCorpus(false, StubMedia.DEFAULT_BYTES_PER_SECOND);
+        Path plain = work.resolve("corpus");
+        Path pairs = work.resolve("pairs");
+        System.out.printf(Locale.ROOT, "生成素材：%d 个文件，基准时长 %.0f 秒...%n", files, baseSeconds);
+        List<Path> plainInputs = corpus.generate(plain, files, baseSeconds);
+        List<Path> pairInputs = corpus.generatePairs(pairs, files, baseSeconds);
+
+        int failures = 0;
+        for (Case check : CASES) {
+            Path folder = check.pairs() ? pairs : plain;
+            List<Path> inputs = check.pairs() ? pairInputs : plainInputs;
+            int exitCode = runBatch(check, folder);
+            if (exitCode != 0) {
+                System.out.printf("%-18s BatchCli 返回 %d，见 %s%n", check.name(), exitCode,
+                        work.resolve("runs").resolve(check.name()));
+                failures++;
+            }
+            failures += compare(check, inputs, outputs(folder.resolve("OK")));
+        }
+        return failures;
+    }
+
+    private int runBatch(Case check, Path folder) throws IOException, InterruptedException {
+        // 上一种处理的输出和任务日志
+        Path previous = folder.resolve("OK");
+        if (Files.isDirectory(previous)) {
+            ScratchManager.deleteRecursively(previous);
+        }
+        try (Stream<Path> entries = Files.list(folder)) {
+            for (Path entry : entries.filter(path -> path.getFileName().toString().startsWith(".ffmpeg_batch_")).toList()) {
+                Files.deleteIfExists(entry);
+            }
+        }
+        Path runDir = Files.createDirectories(work.resolve("runs").resolve(check.name()));
+        Path home = Files.createDirectories(runDir.resolve("home"));
+
+        List<String> command = new ArrayList<>(List.of(java.toString(), "-Duser.home=" + home,
+                "-cp", classPath, "com.ffmpegui.BatchRunner"));
+        command.addAll(check.args());
+        command.addAll(List.of("--folder", folder.toString(), "--jobs", "1", "--no-resume",
+                "--scratch-dir", work.resolve("scratch").toString()));
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectOutput(runDir.resolve("events.jsonl").toFile());
+        pb.redirectError(runDir.resolve("stderr.log").toFile());
+        return pb.start().waitFor();
+    }
+
+    // 输出文件按 episode_### 前缀对应到输入
+    private static Map<String, Path> outputs(Path dir) throws IOException {
+        Map<String, Path> outputs = new LinkedHashMap<>();
+        if (!Files.isDirectory(dir)) {
+            return outputs;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                Matcher matcher = EPISODE.matcher(file.getFileName().toString());
+                if (matcher.find() && MediaProcessor.isMediaFile(file.getFileName().toString())) {
+                    outputs.put(matcher.group(1), file);
+                }
+            }
+        }
+        return outputs;
+    }
+
+    private static int compare(Case check, List<Path> inputs, Map<String, Path> outputs)
+            throws IOException, InterruptedException {
+        int failures = 0;
+        for (Path input : inputs) {
+            Matcher matcher = EPISODE.matcher(input.getFileName().toString());
+            Path output = matcher.find() ? outputs.get(matcher.group(1)) : null;
+            if (output == null) {
+                System.out.printf("%-18s %s: 没有输出%n", check.name(), input.getFileName());
+                failures++;
+                continue;
+            }
+            double expected = duration(input);
+            double actual = duration(output);
+            String decodeError = decode(output);
+            boolean ok = Math.abs(actual - expected) <= TOLERANCE_SECONDS && decodeError == null;
+            System.out.printf(Locale.ROOT, "%-18s %s: 输入 %.2f 秒，输出 %.2f 秒，%s%n", check.name(),
+                    input.getFileName(), expected, actual,
+                    decodeError == null ? "解码正常" : "解码出错: " + decodeError);
+            if (!ok) {
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    // 容器时长（秒），读不出时为 NaN
+    private static double duration(Path file) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder("ffprobe", "-v", "error", "-show_entries", "format=duration",
+                "-of", "default=noprint_wrappers=1:nokey=1", file.toString()).redirectErrorStream(true).start();
+        String text = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+        process.waitFor();
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    // 完整解码一遍，返回第一条错误，没有错误时为 null
+    private static String decode(Path file) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder("ffmpeg", "-nostdin", "-v", "error", "-i", file.toString(),
+                "-f", "null", "-").redirectErrorStream(true).start();
+        String text = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+        int exitCode = process.waitFor();
+        if (!text.isEmpty()) {
+            return text.lines().findFirst().orElse(text);
+        }
+        return exitCode == 0 ? null : "ffmpeg 返回 " + exitCode;
+    }
+}
@@ -0,0 +1,315 @@
+package com.ffmpegui;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * @description: 端到端基准测试用的 ffmpeg/ffprobe 替身，行为完全由参数和环境变量决定
+ * 替身媒体文件以一行 "FFSTUB duration=秒" 开头，后面是填充字节；ffprobe 按这一行报告时长（1280x720 h264 + aac），
+ * ffmpeg 按输入时长、-ss、-t 和 concat 列表算出输出时长，按 STUB_SPEED 倍速 sleep 模拟编码时间
+ * （流复制快 COPY_FACTOR 倍），写出 STUB_BYTES_PER_SECOND × 时长的输出，并像真的 ffmpeg 一样输出 -progress。
+ * 每次调用在 STUB_LOG 中记一行 "命令 模拟秒数"，用于计算理想耗时。
+ * 由 {@link BatchBenchmark} 生成的 sh 脚本启动：StubMedia ffmpeg|ffprobe 参数...
+ */
+public final class StubMedia {
+    static final String MAGIC = "FFSTUB duration=";
+    static final String SPEED_ENV = "STUB_SPEED";
+    static final String BYTES_ENV = "STUB_BYTES_PER_SECOND";
+    static final String PROBE_MILLIS_ENV = "STUB_PROBE_MS";
+    static final String LOG_ENV = "STUB_LOG";
+    static final double DEFAULT_SPEED = 60;
+    static final long DEFAULT_BYTES_PER_SECOND = 250_000;
+    static final long DEFAULT_PROBE_MILLIS = 20;
+    // 流复制和只处理音频比编码快的倍数
+    private static final double COPY_FACTOR = 10;
+    private static final double KEYFRAME_INTERVAL = 2;
+    // -progress 输出的间隔（实际时间）
+    private static final long PROGRESS_MILLIS = 100;
+    private static final int HEADER_LIMIT = 128;
+
+    private StubMedia() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("用法: StubMedia ffmpeg|ffprobe 参数...");
+            System.exit(2);
+        }
+        List<String> rest = List.of(args).subList(1, args.length);
+        int exitCode = switch (args[0]) {
+            case "ffmpeg" -> ffmpeg(rest);
+            case "ffprobe" -> ffprobe(rest);
+            default -> {
+                System.err.println("未知命令: " + args[0]);
+                yield 2;
+            }
+        };
+        System.out.flush();
+        System.exit(exitCode);
+    }
+
+    // 写一个替身媒体文件
+    static void writeMedia(Path file, double duration, long bytes) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            writeMedia(out, duration, bytes);
+        }
+    }
+
+    private static void writeMedia(OutputStream out, double duration, long bytes) throws IOException {
+        out.write((MAGIC + String.format(Locale.ROOT, "%.6f", duration) + "\n").getBytes(StandardCharsets.US_ASCII));
+        byte[] block = new byte[64 * 1024];
+        for (long left = bytes; left > 0; left -= block.length) {
+            out.write(block, 0, (int) Math.min(block.length, left));
+        }
+    }
+
+    private static int ffprobe(List<String> args) throws Exception {
+        if (args.contains("-version")) {
+            System.out.println("ffprobe version stub");
+            return 0;
+        }
+        long probeMillis = longEnv(PROBE_MILLIS_ENV, DEFAULT_PROBE_MILLIS);
+        Thread.sleep(probeMillis);
+        record("ffprobe", probeMillis / 1000.0);
+
+        double duration = readDuration(Path.of(args.getLast()));
+        if (Double.isNaN(duration)) {
+            System.err.println(args.getLast() + ": Invalid data found when processing input");
+            return 1;
+        }
+        if (args.contains("packet=pts_time,flags")) {
+            // 关键帧时间表：每 KEYFRAME_INTERVAL 秒一个关键帧，中间是普通帧
+            StringBuilder sb = new StringBuilder();
+            for (double t = 0; t < duration; t += KEYFRAME_INTERVAL / 2) {
+                boolean key = Math.round(t / (KEYFRAME_INTERVAL / 2)) % 2 == 0;
+                sb.append(String.format(Locale.ROOT, "%.6f,%s%n", t, key ? "K__" : "___"));
+            }
+            System.out.print(sb);
+            return 0;
+        }
+        System.out.printf(Locale.ROOT, """
+                {"streams":[{"index":0,"codec_type":"video","codec_name":"h264","profile":"High",\
+                "width":%d,"height":%d,"pix_fmt":"yuv420p","avg_frame_rate":"30000/1001","r_frame_rate":"30000/1001"},\
+                {"index":1,"codec_type":"audio","codec_name":"aac","sample_rate":"48000","channels":2,\
+                "channel_layout":"stereo"}],"format":{"duration":"%.6f","format_name":"mov,mp4,m4a,3gp,3g2,mj2"}}
+                """, SyntheticCorpus.WIDTH, SyntheticCorpus.HEIGHT, duration);
+        return 0;
+    }
+
+    private static int ffmpeg(List<String> args) throws Exception {
+        if (args.contains("-version")) {
+            System.out.println("ffmpeg version stub");
+            return 0;
+        }
+        PrintStream log = System.err;
+        String output = args.getLast();
+        String firstInput = null;
+        boolean concat = false;
+        boolean pendingConcat = false;
+        double seek = 0;
+        double limit = Double.POSITIVE_INFINITY;
+        boolean copy = false;
+        boolean filtered = false;
+        boolean progress = false;
+        for (int i = 0; i < args.size() - 1; i++) {
+            String arg = args.get(i);
+            String value = args.get(i + 1);
+            switch (arg) {
+                case "-f" -> pendingConcat = value.equals("concat");
+                case "-i" -> {
+                    if (firstInput == null) {
+                        firstInput = value;
+                        concat = pendingConcat;
+                    }
+                    pendingConcat = false;
+                }
+                case "-ss" -> seek = parseSeconds(value);
+                case "-t" -> limit = parseSeconds(value);
+                case "-c", "-c:v", "-vcodec" -> copy = value.equals("copy");
+                case "-vn" -> copy = true;
+                case "-vf", "-filter_complex", "-filter:v" -> filtered = true;
+                case "-progress" -> progress = value.equals("pipe:1");
+                default -> {
+                }
+            }
+        }
+        if (firstInput == null) {
+            log.println("stub ffmpeg: 没有输入");
+            return 1;
+        }
+
+        Thread drainer = null;
+        double inputDuration;
+        if (concat) {
+            inputDuration = 0;
+            for (String entry : concatEntries(Path.of(firstInput))) {
+                if (entry.equals("pipe:0")) {
+                    inputDuration += readStdinDuration();
+                    drainer = drainStdin();
+                } else {
+                    inputDuration += readDuration(Path.of(entry));
+                }
+            }
+        } else if (firstInput.equals("pipe:0")) {
+            inputDuration = readStdinDuration();
+            drainer = drainStdin();
+        } else {
+            inputDuration = readDuration(Path.of(firstInput));
+        }
+        if (Double.isNaN(inputDuration)) {
+            log.println(firstInput + ": Invalid data found when processing input");
+            return 1;
+        }
+
+        double outDuration = Math.max(0, Math.min(inputDuration - seek, limit));
+        double speed = doubleEnv(SPEED_ENV, DEFAULT_SPEED) * (copy && !filtered ? COPY_FACTOR : 1);
+        double simulated = outDuration / speed;
+        log.printf(Locale.ROOT, "stub ffmpeg: %s %.2f 秒 -> %.2f 秒，模拟 %.3f 秒%n",
+                copy && !filtered ? "copy" : "encode", inputDuration, outDuration, simulated);
+
+        // 按实际时间推进，每隔 PROGRESS_MILLIS 输出一组进度
+        long start = System.nanoTime();
+        long totalNanos = (long) (simulated * 1e9);
+        while (true) {
+            long elapsed = System.nanoTime() - start;
+            if (elapsed >= totalNanos) {
+                break;
+            }
+            if (progress) {
+                printProgress(outDuration * elapsed / totalNanos, speed, false);
+            }
+            Thread.sleep(Math.max(1, Math.min(PROGRESS_MILLIS, (totalNanos - elapsed) / 1_000_000)));
+        }
+
+        long bytes = (long) (outDuration * longEnv(BYTES_ENV, DEFAULT_BYTES_PER_SECOND));
+        if (output.equals("pipe:1")) {
+            writeMedia(System.out, outDuration, bytes);
+        } else {
+            writeMedia(Path.of(output), outDuration, bytes);
+        }
+        if (progress) {
+            printProgress(outDuration, speed, true);
+        }
+        if (drainer != null) {
+            drainer.join();
+        }
+        record("ffmpeg", simulated);
+        return 0;
+    }
+
+    private static void printProgress(double outSeconds, double speed, boolean end) {
+        System.out.printf(Locale.ROOT, "fps=%.1f%nout_time_us=%d%nspeed=%.1fx%nprogress=%s%n",
+                30 * speed, (long) (outSeconds * 1e6), speed, end ? "end" : "continue");
+        System.out.flush();
+    }
+
+    // concat 列表中的文件，file '...' 中的 \\ 还原为 \
+    private static List<String> concatEntries(Path list) throws IOException {
+        List<String> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(list, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.startsWith("file '") && line.endsWith("'")) {
+                    entries.add(line.substring(6, line.length() - 1).replace("\\\\", "\\"));
+                }
+            }
+        }
+        return entries;
+    }
+
+    static double readDuration(Path file) {
+        try (InputStream in = Files.newInputStream(file)) {
+            return parseHeader(in);
+        } catch (IOException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static double readStdinDuration() throws IOException {
+        return parseHeader(System.in);
+    }
+
+    // 逐字节读到换行，不多读：后面的数据由 drainStdin 读走
+    private static double parseHeader(InputStream in) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        int b;
+        while (header.size() < HEADER_LIMIT && (b = in.read()) >= 0 && b != '\n') {
+            header.write(b);
+        }
+        String line = header.toString(StandardCharsets.US_ASCII);
+        if (!line.startsWith(MAGIC)) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(line.substring(MAGIC.length()));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    // 上游经管道送来的数据要读完，否则上游写满管道后阻塞
+    private static Thread drainStdin() {
+        Thread thread = new Thread(() -> {
+            try {
+                System.in.transferTo(OutputStream.nullOutputStream());
+            } catch (IOException ignored) {
+                // 上游提前结束
+            }
+        }, "stdin-drain");
+        thread.start();
+        return thread;
+    }
+
+    private static void record(String command, double simulatedSeconds) {
+        String log = System.getenv(LOG_ENV);
+        if (log == null || log.isBlank()) {
+            return;
+        }
+        String line = String.format(Locale.ROOT, "%s %.6f%n", command, simulatedSeconds);
+        try {
+            // 单行追加写，多个替身进程同时写也不会交错
+            Files.writeString(Path.of(log), line, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("stub: 写入调用记录失败: " + e.getMessage());
+        }
+    }
+
+    private static double parseSeconds(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static double doubleEnv(String name, double defaultValue) {
+        String value = System.getenv(name);
+        try {
+            return value == null ? defaultValue : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static long longEnv(String name, long defaultValue) {
+        String value = System.getenv(name);
+        try {
+            return value == null ? defaultValue : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.ffmpegui;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * @description: 基准测试的合成素材，不需要拷贝真实片库
+ * 真实模式用 ffmpeg 的 lavfi testsrc2 + sine 生成 1280x720 的 H.264/AAC 文件，在固定位置烧入两个文字框：
+ * 底部的字幕条整集可见，右上角的"未完待续"框只在最后 TRAILER_SECONDS 秒出现，对应去小字和去未完待续的区域参数；
+ * 拼接素材另有不带字幕条的 _no_sub 文件。替身模式只写 {@link StubMedia} 格式的文件，时长相同。
+ * 文件时长按固定序列在 0.5~1.5 倍之间变化，结果可重复，也能体现按时长排序的效果。
+ */
+final class SyntheticCorpus {
+    static final int WIDTH = 1280;
+    static final int HEIGHT = 720;
+    // 字幕条和未完待续框，格式与 --delogo 相同
+    static final String SUBTITLE_BOX = "160,600,960,80";
+    static final String TRAILER_BOX = "880,40,360,100";
+    static final double TRAILER_SECONDS = 3;
+    // 时长系数序列（×0.1）
+    private static final int[] DURATION_STEPS = {10, 15, 7, 12, 5, 14, 9, 11, 6, 13, 8};
+
+    private final boolean stub;
+    private final long bytesPerSecond;
+
+    /**
+     * @param stub           true 时写替身文件，false 时调用真实的 ffmpeg 生成
+     * @param bytesPerSecond 替身文件每秒媒体的字节数
+     */
+    SyntheticCorpus(boolean stub, long bytesPerSecond) {
+        this.stub = stub;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    // 第 index 个文件的时长（秒）
+    static double duration(int index, double baseSeconds) {
+        return baseSeconds * DURATION_STEPS[index % DURATION_STEPS.length] / 10.0;
+    }
+
+    // 普通素材：episode_001.mp4 ...
+    List<Path> generate(Path dir, int count, double baseSeconds) throws IOException, InterruptedException {
+        Files.createDirectories(dir);
+        List<Path> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Path file = dir.resolve("episode_%03d.mp4".formatted(i + 1));
+            write(file, duration(i, baseSeconds), true);
+            files.add(file);
+        }
+        return files;
+    }
+
+    // 拼接素材：每个文件配一个不带字幕条的 _no_sub 文件
+    List<Path> generatePairs(Path dir, int count, double baseSeconds) throws IOException, InterruptedException {
+        Files.createDirectories(dir);
+        List<Path> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double duration = duration(i, baseSeconds);
+            Path file = dir.resolve("episode_%03d.mp4".formatted(i + 1));
+            write(file, duration, true);
+            write(dir.resolve(MediaProcessor.getNoSubFileName(file.getFileName().toString())), duration, false);
+            files.add(file);
+        }
+        return files;
+    }
+
+    private void write(Path file, double duration, boolean subtitles) throws IOException, InterruptedException {
+        if (stub) {
+            StubMedia.writeMedia(file, duration, (long) (duration * bytesPerSecond));
+            return;
+        }
+        List<String> command = List.of("ffmpeg", "-v", "error", "-y",
+                "-f", "lavfi", "-i", "testsrc2=size=%dx%d:rate=30000/1001:duration=%s".formatted(
+                        WIDTH, HEIGHT, seconds(duration)),
+                "-f", "lavfi", "-i", "sine=frequency=440:sample_rate=48000:duration=" + seconds(duration),
+                "-vf", filter(duration, subtitles),
+                "-c:v", "libx264", "-preset", "ultrafast", "-g", "60", "-pix_fmt", "yuv420p",
+                "-c:a", "aac", "-b:a", "128k", "-shortest", file.toString());
+        Process process = new ProcessBuilder(command).inheritIO().start();
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new IOException("生成素材失败（ffmpeg 返回 %d）: %s".formatted(exitCode, file));
+        }
+    }
+
+    // 文字框：白底上几条黑色横条模拟文字笔画，未完待续框只在结尾出现
+    private static String filter(double duration, boolean subtitles) {
+        List<String> filters = new ArrayList<>();
+        if (subtitles) {
+            filters.addAll(textBox(DelogoParams.parse(SUBTITLE_BOX), null));
+        }
+        String enable = "gte(t,%s)".formatted(seconds(Math.max(0, duration - TRAILER_SECONDS)));
+        filters.addAll(textBox(DelogoParams.parse(TRAILER_BOX), enable));
+        return String.join(",", filters);
+    }
+
+    private static List<String> textBox(DelogoParams box, String enable) {
+        String suffix = enable == null ? "" : ":enable='" + enable + "'";
+        List<String> filters = new ArrayList<>();
+        filters.add("drawbox=x=%d:y=%d:w=%d:h=%d:color=white:t=fill%s".formatted(
+                box.x(), box.y(), box.width(), box.height(), suffix));
+        int stroke = Math.max(2, box.height() / 10);
+        for (int y = box.y() + stroke * 2; y + stroke <= box.y() + box.height() - stroke; y += stroke * 3) {
+            filters.add("drawbox=x=%d:y=%d:w=%d:h=%d:color=black:t=fill%s".formatted(
+                    box.x() + stroke * 2, y, box.width() - stroke * 4, stroke, suffix));
+        }
+        return filters;
+    }
+
+    private static String seconds(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+}
@@ -0,0 +1,74 @@
+package com.ffmpegui;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @description: 参数解析和文件名判断：DelogoParams.parseList、区域参数的正则校验、输出路径生成、媒体文件判断
+ * 扫描大文件夹时每个文件都会经过 isMediaFile 和 generateOutputPath。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidationBenchmark {
+    private static final String INPUT = File.separator + "data" + File.separator + "in" + File.separator
+            + "S01" + File.separator + "第01集.mp4";
+
+    @Param({"98,1169,879,155", "369,576,280,150&98,1169,879,155",
+            "10,10,200,80&369,576,280,150&1500,40,300,90&98,1169,879,155"})
+    public String delogoParams;
+
+    // 最后一个区域格式错误，校验要走完前面的区域才失败
+    private String invalidParams;
+
+    @Setup
+    public void setUp() {
+        invalidParams = delogoParams + "&98,1169,879";
+    }
+
+    @Benchmark
+    public List<DelogoParams> parseList() {
+        return DelogoParams.parseList(delogoParams);
+    }
+
+    @Benchmark
+    public boolean validateValid() {
+        return MediaProcessor.isValidMultipleDelogoParams(delogoParams);
+    }
+
+    @Benchmark
+    public boolean validateInvalid() {
+        return MediaProcessor.isValidMultipleDelogoParams(invalidParams);
+    }
+
+    @Benchmark
+    public String generateOutputPath() {
+        return MediaProcessor.generateOutputPath(INPUT, "s_w_c");
+    }
+
+    @Benchmark
+    public boolean isMediaFileMatch() {
+        return MediaProcessor.isMediaFile("第01集.MXF");
+    }
+
+    // 不是媒体文件时要比较完所有扩展名
+    @Benchmark
+    public boolean isMediaFileMiss() {
+        return MediaProcessor.isMediaFile("第01集_字幕.srt");
+    }
+}
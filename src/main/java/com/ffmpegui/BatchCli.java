@@ -0,0 +1,540 @@
+package com.ffmpegui;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @description: 无界面的命令行入口，用于服务器和定时任务
+ * 不加载任何 AWT/Swing 类；进度以每行一个 JSON 对象输出到标准输出，ffmpeg 日志输出到标准错误。
+ * <pre>
+ * java -cp FFmpegBatchProcessor.jar com.ffmpegui.BatchCli compress --folder /data/in --jobs 4
+ * java -cp FFmpegBatchProcessor.jar com.ffmpegui.BatchCli remove-trailer --folder /data/in --delogo 98,1169,879,155
+ * </pre>
+ */
+public final class BatchCli {
+    static final int EXIT_OK = 0;
+    static final int EXIT_JOBS_FAILED = 1;
+    static final int EXIT_USAGE = 2;
+    static final int EXIT_INVALID_FOLDER = 3;
+    static final int EXIT_NOTHING_TO_DO = 4;
+    static final int EXIT_CANCELLED = 130;
+
+    private static final Set<String> FLAGS = Set.of("--splice-head", "--splice-tail", "--no-resume", "--watch",
+            "--recursive", "--partial-trailer");
+    private static final Set<String> OPTIONS = Set.of("--folder", "--ffmpeg-args", "--delogo", "--last-duration",
+            "--head-duration", "--tail-duration", "--jobs", "--order", "--chunks", "--splice-mode",
+            "--scratch-dir", "--scratch-limit", "--include", "--exclude", "--steps", "--trim-start", "--trim-end",
+            "--metrics-port");
+    private static final String AUTO_DELOGO = "auto";
+
+    private static final String USAGE = """
+            用法: java -cp FFmpegBatchProcessor.jar com.ffmpegui.BatchCli <操作> --folder <文件夹> [选项]
+
+            操作:
+              compress          转小
+              remove-subtitle   去小字
+              remove-trailer    去未完待续
+              combined          组合处理：--steps 中的操作和裁剪合并成一次编码
+              splice            高级拼接（原文件与 _no_sub 文件配对）
+
+            选项:
+              --ffmpeg-args <参数>      压缩参数，默认 "%s"
+              --delogo <x,y,w,h&...|auto>
+                                        去小字/去未完待续的区域，多个区域用 & 分隔；
+                                        auto 用文件夹中的第一个文件自动检测，整批沿用
+              --last-duration <秒>      去未完待续的结尾处理时长，默认 2.2
+              --steps <操作,...>        组合处理的操作：remove-subtitle、remove-trailer、compress，
+                                        输出后缀依次拼接，如 a_s_w_c.mp4（有裁剪时在 c 前加 t）
+              --trim-start <秒>         组合处理时去掉开头的秒数
+              --trim-end <秒>           组合处理时去掉结尾的秒数（去未完待续的结尾处理相对裁剪后的结尾）
+              --partial-trailer         去未完待续时只重新编码结尾，前面的画面流复制（不应用压缩参数）
+              --splice-head             拼接片头
+              --splice-tail             拼接片尾
+              --head-duration <秒>      片头拼接时长，默认 1.5
+              --tail-duration <秒>      片尾拼接时长，默认 1.5
+              --splice-mode <segments|smart-cut|single-pass>
+                                        拼接方式：分段编码（默认）、只重新编码切点附近的 GOP、
+                                        单条命令滤镜拼接（不写临时文件）
+              --jobs <n>                并发任务数，默认 %d
+              --order <longest|shortest|name>  任务顺序，默认 longest
+              --chunks <n>              单文件分段数，默认 1
+              --scratch-dir <目录>      中间文件的临时目录，可指向 tmpfs 或 NVMe 盘，默认系统临时目录
+              --scratch-limit <GB>      所有任务中间文件的总上限，默认只受剩余空间限制
+              --include <通配符,...>    只处理匹配的文件，如 "*.mkv,S01/**"（匹配相对路径或文件名）
+              --exclude <通配符,...>    跳过匹配的文件或子文件夹
+              --recursive               同时处理子文件夹中的文件，输出在 OK 下保持目录结构（默认只处理文件夹本身）
+              --no-resume               忽略任务日志，所有文件重新处理（默认跳过上次已完成的文件）
+              --watch                   持续监视文件夹，新文件拷贝完成后立即处理，直到进程被中断（不支持 splice）
+              --metrics-port <端口>     在 127.0.0.1 上开启 Prometheus 指标接口（/metrics），0 表示任选空闲端口；
+                                        同样的指标也注册为 JMX MBean com.ffmpegui:type=Metrics
+
+            标准输出每行一个 JSON 事件（planned/job_started/job_progress/progress/job_finished/planning_failed/batch_finished），
+            job_progress 含编码帧率、速度和剩余秒数，progress 含整批的剩余秒数（eta，未知时为 null）。
+            退出码: 0 全部成功, 1 有任务失败, 2 参数错误, 3 文件夹无效, 4 没有可处理的文件, 130 已取消
+            """;
+
+    // 参数错误
+    static final class UsageException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UsageException(String message) {
+            super(message);
+        }
+    }
+
+    private BatchCli() {
+    }
+
+    public static void main(String[] args) {
+        int exitCode;
+        try {
+            exitCode = run(args);
+        } catch (UsageException e) {
+            System.err.println("参数错误: " + e.getMessage());
+            System.err.println();
+            System.err.print(usage());
+            exitCode = EXIT_USAGE;
+        } catch (InterruptedException e) {
+            exitCode = EXIT_CANCELLED;
+        }
+        System.exit(exitCode);
+    }
+
+    static int run(String[] args) throws UsageException, InterruptedException {
+        if (args.length == 0 || args[0].equals("--help") || args[0].equals("-h")) {
+            System.out.print(usage());
+            return args.length == 0 ? EXIT_USAGE : EXIT_OK;
+        }
+
+        PageType operation = switch (args[0]) {
+            case "compress" -> PageType.COMPRESS;
+            case "remove-subtitle" -> PageType.REMOVE_SUBTITLE;
+            case "remove-trailer" -> PageType.REMOVE_TRAILER;
+            case "combined" -> PageType.COMBINED;
+            case "splice" -> PageType.VIDEO_SPLICE_ADVANCED;
+            default -> throw new UsageException("未知操作: " + args[0]);
+        };
+        Map<String, String> options = parseOptions(args);
+
+        String folderPath = options.get("--folder");
+        if (folderPath == null) {
+            throw new UsageException("缺少 --folder");
+        }
+        int jobs = parsePositiveInt(options, "--jobs", defaultConcurrency());
+        JobOrder order = parseOrder(options.getOrDefault("--order", "longest"));
+        JobSettings parsed = parseSettings(operation, options);
+        boolean watch = options.containsKey("--watch");
+        FileDiscovery.Options discovery;
+        try {
+            discovery = FileDiscovery.Options.of(options.containsKey("--recursive"),
+                    options.get("--include"), options.get("--exclude"));
+        } catch (IllegalArgumentException e) {
+            throw new UsageException("无效的通配符: " + e.getMessage());
+        }
+        if (watch && operation == PageType.VIDEO_SPLICE_ADVANCED) {
+            throw new UsageException("splice 不支持 --watch");
+        }
+
+        int metricsPort = parseMetricsPort(options);
+
+        JobScheduler scheduler = new JobScheduler(jobs);
+        startMetricsServer(scheduler, metricsPort);
+        MediaProcessor mediaProcessor = new MediaProcessor(scheduler, parseScratch(options, scheduler), BatchCli::log);
+        BatchPlanner planner = new BatchPlanner(scheduler, mediaProcessor, BatchCli::log);
+        JobSettings settings;
+        try {
+            settings = AUTO_DELOGO.equals(parsed.delogoParams())
+                    ? detectDelogo(parsed, folderPath, discovery, mediaProcessor) : parsed;
+        } catch (BatchPlanner.PlanningException e) {
+            new EventListener(new AtomicReference<>()).onPlanningFailed(e);
+            return e.isWarning() ? EXIT_NOTHING_TO_DO : EXIT_INVALID_FOLDER;
+        }
+        AtomicReference<Exception> planningError = new AtomicReference<>();
+        JobJournal journal = new JobJournal(settings, !options.containsKey("--no-resume"), BatchCli::log);
+        mediaProcessor.setCommandListener(journal::command);
+
+        JobScheduler.Batch batch = scheduler.submit(
+                b -> {
+                    if (watch) {
+                        planner.watchFileJobs(b, folderPath, settings.outputSuffix(), journal, discovery,
+                                new FolderWatcher(BatchCli::log));
+                    } else if (operation == PageType.VIDEO_SPLICE_ADVANCED) {
+                        planner.planSpliceJobs(b, folderPath, settings.doSpliceHead(), settings.doSpliceTail(), order,
+                                journal, discovery);
+                    } else {
+                        planner.planFileJobs(b, folderPath, settings.outputSuffix(), order, journal, discovery);
+                    }
+                    emit("{\"event\":\"planned\",\"total\":%d}".formatted(b.total()));
+                },
+                journal.track(mediaProcessor.pipeline(settings, job -> mediaProcessor.process(job, settings))),
+                new EventListener(planningError));
+
+        // Ctrl+C / kill：取消整批，等运行中的任务清理完未完成的输出再退出
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                if (!batch.awaitCompletion(0, TimeUnit.SECONDS)) {
+                    batch.cancel();
+                    batch.awaitCompletion(10, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException ignored) {
+                // 正在退出
+            }
+        }, "ffmpeg-shutdown"));
+
+        batch.awaitCompletion();
+
+        Exception error = planningError.get();
+        if (error instanceof BatchPlanner.PlanningException planning) {
+            return planning.isWarning() ? EXIT_NOTHING_TO_DO : EXIT_INVALID_FOLDER;
+        }
+        if (error != null || batch.failed() > 0) {
+            return EXIT_JOBS_FAILED;
+        }
+        return batch.isCancelled() ? EXIT_CANCELLED : EXIT_OK;
+    }
+
+    // 机器可读的事件输出：每个批次回调对应一行 JSON
+    private static final class EventListener implements JobScheduler.Listener {
+        private final AtomicReference<Exception> planningError;
+        // 总进度按百分比取整后变化才输出，避免刷屏
+        private final AtomicInteger lastPercent = new AtomicInteger(-1);
+        // 各任务上次输出的百分比，同样取整后变化才输出
+        private final Map<JobScheduler.Job, Integer> jobPercents = new ConcurrentHashMap<>();
+
+        EventListener(AtomicReference<Exception> planningError) {
+            this.planningError = planningError;
+        }
+
+        @Override
+        public void onJobStarted(JobScheduler.Job job, JobScheduler.Batch batch) {
+            emit("{\"event\":\"job_started\",\"job\":%s,\"input\":%s,\"output\":%s}".formatted(
+                    json(job.name()), json(job.input().getAbsolutePath()), json(job.outputPath())));
+        }
+
+        @Override
+        public void onJobProgress(JobScheduler.Job job, JobScheduler.Batch batch) {
+            JobScheduler.EncodeStatus status = job.encodeStatus();
+            int percent = (int) (job.progress() * 100);
+            Integer previous = jobPercents.put(job, percent);
+            if (status == null || (previous != null && previous == percent)) {
+                return;
+            }
+            emit(String.format(Locale.ROOT,
+                    "{\"event\":\"job_progress\",\"job\":%s,\"progress\":%.3f,\"fps\":%s,\"speed\":%s,\"eta\":%s}",
+                    json(job.name()), job.progress(), number(status.fps()), number(status.speed()),
+                    number(status.etaSeconds())));
+        }
+
+        @Override
+        public void onJobFinished(JobScheduler.Job job, Exception error, JobScheduler.Batch batch) {
+            jobPercents.remove(job);
+            emit("{\"event\":\"job_finished\",\"job\":%s,\"state\":\"%s\",\"error\":%s}".formatted(
+                    json(job.name()), job.state(), error == null ? "null" : json(String.valueOf(error.getMessage()))));
+        }
+
+        @Override
+        public void onProgress(JobScheduler.Batch batch) {
+            double fraction = batch.completedFraction();
+            int percent = (int) (fraction * 100);
+            if (lastPercent.getAndSet(percent) != percent) {
+                StringJoiner queues = new StringJoiner(",", "{", "}");
+                for (JobScheduler.StageStatus stage : batch.stageStatus()) {
+                    queues.add("\"%s\":%d".formatted(stage.stage().name().toLowerCase(Locale.ROOT), stage.queued()));
+                }
+                emit(String.format(Locale.ROOT,
+                        "{\"event\":\"progress\",\"progress\":%.3f,\"eta\":%s,\"running\":%d,\"done\":%d,\"failed\":%d,\"total\":%d,\"queues\":%s}",
+                        fraction, number(batch.estimatedRemainingSeconds()), batch.running(), batch.done(),
+                        batch.failed(), batch.total(), queues));
+            }
+        }
+
+        @Override
+        public void onPlanningFailed(Exception error) {
+            planningError.set(error);
+            boolean warning = error instanceof BatchPlanner.PlanningException planning && planning.isWarning();
+            emit("{\"event\":\"planning_failed\",\"warning\":%b,\"error\":%s}".formatted(
+                    warning, json(String.valueOf(error.getMessage()))));
+        }
+
+        @Override
+        public void onBatchFinished(JobScheduler.Batch batch) {
+            emit("{\"event\":\"batch_finished\",\"total\":%d,\"done\":%d,\"failed\":%d,\"cancelled\":%d}".formatted(
+                    batch.total(), batch.done(), batch.failed(), batch.cancelled()));
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) throws UsageException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            String name = args[i];
+            if (FLAGS.contains(name)) {
+                options.put(name, "true");
+            } else if (OPTIONS.contains(name)) {
+                if (i + 1 >= args.length) {
+                    throw new UsageException(name + " 缺少参数值");
+                }
+                options.put(name, args[++i]);
+            } else {
+                throw new UsageException("未知选项: " + name);
+            }
+        }
+        return options;
+    }
+
+    // 与界面上的校验规则一致
+    private static JobSettings parseSettings(PageType operation, Map<String, String> options) throws UsageException {
+        String ffmpegArgs = options.getOrDefault("--ffmpeg-args", MediaProcessor.DEFAULT_COMPRESS_PARAMS).trim();
+        if (operation == PageType.VIDEO_SPLICE_ADVANCED) {
+            boolean doSpliceHead = options.containsKey("--splice-head");
+            boolean doSpliceTail = options.containsKey("--splice-tail");
+            if (!doSpliceHead && !doSpliceTail) {
+                throw new UsageException("请至少选择一种拼接模式（--splice-head 或 --splice-tail）");
+            }
+            String headDuration = parseSeconds(options, "--head-duration", "1.5");
+            String tailDuration = parseSeconds(options, "--tail-duration", "1.5");
+            return JobSettings.forSplice(ffmpegArgs, headDuration, tailDuration, doSpliceHead, doSpliceTail,
+                    parseSpliceMode(options.getOrDefault("--splice-mode", "segments")));
+        }
+
+        Set<PageType> steps = operation == PageType.COMBINED ? parseSteps(options.get("--steps")) : Set.of(operation);
+        String delogoParams = "";
+        String lastDuration = "";
+        if (steps.contains(PageType.REMOVE_SUBTITLE) || steps.contains(PageType.REMOVE_TRAILER)) {
+            delogoParams = options.getOrDefault("--delogo", "").trim();
+            if (!delogoParams.isEmpty() && !delogoParams.equals(AUTO_DELOGO) && !MediaProcessor.isValidMultipleDelogoParams(delogoParams)) {
+                throw new UsageException("--delogo 格式不正确，请使用x,y,w,h格式（例如：98,1169,879,155）");
+            }
+        }
+        if (steps.contains(PageType.REMOVE_TRAILER)) {
+            lastDuration = parseSeconds(options, "--last-duration", "2.2");
+        }
+        int chunkCount = parsePositiveInt(options, "--chunks", 1);
+        if (operation == PageType.COMBINED) {
+            String trimStart = parseOptionalSeconds(options, "--trim-start");
+            String trimEnd = parseOptionalSeconds(options, "--trim-end");
+            if (delogoParams.isEmpty() && !steps.isEmpty() && !steps.equals(Set.of(PageType.COMPRESS))) {
+                throw new UsageException("组合处理中的去小字、去未完待续需要 --delogo");
+            }
+            if (steps.isEmpty() && trimStart.isEmpty() && trimEnd.isEmpty()) {
+                throw new UsageException("组合处理至少需要 --steps 中的一个操作或裁剪（--trim-start/--trim-end）");
+            }
+            return JobSettings.forCombined(steps, ffmpegArgs, delogoParams, lastDuration, trimStart, trimEnd,
+                    chunkCount);
+        }
+        boolean partialTrailer = options.containsKey("--partial-trailer");
+        if (partialTrailer && operation != PageType.REMOVE_TRAILER) {
+            throw new UsageException("--partial-trailer 只能用于 remove-trailer");
+        }
+        return JobSettings.forFiles(operation, ffmpegArgs, delogoParams, lastDuration, chunkCount, partialTrailer);
+    }
+
+    // --delogo auto：同一批文件的台标/字幕位置相同，只用扫描顺序中的第一个文件检测一次
+    private static JobSettings detectDelogo(JobSettings settings, String folderPath, FileDiscovery.Options discovery,
+                                            MediaProcessor mediaProcessor) throws BatchPlanner.PlanningException {
+        File sample;
+        try {
+            sample = new FileDiscovery(Path.of(folderPath), discovery, BatchCli::log).first();
+        } catch (Exception e) {
+            throw new BatchPlanner.PlanningException(false, "指定的路径不是有效的文件夹: " + e.getMessage(), "文件夹无效");
+        }
+        if (sample == null) {
+            throw new BatchPlanner.PlanningException(true, "文件夹中没有找到媒体文件", "没有找到媒体文件");
+        }
+        // 有结尾处理时长（去未完待续，或组合处理中包含去未完待续）时同时检测未完待续框
+        String delogoParams;
+        try {
+            delogoParams = !settings.lastDuration().isEmpty()
+                    ? mediaProcessor.detectTrailerRegion(sample, Double.parseDouble(settings.lastDuration()))
+                    : mediaProcessor.detectRegions(sample);
+        } catch (Exception e) {
+            throw new BatchPlanner.PlanningException(false, "自动检测区域失败: " + e.getMessage(), "自动检测失败");
+        }
+        if (delogoParams.isEmpty()) {
+            throw new BatchPlanner.PlanningException(true,
+                    "没有检测到固定不动的区域，请用 --delogo x,y,w,h 手动指定", "没有检测到区域");
+        }
+        log("自动检测的区域（" + sample.getName() + "）: " + delogoParams);
+        return settings.withDelogoParams(delogoParams);
+    }
+
+    // 组合处理的操作列表，名称与命令行的操作一致
+    private static Set<PageType> parseSteps(String value) throws UsageException {
+        Set<PageType> steps = EnumSet.noneOf(PageType.class);
+        if (value == null) {
+            return steps;
+        }
+        for (String name : value.split(",")) {
+            switch (name.trim()) {
+                case "remove-subtitle" -> steps.add(PageType.REMOVE_SUBTITLE);
+                case "remove-trailer" -> steps.add(PageType.REMOVE_TRAILER);
+                case "compress" -> steps.add(PageType.COMPRESS);
+                case "" -> {
+                }
+                default -> throw new UsageException("未知的组合操作: " + name.trim());
+            }
+        }
+        return steps;
+    }
+
+    private static ScratchManager parseScratch(Map<String, String> options, JobScheduler scheduler)
+            throws UsageException {
+        String dir = options.get("--scratch-dir");
+        Path root = dir == null ? ScratchManager.defaultRoot() : Path.of(dir);
+        long limit = 0;
+        String limitGb = options.get("--scratch-limit");
+        if (limitGb != null) {
+            try {
+                limit = ScratchManager.gigabytes(Double.parseDouble(limitGb.trim()));
+            } catch (NumberFormatException e) {
+                throw new UsageException("--scratch-limit 必须是有效的数字（GB）");
+            }
+            if (limit <= 0) {
+                throw new UsageException("--scratch-limit 必须大于 0");
+            }
+        }
+        return new ScratchManager(root, limit, scheduler.processes(), BatchCli::log);
+    }
+
+    private static String parseSeconds(Map<String, String> options, String name, String defaultValue)
+            throws UsageException {
+        String value = options.getOrDefault(name, defaultValue).trim();
+        try {
+            Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new UsageException(name + " 必须是有效的数字（秒）");
+        }
+        return value;
+    }
+
+    // 不指定时返回空字符串
+    private static String parseOptionalSeconds(Map<String, String> options, String name) throws UsageException {
+        if (!options.containsKey(name)) {
+            return "";
+        }
+        String value = parseSeconds(options, name, "");
+        if (Double.parseDouble(value) < 0) {
+            throw new UsageException(name + " 不能为负数");
+        }
+        return value;
+    }
+
+    // 未指定时返回 -1
+    private static int parseMetricsPort(Map<String, String> options) throws UsageException {
+        String value = options.get("--metrics-port");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            int port = Integer.parseInt(value.trim());
+            if (port >= 0 && port <= 65535) {
+                return port;
+            }
+        } catch (NumberFormatException ignored) {
+            // 下面统一报错
+        }
+        throw new UsageException("--metrics-port 必须是 0-65535 的端口号");
+    }
+
+    // 进程退出时随之结束（守护线程），启动失败不影响批处理
+    private static void startMetricsServer(JobScheduler scheduler, int port) {
+        if (port < 0) {
+            return;
+        }
+        try {
+            MetricsServer server = MetricsServer.start(scheduler.metrics(), port);
+            log("指标接口: http://127.0.0.1:%d%s".formatted(server.port(), MetricsServer.PATH));
+        } catch (IOException e) {
+            log("指标接口启动失败: " + e.getMessage());
+        }
+    }
+
+    private static int parsePositiveInt(Map<String, String> options, String name, int defaultValue)
+            throws UsageException {
+        String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed >= 1) {
+                return parsed;
+            }
+        } catch (NumberFormatException ignored) {
+            // 下面统一报错
+        }
+        throw new UsageException(name + " 必须是正整数");
+    }
+
+    private static JobOrder parseOrder(String value) throws UsageException {
+        return switch (value) {
+            case "longest" -> JobOrder.LONGEST_FIRST;
+            case "shortest" -> JobOrder.SHORTEST_FIRST;
+            case "name" -> JobOrder.NAME;
+            default -> throw new UsageException("未知任务顺序: " + value);
+        };
+    }
+
+    private static SpliceMode parseSpliceMode(String value) throws UsageException {
+        return switch (value) {
+            case "segments" -> SpliceMode.SEGMENTS;
+            case "smart-cut" -> SpliceMode.SMART_CUT;
+            case "single-pass" -> SpliceMode.SINGLE_PASS;
+            default -> throw new UsageException("未知拼接方式: " + value);
+        };
+    }
+
+    // 与界面的默认并发数一致
+    private static int defaultConcurrency() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / 8);
+    }
+
+    private static String usage() {
+        return USAGE.formatted(MediaProcessor.DEFAULT_COMPRESS_PARAMS, defaultConcurrency());
+    }
+
+    private static void log(String message) {
+        System.err.println(message);
+    }
+
+    private static synchronized void emit(String event) {
+        System.out.println(event);
+        System.out.flush();
+    }
+
+    // 数值字段，未知（NaN）时输出 null
+    static String number(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? "null" : String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    static String json(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 2).append('"');
+        for (char c : text.toCharArray()) {
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append("\\u%04x".formatted((int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,396 @@
+package com.ffmpegui;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * @description: 批处理的规划阶段，不依赖界面
+ * 扫描文件夹（见 {@link FileDiscovery}）、生成输出路径、按所选策略排序后把任务加入批次；
+ * 文件夹无效或没有可处理的文件时抛出 {@link PlanningException}，由调用方决定如何提示。
+ */
+final class BatchPlanner {
+    private static final int PROBE_THREADS = 8;
+
+    // 规划失败：warning 为 true 表示只是没有可处理的文件，status 是适合放在状态栏的简短说明
+    static final class PlanningException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final boolean warning;
+        private final String status;
+
+        PlanningException(boolean warning, String message, String status) {
+            super(message);
+            this.warning = warning;
+            this.status = status;
+        }
+
+        boolean isWarning() {
+            return warning;
+        }
+
+        String status() {
+            return status;
+        }
+    }
+
+    private final JobScheduler scheduler;
+    private final MediaProcessor mediaProcessor;
+    private final Consumer<String> log;
+
+    BatchPlanner(JobScheduler scheduler, MediaProcessor mediaProcessor, Consumer<String> log) {
+        this.scheduler = scheduler;
+        this.mediaProcessor = mediaProcessor;
+        this.log = log;
+    }
+
+    /**
+     * @description: 规划阶段：扫描文件夹（可含子文件夹）、生成输出路径，并把每个文件作为任务加入批次
+     * 每扫完一个文件夹就把其中的文件交给 {@link Admission}，第一个任务不必等整棵目录树扫完和全部探测完成
+     */
+    void planFileJobs(JobScheduler.Batch batch, String folderPath, String outputSuffix, JobOrder order,
+                      JobJournal journal, FileDiscovery.Options discovery) throws Exception {
+        File folder = checkFolder(folderPath);
+        boolean resumable = loadJournal(folder, journal);
+        createOkFolder(folder);
+
+        // 输出路径按文件名顺序分配，与执行顺序无关；重名只会发生在同一文件夹内
+        Admission admission = new Admission(batch, journal, order);
+        int[] counts = new int[2];
+        new FileDiscovery(folder.toPath(), discovery, log).walk(listing -> {
+            List<File> mediaFiles = listing.files();
+            Map<File, String> paths = assignOutputPaths(folder, mediaFiles, outputSuffix);
+            List<File> pending = skipCompleted(mediaFiles, paths, journal, resumable);
+            counts[0] += mediaFiles.size();
+            counts[1] += mediaFiles.size() - pending.size();
+            admission.offer(pending, paths);
+        });
+
+        if (counts[0] == 0) {
+            throw new PlanningException(true, "文件夹中没有找到媒体文件", "没有找到媒体文件");
+        }
+        logSkipped(counts[1]);
+        log.accept("共 %d 个文件，并发任务数 %d".formatted(counts[0] - counts[1], scheduler.getMaxConcurrent()));
+        admission.finish();
+    }
+
+    /**
+     * @description: 监视模式的规划阶段：文件夹中已有的和之后到达的媒体文件，写完后逐个加入批次
+     * 扫描范围（子文件夹、包含/排除通配符）与普通批处理相同；
+     * 一直阻塞到监视被停止或批次被取消，期间批次不封口，任务按到达顺序执行
+     */
+    void watchFileJobs(JobScheduler.Batch batch, String folderPath, String outputSuffix, JobJournal journal,
+                       FileDiscovery.Options discovery, FolderWatcher watcher) throws Exception {
+        File folder = new File(folderPath);
+        if (!folder.exists() || !folder.isDirectory()) {
+            throw new PlanningException(false, "指定的路径不是有效的文件夹", "无效的文件夹路径");
+        }
+
+        boolean resumable = loadJournal(folder, journal);
+        createOkFolder(folder);
+
+        // 已有文件的输出路径与普通批处理一致，上次已完成的不再处理
+        FileDiscovery fileDiscovery = new FileDiscovery(folder.toPath(), discovery, log);
+        List<File> existing = new ArrayList<>();
+        Map<File, String> outputPaths = new HashMap<>();
+        fileDiscovery.walk(listing -> {
+            existing.addAll(listing.files());
+            outputPaths.putAll(assignOutputPaths(folder, listing.files(), outputSuffix));
+        });
+        List<File> completed = new ArrayList<>(existing);
+        completed.removeAll(skipCompleted(existing, outputPaths, journal, resumable));
+        logSkipped(completed.size());
+        Set<String> usedOutputs = new HashSet<>(outputPaths.values());
+
+        log.accept("开始监视文件夹: %s（新文件大小 %d 秒不变后开始处理，并发任务数 %d）".formatted(
+                folder.getAbsolutePath(), FolderWatcher.STABLE_MILLIS / 1000, scheduler.getMaxConcurrent()));
+        watcher.watch(folder, fileDiscovery, completed, file -> {
+            String outputPath = outputPaths.get(file);
+            if (outputPath == null) {
+                // 新到达的文件与已有文件输出重名时，同样在后缀前加入原扩展名
+                outputPath = outputPath(folder, file, outputSuffix);
+                if (usedOutputs.contains(outputPath)) {
+                    String name = file.getName();
+                    String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+                    outputPath = outputPath(folder, file, extension + "_" + outputSuffix);
+                }
+                usedOutputs.add(outputPath);
+            }
+            log.accept("新文件已就绪: " + folder.getAbsoluteFile().toPath().relativize(file.toPath()));
+            addJob(batch, journal, new JobScheduler.Job(file, outputPath));
+        }, scheduler.processes()::isCancelled);
+        log.accept("已停止监视文件夹");
+    }
+
+    // 规划阶段：找出成对的原视频和_no_sub视频（可含子文件夹），每对作为一个拼接任务
+    void planSpliceJobs(JobScheduler.Batch batch, String folderPath, boolean doSpliceHead, boolean doSpliceTail,
+                        JobOrder order, JobJournal journal, FileDiscovery.Options discovery) throws Exception {
+        File folder = checkFolder(folderPath);
+        boolean resumable = loadJournal(folder, journal);
+        createOkFolder(folder);
+
+        String outputPrefix;
+        if (doSpliceHead && doSpliceTail) {
+            outputPrefix = "head_tail_";
+        } else if (doSpliceHead) {
+            outputPrefix = "head_";
+        } else {
+            outputPrefix = "tail_";
+        }
+
+        Admission admission = new Admission(batch, journal, order);
+        int[] counts = new int[2];
+        new FileDiscovery(folder.toPath(), discovery, log).walk(listing -> {
+            // 找出所有没有_no_sub后缀、且同一文件夹中有对应_no_sub文件的媒体文件，直接查扫描得到的文件名
+            Map<File, String> paths = new LinkedHashMap<>();
+            for (File file : listing.files()) {
+                if (!file.getName().contains("_no_sub")
+                        && listing.contains(MediaProcessor.getNoSubFileName(file.getName()))) {
+                    paths.put(file, new File(FileDiscovery.outputFolder(folder, file),
+                            outputPrefix + "spliced_" + file.getName()).getAbsolutePath());
+                }
+            }
+            List<File> originalFiles = new ArrayList<>(paths.keySet());
+            List<File> pending = skipCompleted(originalFiles, paths, journal, resumable);
+            counts[0] += originalFiles.size();
+            counts[1] += originalFiles.size() - pending.size();
+            admission.offer(pending, paths);
+        });
+
+        if (counts[0] == 0) {
+            throw new PlanningException(true,
+                    "文件夹中没有找到配对的媒体文件（需要有原文件和带_no_sub后缀的文件）", "没有找到配对的媒体文件");
+        }
+        logSkipped(counts[1]);
+        log.accept("共 %d 对文件，并发任务数 %d".formatted(counts[0] - counts[1], scheduler.getMaxConcurrent()));
+        admission.finish();
+    }
+
+    /**
+     * @description: 扫描过程中把任务加入批次
+     * 按文件名排序时扫到就加入；按耗时排序时最先扫到的文件（每个并发槽位一个）直接加入，开始处理，
+     * 其余的等扫描完成、探测完时长后排序加入，探测与前几个任务的处理同时进行
+     */
+    private final class Admission {
+        private final JobScheduler.Batch batch;
+        private final JobJournal journal;
+        private final JobOrder order;
+        // 不等排序直接加入的任务数
+        private final int early;
+        private final List<File> collected = new ArrayList<>();
+        private final Map<File, String> outputPaths = new HashMap<>();
+        private int admitted;
+
+        Admission(JobScheduler.Batch batch, JobJournal journal, JobOrder order) {
+            this.batch = batch;
+            this.journal = journal;
+            this.order = order;
+            this.early = order.needsCost() ? scheduler.getMaxConcurrent() : Integer.MAX_VALUE;
+            if (order.needsCost()) {
+                log.accept("任务顺序: %s（先开始最先扫描到的 %d 个文件，其余探测时长后排序）".formatted(
+                        order.getTitle(), early));
+            } else {
+                log.accept("任务顺序: %s（边扫描边加入批次）".formatted(order.getTitle()));
+            }
+        }
+
+        void offer(List<File> pending, Map<File, String> paths) {
+            for (File file : pending) {
+                if (admitted < early) {
+                    admitted++;
+                    addJob(batch, journal, new JobScheduler.Job(file, paths.get(file)));
+                } else {
+                    collected.add(file);
+                    outputPaths.put(file, paths.get(file));
+                }
+            }
+        }
+
+        // 扫描完成后加入其余的任务
+        void finish() {
+            if (collected.isEmpty()) {
+                return;
+            }
+            for (File file : orderJobs(collected, order)) {
+                addJob(batch, journal, new JobScheduler.Job(file, outputPaths.get(file)));
+            }
+        }
+    }
+
+    // 子文件夹的输出目录在加入批次时创建
+    private static void addJob(JobScheduler.Batch batch, JobJournal journal, JobScheduler.Job job) {
+        File outputFolder = new File(job.outputPath()).getParentFile();
+        if (outputFolder != null && !outputFolder.exists()) {
+            outputFolder.mkdirs();
+        }
+        journal.queued(job);
+        batch.add(job);
+    }
+
+    // 读取文件夹中的任务日志，读取失败时所有文件重新处理
+    private boolean loadJournal(File folder, JobJournal journal) {
+        try {
+            journal.load(folder);
+            return true;
+        } catch (IOException e) {
+            log.accept("读取任务日志失败，所有文件重新处理: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @description: 根据任务日志跳过上次已完成的文件
+     * 输出文件仍然存在、大小与记录一致且能被 ffprobe 读出时长才算完成；
+     * 上次中途被打断的文件先删除残留的输出，再重新处理
+     */
+    private List<File> skipCompleted(List<File> files, Map<File, String> outputPaths, JobJournal journal,
+                                     boolean resumable) {
+        if (!resumable) {
+            return files;
+        }
+        List<File> pending = new ArrayList<>();
+        for (File file : files) {
+            String outputPath = outputPaths.get(file);
+            JobJournal.Completed completed = journal.completed(file);
+            if (completed != null && completed.outputPath().equals(outputPath) && isValidOutput(completed)) {
+                continue;
+            }
+            if (completed != null || journal.wasInterrupted(file)) {
+                File output = new File(outputPath);
+                if (output.exists() && output.delete()) {
+                    log.accept("删除未完成的输出: " + output.getName());
+                }
+            }
+            pending.add(file);
+        }
+        return pending;
+    }
+
+    private void logSkipped(int skipped) {
+        if (skipped > 0) {
+            log.accept("续跑：跳过 %d 个已完成的文件".formatted(skipped));
+        }
+    }
+
+    private boolean isValidOutput(JobJournal.Completed completed) {
+        File output = new File(completed.outputPath());
+        if (!output.isFile() || output.length() == 0 || output.length() != completed.size()) {
+            return false;
+        }
+        try {
+            mediaProcessor.probe(output.getAbsolutePath()).durationSeconds();
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static File checkFolder(String folderPath) throws PlanningException {
+        File folder = new File(folderPath).getAbsoluteFile();
+        if (!folder.exists() || !folder.isDirectory()) {
+            throw new PlanningException(false, "指定的路径不是有效的文件夹", "无效的文件夹路径");
+        }
+        String[] names = folder.list();
+        if (names == null || names.length == 0) {
+            throw new PlanningException(true, "文件夹为空，没有要处理的文件", "文件夹为空");
+        }
+        return folder;
+    }
+
+    private static void createOkFolder(File folder) {
+        File okFolder = new File(folder, "OK");
+        if (!okFolder.exists()) {
+            okFolder.mkdir();
+        }
+    }
+
+    /**
+     * @description: 为同一文件夹中的输入生成确定的输出路径，输出放在根文件夹 OK 下对应的子文件夹中
+     * 同名不同扩展名的文件（如 a.mp4 与 a.mkv）都会映射到 OK/a_c.mp4，
+     * 并发处理时会互相覆盖，这种情况下在后缀前加入原扩展名：OK/a_mkv_c.mp4
+     */
+    static Map<File, String> assignOutputPaths(File root, List<File> files, String suffix) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (File file : files) {
+            counts.merge(outputPath(root, file, suffix), 1, Integer::sum);
+        }
+
+        Map<File, String> outputPaths = new LinkedHashMap<>();
+        for (File file : files) {
+            String outputPath = outputPath(root, file, suffix);
+            if (counts.get(outputPath) > 1) {
+                String name = file.getName();
+                String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+                outputPath = outputPath(root, file, extension + "_" + suffix);
+            }
+            outputPaths.put(file, outputPath);
+        }
+        return outputPaths;
+    }
+
+    // 与 MediaProcessor.generateOutputPath 相同的命名，根文件夹中的文件结果一致
+    private static String outputPath(File root, File input, String suffix) {
+        String name = input.getName();
+        int dotIndex = name.lastIndexOf('.');
+        String baseName = dotIndex > 0 ? name.substring(0, dotIndex) : name;
+        return new File(FileDiscovery.outputFolder(root, input), baseName + "_" + suffix + ".mp4").getAbsolutePath();
+    }
+
+    // 按所选策略排序其余的任务，并在加入前把顺序和预计耗时输出到日志
+    private List<File> orderJobs(List<File> files, JobOrder order) {
+        Map<File, Double> costs = order.needsCost() ? probeCosts(files) : Map.of();
+        List<File> ordered = order.order(files, costs);
+
+        log.accept("其余 %d 个任务的顺序: %s".formatted(ordered.size(), order.getTitle()));
+        for (int i = 0; i < ordered.size(); i++) {
+            File file = ordered.get(i);
+            if (order.needsCost()) {
+                Double cost = costs.get(file);
+                String costText = cost == null ? "未知" : "%.1f 秒".formatted(cost);
+                log.accept("  %d. %s  预计耗时: %s".formatted(i + 1, file.getName(), costText));
+            } else {
+                log.accept("  %d. %s".formatted(i + 1, file.getName()));
+            }
+        }
+        return ordered;
+    }
+
+    // 并行探测所有输入的时长作为预计耗时，探测失败的文件不放入结果
+    private Map<File, Double> probeCosts(List<File> files) {
+        Map<File, Double> costs = new ConcurrentHashMap<>();
+        ExecutorService probePool = Executors.newFixedThreadPool(Math.max(1, Math.min(PROBE_THREADS, files.size())));
+        try {
+            List<Future<?>> futures = new ArrayList<>(files.size());
+            for (File file : files) {
+                futures.add(probePool.submit(() -> {
+                    try {
+                        costs.put(file, mediaProcessor.probe(file.getAbsolutePath()).durationSeconds());
+                    } catch (Exception e) {
+                        if (!scheduler.processes().isCancelled()) {
+                            log.accept("探测时长失败: " + file.getName() + " " + e.getMessage());
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (Exception e) {
+            log.accept("探测时长被中断: " + e.getMessage());
+        } finally {
+            probePool.shutdown();
+        }
+        return costs;
+    }
+}
@@ -0,0 +1,188 @@
+package com.ffmpegui;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * @description: 单个长视频的分段并行编码
+ * 先用流复制按关键帧把视频轨切成 N 段，各段用同样的滤镜和压缩参数并行编码，
+ * 再用 concat 分离器流复制拼回，音频直接从原文件整轨编码，避免分段边界出现断音。
+ * 分段文件放在 {@link ScratchManager} 分配的任务临时目录中。
+ */
+final class ChunkedEncoder {
+    // 每段至少的时长（秒），太短的文件分段得不偿失
+    static final double MIN_CHUNK_SECONDS = 60;
+
+    // 用户压缩参数中与音频有关的选项，拼回时沿用
+    private static final Set<String> AUDIO_OPTIONS = Set.of("-c:a", "-codec:a", "-acodec", "-b:a", "-ar", "-ac");
+    // 切出的分段和编码后的分段各约一份输入大小
+    private static final int SCRATCH_FACTOR = 2;
+
+    private final JobScheduler scheduler;
+    private final CommandExecutor executor;
+    private final ScratchManager scratchManager;
+    private final BiConsumer<JobScheduler.Job, String> log;
+
+    ChunkedEncoder(JobScheduler scheduler, CommandExecutor executor, ScratchManager scratchManager,
+                   BiConsumer<JobScheduler.Job, String> log) {
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.scratchManager = scratchManager;
+        this.log = log;
+    }
+
+    // 纯音频文件没有视频轨，不能分段
+    static boolean supports(File input) {
+        String name = input.getName().toLowerCase();
+        return !(name.endsWith(".mp3") || name.endsWith(".wav") || name.endsWith(".m4a"));
+    }
+
+    // 按时长限制实际分段数，返回 1 表示不分段
+    static int effectiveChunks(double duration, int requested) {
+        return (int) Math.max(1, Math.min(requested, Math.floor(duration / MIN_CHUNK_SECONDS)));
+    }
+
+    /**
+     * @param videoFilter  -vf 参数（如去小字的 delogo），每段使用完全相同的滤镜；为 null 时不加
+     * @param encoderArgs  用户的压缩参数
+     */
+    void encode(JobScheduler.Job job, double duration, int chunks, String videoFilter,
+                List<String> encoderArgs) throws Exception {
+        String inputPath = job.input().getAbsolutePath();
+        ScratchManager.Scratch scratch = scratchManager.open(job, job.input().length() * SCRATCH_FACTOR);
+        Path workDir = scratch.dir();
+        List<CompletableFuture<Void>> stages = new ArrayList<>();
+
+        try {
+            // 1. 按关键帧切分视频轨（流复制，segment 会在指定时间点之后的第一个关键帧切开）
+            List<String> segmentTimes = new ArrayList<>();
+            for (int i = 1; i < chunks; i++) {
+                segmentTimes.add(String.format(Locale.ROOT, "%.3f", duration * i / chunks));
+            }
+            log.accept(job, "分段并行编码：按关键帧切分为 %d 段...".formatted(chunks));
+
+            List<String> splitCommand = new ArrayList<>();
+            splitCommand.add("ffmpeg");
+            splitCommand.add("-i");
+            splitCommand.add(inputPath);
+            splitCommand.add("-map");
+            splitCommand.add("0:v:0");
+            splitCommand.add("-c");
+            splitCommand.add("copy");
+            splitCommand.add("-f");
+            splitCommand.add("segment");
+            splitCommand.add("-segment_times");
+            splitCommand.add(String.join(",", segmentTimes));
+            splitCommand.add("-reset_timestamps");
+            splitCommand.add("1");
+            splitCommand.add("-y");
+            splitCommand.add(workDir.resolve("chunk_%03d.mkv").toString());
+            executor.execute(job, splitCommand);
+
+            List<Path> chunkFiles;
+            try (Stream<Path> files = Files.list(workDir)) {
+                chunkFiles = files.filter(p -> p.getFileName().toString().startsWith("chunk_"))
+                        .sorted()
+                        .toList();
+            }
+            if (chunkFiles.isEmpty()) {
+                throw new Exception("切分视频失败，没有生成分段文件");
+            }
+            job.setProgress(0.05);
+
+            // 2. 各段并行编码
+            log.accept(job, "正在并行编码 %d 个分段...".formatted(chunkFiles.size()));
+            AtomicInteger finished = new AtomicInteger();
+            List<Path> encodedFiles = new ArrayList<>();
+            for (int i = 0; i < chunkFiles.size(); i++) {
+                Path encodedFile = workDir.resolve("encoded_%03d.mkv".formatted(i));
+                encodedFiles.add(encodedFile);
+
+                List<String> encodeCommand = new ArrayList<>();
+                encodeCommand.add("ffmpeg");
+                encodeCommand.add("-i");
+                encodeCommand.add(chunkFiles.get(i).toString());
+                if (videoFilter != null) {
+                    encodeCommand.add("-vf");
+                    encodeCommand.add(videoFilter);
+                }
+                encodeCommand.addAll(encoderArgs);
+                encodeCommand.add("-an");
+                encodeCommand.add("-y");
+                encodeCommand.add(encodedFile.toString());
+
+                stages.add(scheduler.runStage(() -> {
+                    executor.execute(job, encodeCommand);
+                    job.setProgress(0.05 + 0.85 * finished.incrementAndGet() / chunkFiles.size());
+                }));
+            }
+            JobScheduler.awaitAll(stages);
+
+            // 3. 流复制拼回视频，音频从原文件整轨编码
+            log.accept(job, "正在拼接分段并合并音频...");
+            File listFile = workDir.resolve("list.txt").toFile();
+            try (PrintWriter writer = new PrintWriter(listFile, "UTF-8")) {
+                for (Path encodedFile : encodedFiles) {
+                    writer.println("file '" + encodedFile.toString().replace("\\", "\\\\") + "'");
+                }
+            }
+
+            List<String> concatCommand = new ArrayList<>();
+            concatCommand.add("ffmpeg");
+            concatCommand.add("-f");
+            concatCommand.add("concat");
+            concatCommand.add("-safe");
+            concatCommand.add("0");
+            concatCommand.add("-i");
+            concatCommand.add(listFile.getAbsolutePath());
+            concatCommand.add("-i");
+            concatCommand.add(inputPath);
+            concatCommand.add("-map");
+            concatCommand.add("0:v:0");
+            concatCommand.add("-map");
+            concatCommand.add("1:a:0?");
+            concatCommand.add("-c:v");
+            concatCommand.add("copy");
+            concatCommand.addAll(audioArgs(encoderArgs));
+            concatCommand.add("-y");
+            concatCommand.add(job.outputPath());
+            executor.execute(job, concatCommand);
+        } finally {
+            // 等待仍在运行的分段结束，再删除临时目录
+            for (CompletableFuture<Void> stage : stages) {
+                try {
+                    stage.join();
+                } catch (Exception ignored) {
+                    // 失败原因已经由 awaitAll 抛出
+                }
+            }
+            scratch.close();
+        }
+    }
+
+    // 从用户参数中取出音频选项，没有指定时使用 aac 192k
+    static List<String> audioArgs(List<String> encoderArgs) {
+        List<String> audioArgs = new ArrayList<>();
+        for (int i = 0; i < encoderArgs.size() - 1; i++) {
+            if (AUDIO_OPTIONS.contains(encoderArgs.get(i))) {
+                audioArgs.add(encoderArgs.get(i));
+                audioArgs.add(encoderArgs.get(i + 1));
+                i++;
+            }
+        }
+        if (audioArgs.isEmpty()) {
+            audioArgs.addAll(List.of("-c:a", "aac", "-b:a", "192k"));
+        }
+        return audioArgs;
+    }
+}
@@ -0,0 +1,11 @@
+package com.ffmpegui;
+
+import java.util.List;
+
+/**
+ * @description: 执行一条 ffmpeg 命令，输出写入对应任务的日志，返回码非 0 时抛出异常
+ */
+@FunctionalInterface
+interface CommandExecutor {
+    void execute(JobScheduler.Job job, List<String> command) throws Exception;
+}
@@ -0,0 +1,35 @@
+package com.ffmpegui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 记录类型存储解析后的坐标参数
+record DelogoParams(int x, int y, int width, int height) {
+    public static DelogoParams parse(String params) {
+        String[] parts = params.split(",");
+        return new DelogoParams(
+                Integer.parseInt(parts[0]),
+                Integer.parseInt(parts[1]),
+                Integer.parseInt(parts[2]),
+                Integer.parseInt(parts[3])
+        );
+    }
+
+    public static List<DelogoParams> parseList(String delogoParams) {
+        String[] paramSets = delogoParams.split("&");
+        List<DelogoParams> list = new ArrayList<>(paramSets.length);
+        for (String paramSet : paramSets) {
+            list.add(parse(paramSet));
+        }
+        return list;
+    }
+
+    // 与 parseList 相反：多个区域用 & 连接，如 98,1169,879,155&10,10,200,80
+    public static String format(List<DelogoParams> list) {
+        List<String> paramSets = new ArrayList<>(list.size());
+        for (DelogoParams params : list) {
+            paramSets.add(params.x() + "," + params.y() + "," + params.width() + "," + params.height());
+        }
+        return String.join("&", paramSets);
+    }
+}
@@ -0,0 +1,346 @@
+package com.ffmpegui;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * @description: 分布式模式的协调端
+ * 监听端口等待 {@link WorkerNode} 连接，批处理任务不在本机执行，而是交给有空闲槽位的 worker；
+ * worker 断线时，它手上未完成的任务会重新分配给其他 worker。
+ * 默认只监听本机回环地址；跨机器使用时用系统属性 ffmpegui.coordinator.bind 指定监听地址，
+ * 并用 ffmpegui.cluster.token 设置共享令牌，HELLO 中令牌不符的连接会被断开。
+ */
+final class DistributedCoordinator {
+    static final String BIND_PROPERTY = "ffmpegui.coordinator.bind";
+    // 同一个任务因 worker 断线最多重新分配的次数
+    private static final int MAX_ATTEMPTS = 3;
+
+    // worker 断线，任务需要重新分配
+    static final class WorkerLostException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        WorkerLostException(String message) {
+            super(message);
+        }
+    }
+
+    // 已发给 worker、等待结果的任务
+    private record Pending(JobScheduler.Job job, CompletableFuture<Void> result) {
+    }
+
+    private final class WorkerConnection {
+        private final Socket socket;
+        private final BufferedWriter writer;
+        private final Map<Long, Pending> inflight = new ConcurrentHashMap<>();
+        private volatile String name;
+        private volatile int slots;
+        // 收到令牌正确的 HELLO 之前不处理其他消息，也不分配任务
+        private volatile boolean authenticated;
+
+        WorkerConnection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            this.name = socket.getRemoteSocketAddress().toString();
+        }
+
+        int freeSlots() {
+            return slots - inflight.size();
+        }
+
+        synchronized void send(String message) throws IOException {
+            writer.write(message);
+            writer.newLine();
+            writer.flush();
+        }
+
+        void sendQuietly(String message) {
+            try {
+                send(message);
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // 已经断开
+            }
+        }
+
+        // 读取 worker 发来的消息，直到断线
+        void readLoop() {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+                socket.setSoTimeout(WorkerProtocol.READ_TIMEOUT_MILLIS);
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        handle(line);
+                    } catch (RuntimeException e) {
+                        // 格式错误或版本不一致的消息只丢弃这一条，不断开连接
+                        log.accept("忽略 worker %s 的无效消息: %s（%s）".formatted(name, line, e));
+                    }
+                }
+            } catch (IOException e) {
+                // 断线或心跳超时
+            } finally {
+                workerLost(this);
+            }
+        }
+
+        private void handle(String line) {
+            String[] parts = line.split(" ", 3);
+            if (!authenticated && !parts[0].equals(WorkerProtocol.HELLO)) {
+                log.accept("worker %s 未发送 HELLO，断开连接".formatted(name));
+                close();
+                return;
+            }
+            switch (parts[0]) {
+                case WorkerProtocol.HELLO -> {
+                    // 名称放在最后，可以包含空格
+                    String[] hello = line.split(" ", 4);
+                    int helloSlots = Integer.parseInt(hello[1]);
+                    if (!WorkerProtocol.tokenMatches(token, hello[2])) {
+                        log.accept("worker %s 的令牌不正确，断开连接".formatted(name));
+                        close();
+                        return;
+                    }
+                    name = hello[3];
+                    slots = helloSlots;
+                    authenticated = true;
+                    log.accept("worker 已连接: %s（%d 个槽位）".formatted(name, slots));
+                    capacityChanged();
+                }
+                case WorkerProtocol.LOG -> log.accept("{" + name + "} " + (parts.length > 1 ? line.substring(4) : ""));
+                case WorkerProtocol.PROGRESS -> {
+                    Pending pending = inflight.get(Long.parseLong(parts[1]));
+                    if (pending != null) {
+                        pending.job().setProgress(Double.parseDouble(parts[2]));
+                    }
+                }
+                case WorkerProtocol.DONE -> complete(Long.parseLong(parts[1]), null);
+                case WorkerProtocol.FAILED -> complete(Long.parseLong(parts[1]),
+                        new Exception("worker " + name + ": " + (parts.length > 2 ? parts[2] : "")));
+                default -> {
+                    // PING 只用于保持连接
+                }
+            }
+        }
+
+        private void complete(long jobId, Exception error) {
+            Pending pending = inflight.remove(jobId);
+            if (pending != null) {
+                if (error == null) {
+                    pending.result().complete(null);
+                } else {
+                    pending.result().completeExceptionally(error);
+                }
+            }
+            signalCapacity();
+        }
+    }
+
+    private final String bindAddress;
+    private final int port;
+    private final String token;
+    private final ProcessController processes;
+    private final Consumer<String> log;
+    private final IntConsumer capacityListener;
+    private final List<WorkerConnection> workers = new CopyOnWriteArrayList<>();
+    private final AtomicLong jobIds = new AtomicLong();
+    private final Object capacityLock = new Object();
+    private volatile ServerSocket serverSocket;
+
+    /**
+     * @param bindAddress      监听地址，为空时只监听本机回环地址
+     * @param token            worker 需要在 HELLO 中提供的令牌，为空时不检查
+     * @param processes        本机的进程控制，用于判断批次是否已取消
+     * @param capacityListener worker 总槽位变化时回调，用于调整本机调度器的并发数
+     */
+    DistributedCoordinator(String bindAddress, int port, String token, ProcessController processes,
+                           Consumer<String> log, IntConsumer capacityListener) {
+        this.bindAddress = bindAddress;
+        this.port = port;
+        this.token = token;
+        this.processes = processes;
+        this.log = log;
+        this.capacityListener = capacityListener;
+    }
+
+    // 监听地址和令牌来自系统属性
+    static DistributedCoordinator fromSystemProperties(int port, ProcessController processes, Consumer<String> log,
+                                                       IntConsumer capacityListener) {
+        return new DistributedCoordinator(System.getProperty(BIND_PROPERTY), port,
+                WorkerProtocol.tokenFromSystemProperties(), processes, log, capacityListener);
+    }
+
+    void start() throws IOException {
+        InetAddress address = bindAddress == null || bindAddress.isBlank()
+                ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bindAddress.trim());
+        serverSocket = new ServerSocket(port, 50, address);
+        Thread acceptThread = new Thread(this::acceptLoop, "coordinator-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        log.accept("分布式协调端已启动，监听 %s:%d，等待 worker 连接...".formatted(address.getHostAddress(), port));
+        if (!address.isLoopbackAddress() && token.isEmpty()) {
+            log.accept("警告：未设置令牌（-D%s），能访问该端口的任何机器都可以注册为 worker"
+                    .formatted(WorkerProtocol.TOKEN_PROPERTY));
+        }
+    }
+
+    void stop() {
+        ServerSocket socket = serverSocket;
+        serverSocket = null;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // 已经关闭
+            }
+        }
+        for (WorkerConnection worker : workers) {
+            worker.close();
+        }
+    }
+
+    int totalSlots() {
+        int total = 0;
+        for (WorkerConnection worker : workers) {
+            total += worker.slots;
+        }
+        return total;
+    }
+
+    // 把任务交给一个 worker 执行并等待结果；worker 断线时重新分配
+    void execute(JobScheduler.Job job, JobSettings settings) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            long jobId = jobIds.incrementAndGet();
+            Pending pending = new Pending(job, new CompletableFuture<>());
+            WorkerConnection worker = assignWorker(jobId, pending);
+
+            Properties props = settings.toProperties();
+            props.setProperty("input", job.input().getAbsolutePath());
+            props.setProperty("output", job.outputPath());
+            worker.sendQuietly(WorkerProtocol.JOB + " " + jobId + " " + WorkerProtocol.encode(props));
+
+            try {
+                pending.result().get();
+                return;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof WorkerLostException lost && attempt < MAX_ATTEMPTS) {
+                    log.accept("[%s] %s，重新分配（第 %d 次）".formatted(job.name(), lost.getMessage(), attempt + 1));
+                    continue;
+                }
+                if (e.getCause() instanceof Exception cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+    }
+
+    void cancelAll() {
+        broadcast(WorkerProtocol.CANCEL);
+        signalCapacity();
+    }
+
+    void pauseAll() {
+        broadcast(WorkerProtocol.PAUSE);
+    }
+
+    void resumeAll() {
+        broadcast(WorkerProtocol.RESUME);
+    }
+
+    private void broadcast(String message) {
+        for (WorkerConnection worker : workers) {
+            worker.sendQuietly(message);
+        }
+    }
+
+    // 等待一个有空闲槽位的 worker（优先选择空闲槽位最多的）并登记任务
+    private WorkerConnection assignWorker(long jobId, Pending pending) throws InterruptedException {
+        synchronized (capacityLock) {
+            while (true) {
+                if (processes.isCancelled()) {
+                    throw new CancellationException("批处理已取消");
+                }
+                WorkerConnection best = null;
+                for (WorkerConnection worker : workers) {
+                    if (worker.freeSlots() > 0 && (best == null || worker.freeSlots() > best.freeSlots())) {
+                        best = worker;
+                    }
+                }
+                if (best != null) {
+                    best.inflight.put(jobId, pending);
+                    return best;
+                }
+                capacityLock.wait(1000);
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        ServerSocket socket;
+        while ((socket = serverSocket) != null) {
+            try {
+                WorkerConnection worker = new WorkerConnection(socket.accept());
+                workers.add(worker);
+                Thread readThread = new Thread(worker::readLoop, "coordinator-worker");
+                readThread.setDaemon(true);
+                readThread.start();
+            } catch (IOException e) {
+                if (serverSocket != null) {
+                    log.accept("接受 worker 连接失败: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void workerLost(WorkerConnection worker) {
+        // 与 assignWorker 互斥，保证断线后不会再有任务登记到这个 worker 上
+        synchronized (capacityLock) {
+            if (!workers.remove(worker)) {
+                return;
+            }
+            worker.close();
+            log.accept("worker 已断开: %s，%d 个未完成任务将重新分配".formatted(worker.name, worker.inflight.size()));
+            for (Pending pending : worker.inflight.values()) {
+                pending.result().completeExceptionally(new WorkerLostException("worker " + worker.name + " 已断开"));
+            }
+            worker.inflight.clear();
+        }
+        capacityChanged();
+    }
+
+    private void capacityChanged() {
+        capacityListener.accept(totalSlots());
+        signalCapacity();
+    }
+
+    private void signalCapacity() {
+        synchronized (capacityLock) {
+            capacityLock.notifyAll();
+        }
+    }
+}
@@ -2,18 +2,17 @@ package com.ffmpegui;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
+import javax.swing.text.BadLocationException;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
+import java.nio.file.Path;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.regex.Pattern;
-import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 public class FFmpegBatchProcessor extends JFrame {
     // 主题颜色
@@ -34,29 +33,36 @@ public class FFmpegBatchProcessor extends JFrame {
     private JTextField folderPathField;
     private JButton browseButton;
     private JButton processButton;
+    private JButton pauseButton;
+    private JButton cancelButton;
     private JProgressBar progressBar;
     private JLabel statusLabel;
     private JTextArea logArea;
-    private ConcurrentLinkedQueue<String> messageQueue = new ConcurrentLinkedQueue<>();
+    // 界面只保留最近的日志行，完整日志写入轮转的日志文件
+    private static final int LOG_UI_LINES = 5_000;
+    private final transient LogBuffer logBuffer = new LogBuffer(LOG_UI_LINES, RotatingLogFile.fromSystemProperties());
     private Timer logUpdateTimer;
-
-    // 页面类型
-    private enum PageType {
-        COMPRESS("转小"),
-        REMOVE_SUBTITLE("去小字"),
-        REMOVE_TRAILER("去未完待续"),
-        VIDEO_SPLICE_ADVANCED("高级拼接");
-
-        private final String title;
-
-        PageType(String title) {
-            this.title = title;
-        }
-
-        public String getTitle() {
-            return title;
-        }
-    }
+    private JSpinner concurrencySpinner;
+    private JComboBox<JobOrder> jobOrderComboBox;
+    private JSpinner chunkCountSpinner;
+    private JCheckBox distributedCheckBox;
+    private JCheckBox watchFolderCheckBox;
+    private JCheckBox recursiveCheckBox;
+    private JTextField includeGlobField;
+    private JTextField excludeGlobField;
+    private JTextField distributedPortField;
+
+    // 批处理调度器，默认并发数按核数估算（单个 libx264 进程吃不满多核机器）
+    private static final int DEFAULT_CONCURRENCY = Math.max(1, Runtime.getRuntime().availableProcessors() / 8);
+    private final transient JobScheduler jobScheduler = new JobScheduler(DEFAULT_CONCURRENCY);
+    // 当前正在运行的批次，用于取消、暂停和继续
+    private transient volatile JobScheduler.Batch currentBatch;
+    private final transient MediaProcessor mediaProcessor = new MediaProcessor(jobScheduler, this::addLogMessage);
+    private final transient BatchPlanner batchPlanner = new BatchPlanner(jobScheduler, mediaProcessor, this::addLogMessage);
+    // 分布式模式下的协调端，未启用时为 null
+    private transient volatile DistributedCoordinator coordinator;
+    // 监视文件夹模式下正在运行的监视，未启用时为 null
+    private transient volatile FolderWatcher folderWatcher;
 
     // 当前页面
     private PageType currentPage = PageType.COMPRESS;
@@ -65,6 +71,7 @@ public class FFmpegBatchProcessor extends JFrame {
     private JPanel compressPanel;
     private JPanel removeSubtitlePanel;
     private JPanel removeTrailerPanel;
+    private JPanel combinedPanel;
     private JPanel videoSpliceAdvancedPanel;
 
     // 各页面的输入字段
@@ -73,13 +80,23 @@ public class FFmpegBatchProcessor extends JFrame {
     private JTextField subtitleCompressParamsField;
     private JTextField trailerDelogoParamsField;
     private JTextField trailerDurationField;
+    private JCheckBox partialTrailerCheckBox;
     private JTextField trailerCompressParamsField;
+    private JTextField combinedCompressParamsField;
+    private JTextField combinedDelogoParamsField;
+    private JTextField combinedDurationField;
+    private JTextField combinedTrimStartField;
+    private JTextField combinedTrimEndField;
+    private JCheckBox combinedSubtitleCheckBox;
+    private JCheckBox combinedTrailerCheckBox;
+    private JCheckBox combinedCompressCheckBox;
     private JTextField spliceTailDurationField;
     private JTextField spliceHeadDurationField;
     private JTextField spliceCompressParamsField;
     private JCheckBox useNvencCheckBox;
     private JCheckBox spliceHeadCheckBox;
     private JCheckBox spliceTailCheckBox;
+    private JComboBox<SpliceMode> spliceModeComboBox;
 
     // 硬件加速选择组件
     private ButtonGroup accelerationGroup;
@@ -94,35 +111,13 @@ public class FFmpegBatchProcessor extends JFrame {
     private CardLayout cardLayout;
 
     // 默认的压缩参数
-    private static final String DEFAULT_COMPRESS_PARAMS = "-c:v libx264 -b:v 8000k -crf 23 -c:a aac -b:a 192k -y";
+    private static final String DEFAULT_COMPRESS_PARAMS = MediaProcessor.DEFAULT_COMPRESS_PARAMS;
     private static final String DEFAULT_NVENC_PARAMS = "-c:v h264_nvenc -profile:v high -b:v 8000k -crf 23 -y";
     private static final String DEFAULT_INTEL_PARAMS = "-c:v h264_qsv  -b:v 8000k -crf 23 -y";
     private static final String DEFAULT_AMD_PARAMS = "-c:v h264_amf  -b:v 8000k -crf 23 -y";
     private static final String DEFAULT_UI_PARAMS = DEFAULT_INTEL_PARAMS;
     private static final String VERSION = "2.1";
 
-    // 记录类型存储解析后的坐标参数
-    private record DelogoParams(int x, int y, int width, int height) {
-        public static DelogoParams parse(String params) {
-            String[] parts = params.split(",");
-            return new DelogoParams(
-                    Integer.parseInt(parts[0]),
-                    Integer.parseInt(parts[1]),
-                    Integer.parseInt(parts[2]),
-                    Integer.parseInt(parts[3])
-            );
-        }
-
-        public static List<DelogoParams> parseList(String delogoParams) {
-            String[] paramSets = delogoParams.split("&");
-            List<DelogoParams> list = new ArrayList<>(paramSets.length);
-            for (String paramSet : paramSets) {
-                list.add(parse(paramSet));
-            }
-            return list;
-        }
-    }
-
     // 添加新的类成员变量来存储日志滚动窗格
     private JScrollPane logScrollPane;
 
@@ -157,6 +152,14 @@ public class FFmpegBatchProcessor extends JFrame {
         // 初始化日志更新计时器
         initLogUpdateTimer();
 
+        // 运行指标：日志队列长度，设置了 ffmpegui.metrics.port 时开启 HTTP 接口
+        jobScheduler.metrics().bindLogQueue(logBuffer::size);
+        MetricsServer.fromSystemProperties(jobScheduler.metrics(), this::addLogMessage);
+
+        // 关闭程序时结束所有 ffmpeg 进程树，避免留下孤儿进程
+        ProcessController processes = jobScheduler.processes();
+        Runtime.getRuntime().addShutdownHook(new Thread(processes::cancelAll, "ffmpeg-shutdown"));
+
         // 默认显示第一个页面
         updateCurrentPage(PageType.COMPRESS);
 
@@ -175,12 +178,52 @@ public class FFmpegBatchProcessor extends JFrame {
         processButton = createStyledButton("开始处理");
         processButton.setBackground(PRIMARY_COLOR);
         processButton.setForeground(Color.WHITE);
+        pauseButton = createStyledButton("暂停");
+        pauseButton.setEnabled(false);
+        cancelButton = createStyledButton("取消");
+        cancelButton.setEnabled(false);
 
         progressBar = new JProgressBar(0, 100);
         progressBar.setStringPainted(true);
         progressBar.setForeground(PRIMARY_COLOR);
         progressBar.setBackground(ACCENT_COLOR);
 
+        concurrencySpinner = new JSpinner(new SpinnerNumberModel(DEFAULT_CONCURRENCY, 1, 64, 1));
+        concurrencySpinner.setFont(NORMAL_FONT);
+        concurrencySpinner.setToolTipText("同时运行的 ffmpeg 任务数");
+
+        jobOrderComboBox = new JComboBox<>(JobOrder.values());
+        jobOrderComboBox.setFont(NORMAL_FONT);
+        jobOrderComboBox.setToolTipText("最长优先：多并发时整批最快完成；最短优先：尽早产出更多成品");
+
+        chunkCountSpinner = new JSpinner(new SpinnerNumberModel(1, 1, 32, 1));
+        chunkCountSpinner.setFont(NORMAL_FONT);
+        chunkCountSpinner.setToolTipText("大于1时，转小和去小字会把单个长视频按关键帧切成多段并行编码");
+
+        watchFolderCheckBox = new JCheckBox("监视文件夹");
+        watchFolderCheckBox.setFont(NORMAL_FONT);
+        watchFolderCheckBox.setOpaque(false);
+        watchFolderCheckBox.setToolTipText("开始后持续监视文件夹，新文件拷贝完成后立即处理；处理中取消勾选即停止监视");
+
+        recursiveCheckBox = new JCheckBox("包含子文件夹");
+        recursiveCheckBox.setFont(NORMAL_FONT);
+        recursiveCheckBox.setOpaque(false);
+        recursiveCheckBox.setToolTipText("处理子文件夹中的文件，输出在 OK 文件夹下保持原有的目录结构");
+        includeGlobField = createStyledTextField();
+        includeGlobField.setColumns(12);
+        includeGlobField.setToolTipText("只处理匹配的文件，多个通配符用逗号分隔，如 *.mkv,S01/**；留空处理所有媒体文件");
+        excludeGlobField = createStyledTextField();
+        excludeGlobField.setColumns(12);
+        excludeGlobField.setToolTipText("跳过匹配的文件或子文件夹，多个通配符用逗号分隔，如 *_sample.mp4,extras");
+
+        distributedCheckBox = new JCheckBox("分布式");
+        distributedCheckBox.setFont(NORMAL_FONT);
+        distributedCheckBox.setOpaque(false);
+        distributedCheckBox.setToolTipText("任务交给连接到本机端口的 worker 执行，文件夹需要是各节点都能以相同路径访问的共享目录");
+        distributedPortField = createStyledTextField();
+        distributedPortField.setColumns(5);
+        distributedPortField.setText(String.valueOf(WorkerProtocol.DEFAULT_PORT));
+
         statusLabel = new JLabel("就绪");
         statusLabel.setFont(NORMAL_FONT);
         statusLabel.setForeground(TEXT_COLOR);
@@ -222,9 +265,26 @@ public class FFmpegBatchProcessor extends JFrame {
         trailerDurationField = createStyledTextField();
         trailerDurationField.setText("2.2");
         trailerDurationField.setToolTipText("视频结尾处理时长（秒），如2.2表示处理视频最后2.2秒");
+        partialTrailerCheckBox = new JCheckBox("只重新编码结尾");
+        partialTrailerCheckBox.setFont(NORMAL_FONT);
+        partialTrailerCheckBox.setOpaque(false);
+        partialTrailerCheckBox.setToolTipText("结尾之前的画面直接流复制，不应用压缩参数，几秒即可完成；只有一个未完待续框时有效");
         trailerCompressParamsField = createStyledTextField();
         trailerCompressParamsField.setText(DEFAULT_UI_PARAMS);
 
+        // 初始化组合处理页面的输入字段
+        combinedCompressParamsField = createStyledTextField();
+        combinedCompressParamsField.setText(DEFAULT_UI_PARAMS);
+        combinedDelogoParamsField = createStyledTextField();
+        combinedDelogoParamsField.setToolTipText("输入格式：x,y,w,h，多个区域用&分隔；同时去未完待续时最后一个框为未完待续框");
+        combinedDurationField = createStyledTextField();
+        combinedDurationField.setText("2.2");
+        combinedDurationField.setToolTipText("去未完待续的结尾处理时长（秒），相对裁剪后的结尾");
+        combinedTrimStartField = createStyledTextField();
+        combinedTrimStartField.setToolTipText("去掉开头的秒数，不裁剪时留空");
+        combinedTrimEndField = createStyledTextField();
+        combinedTrimEndField.setToolTipText("去掉结尾的秒数，不裁剪时留空");
+
         // 初始化视频拼接页面的输入字段
         spliceTailDurationField = createStyledTextField();
         spliceTailDurationField.setText("1.5");
@@ -311,55 +371,56 @@ public class FFmpegBatchProcessor extends JFrame {
         logUpdateTimer.start();
     }
 
+    // 定时器在 EDT 上运行：取走缓冲中的日志追加到日志区，超过 LOG_UI_LINES 行时删掉最前面的行
     private void updateLogFromQueue(ActionEvent e) {
-        if (!messageQueue.isEmpty()) {
-            StringBuilder sb = new StringBuilder();
-            String message;
-            while ((message = messageQueue.poll()) != null) {
-                sb.append(message).append("\n");
-            }
+        LogBuffer.Drain drain = logBuffer.drain();
+        if (drain.lines().isEmpty()) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        if (drain.dropped() > 0) {
+            sb.append("... 输出过快，省略 %d 行，完整日志见 %s\n".formatted(drain.dropped(), logBuffer.spill().path()));
+        }
+        for (String message : drain.lines()) {
+            sb.append(message).append("\n");
+        }
 
-            final String logText = sb.toString();
-            SwingUtilities.invokeLater(() -> {
-                // 判断日志区是否已滚动到底部
-                JScrollBar verticalBar = logScrollPane.getVerticalScrollBar();
-                boolean isAtBottom = verticalBar.getValue() + verticalBar.getVisibleAmount() >= verticalBar.getMaximum() - 10;
-                
-                // 记住当前的滚动位置
-                int currentPosition = verticalBar.getValue();
-                
-                // 将文本转换为UTF-8编码处理，避免显示乱码
-                try {
-                    String normalizedText = new String(logText.getBytes("UTF-8"), "UTF-8");
-                    logArea.append(normalizedText);
-                } catch (Exception ex) {
-                    // 如果转换失败，直接添加原始文本
-                    logArea.append(logText);
-                }
+        // 判断日志区是否已滚动到底部
+        JScrollBar verticalBar = logScrollPane.getVerticalScrollBar();
+        boolean isAtBottom = verticalBar.getValue() + verticalBar.getVisibleAmount() >= verticalBar.getMaximum() - 10;
 
-                // 仅当之前位于底部时，才自动滚动到底部
-                if (isAtBottom) {
-                    logArea.setCaretPosition(logArea.getDocument().getLength());
-                } else {
-                    // 否则保持原来的滚动位置
-                    verticalBar.setValue(currentPosition);
-                }
-            });
+        // 记住当前的滚动位置
+        int currentPosition = verticalBar.getValue();
+
+        logArea.append(sb.toString());
+        trimLogArea();
+
+        // 仅当之前位于底部时，才自动滚动到底部
+        if (isAtBottom) {
+            logArea.setCaretPosition(logArea.getDocument().getLength());
+        } else {
+            // 否则保持原来的滚动位置
+            verticalBar.setValue(currentPosition);
         }
     }
 
-    // 添加日志消息到队列
-    private void addLogMessage(String message) {
-        // 确保日志消息使用UTF-8编码
+    private void trimLogArea() {
+        int excess = logArea.getLineCount() - LOG_UI_LINES;
+        if (excess <= 0) {
+            return;
+        }
         try {
-            String normalizedMessage = new String(message.getBytes("UTF-8"), "UTF-8");
-            messageQueue.add(normalizedMessage);
-        } catch (Exception e) {
-            // 如果转换失败，直接添加原始消息
-            messageQueue.add(message);
+            logArea.getDocument().remove(0, logArea.getLineStartOffset(excess));
+        } catch (BadLocationException ex) {
+            // 行号来自同一个文档，不会越界
         }
     }
 
+    // 添加日志消息：写入日志文件，并放入界面缓冲
+    private void addLogMessage(String message) {
+        logBuffer.add(message);
+    }
+
     private void layoutComponents() {
         // 创建主面板，使用边框布局
         JPanel mainPanel = new JPanel(new BorderLayout()) {
@@ -412,6 +473,9 @@ public class FFmpegBatchProcessor extends JFrame {
         // 创建去未完待续页面
         removeTrailerPanel = createRemoveTrailerPanel();
 
+        // 创建组合处理页面
+        combinedPanel = createCombinedPanel();
+
         // 创建视频拼接页面
         videoSpliceAdvancedPanel = createVideoSpliceAdvancedPanel();
 
@@ -419,12 +483,45 @@ public class FFmpegBatchProcessor extends JFrame {
         cardPanel.add(compressPanel, PageType.COMPRESS.name());
         cardPanel.add(removeSubtitlePanel, PageType.REMOVE_SUBTITLE.name());
         cardPanel.add(removeTrailerPanel, PageType.REMOVE_TRAILER.name());
+        cardPanel.add(combinedPanel, PageType.COMBINED.name());
         cardPanel.add(videoSpliceAdvancedPanel, PageType.VIDEO_SPLICE_ADVANCED.name());
 
         // 创建控制面板（包含按钮和状态）
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         buttonPanel.setOpaque(false);
         buttonPanel.add(processButton);
+        buttonPanel.add(pauseButton);
+        buttonPanel.add(cancelButton);
+
+        // 创建批处理选项面板
+        JPanel batchOptionsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 0));
+        batchOptionsPanel.setOpaque(false);
+        batchOptionsPanel.setBorder(BorderFactory.createEmptyBorder(0, 10, 0, 10));
+        batchOptionsPanel.add(createStyledLabel("并发任务数:"));
+        batchOptionsPanel.add(concurrencySpinner);
+        batchOptionsPanel.add(createStyledLabel("任务顺序:"));
+        batchOptionsPanel.add(jobOrderComboBox);
+        batchOptionsPanel.add(createStyledLabel("单文件分段数:"));
+        batchOptionsPanel.add(chunkCountSpinner);
+        batchOptionsPanel.add(watchFolderCheckBox);
+        batchOptionsPanel.add(distributedCheckBox);
+        batchOptionsPanel.add(createStyledLabel("端口:"));
+        batchOptionsPanel.add(distributedPortField);
+
+        // 文件扫描选项
+        JPanel discoveryPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 0));
+        discoveryPanel.setOpaque(false);
+        discoveryPanel.setBorder(BorderFactory.createEmptyBorder(5, 10, 0, 10));
+        discoveryPanel.add(recursiveCheckBox);
+        discoveryPanel.add(createStyledLabel("包含:"));
+        discoveryPanel.add(includeGlobField);
+        discoveryPanel.add(createStyledLabel("排除:"));
+        discoveryPanel.add(excludeGlobField);
+
+        JPanel optionRowsPanel = new JPanel(new BorderLayout());
+        optionRowsPanel.setOpaque(false);
+        optionRowsPanel.add(batchOptionsPanel, BorderLayout.NORTH);
+        optionRowsPanel.add(discoveryPanel, BorderLayout.SOUTH);
 
         // 创建状态面板
         JPanel statusPanel = new JPanel(new BorderLayout(10, 0));
@@ -436,7 +533,8 @@ public class FFmpegBatchProcessor extends JFrame {
         // 创建底部面板（合并按钮和状态面板）
         JPanel bottomPanel = new JPanel(new BorderLayout());
         bottomPanel.setOpaque(false);
-        bottomPanel.add(buttonPanel, BorderLayout.NORTH);
+        bottomPanel.add(optionRowsPanel, BorderLayout.NORTH);
+        bottomPanel.add(buttonPanel, BorderLayout.CENTER);
         bottomPanel.add(statusPanel, BorderLayout.SOUTH);
 
         // 创建日志区域带标题
@@ -525,6 +623,7 @@ public class FFmpegBatchProcessor extends JFrame {
         delogoPanel.setOpaque(false);
         delogoPanel.add(createStyledLabel("去小字参数(x,y,w,h):"), BorderLayout.WEST);
         delogoPanel.add(subtitleDelogoParamsField, BorderLayout.CENTER);
+        delogoPanel.add(createDetectButton(subtitleDelogoParamsField, false), BorderLayout.EAST);
 
         inputsPanel.add(compressPanel);
         inputsPanel.add(delogoPanel);
@@ -588,12 +687,14 @@ public class FFmpegBatchProcessor extends JFrame {
         delogoPanel.setOpaque(false);
         delogoPanel.add(createStyledLabel("去未完待续参数(x,y,w,h):"), BorderLayout.WEST);
         delogoPanel.add(trailerDelogoParamsField, BorderLayout.CENTER);
+        delogoPanel.add(createDetectButton(trailerDelogoParamsField, true), BorderLayout.EAST);
 
         // 结尾处理时长面板
         JPanel durationPanel = new JPanel(new BorderLayout(10, 0));
         durationPanel.setOpaque(false);
         durationPanel.add(createStyledLabel("结尾处理时长(秒):"), BorderLayout.WEST);
         durationPanel.add(trailerDurationField, BorderLayout.CENTER);
+        durationPanel.add(partialTrailerCheckBox, BorderLayout.EAST);
 
         inputsPanel.add(compressPanel);
         inputsPanel.add(delogoPanel);
@@ -624,6 +725,79 @@ public class FFmpegBatchProcessor extends JFrame {
         return panel;
     }
 
+    private JPanel createCombinedPanel() {
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.setOpaque(false);
+
+        JPanel inputsPanel = new JPanel(new GridLayout(4, 1, 0, 10));
+        inputsPanel.setOpaque(false);
+        inputsPanel.setBorder(BorderFactory.createEmptyBorder(15, 10, 15, 10));
+
+        // 压缩参数面板
+        JPanel compressPanel = new JPanel(new BorderLayout(10, 0));
+        compressPanel.setOpaque(false);
+        compressPanel.add(createStyledLabel("压缩参数:"), BorderLayout.WEST);
+        compressPanel.add(combinedCompressParamsField, BorderLayout.CENTER);
+
+        // 操作复选框面板
+        JPanel stepsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 0));
+        stepsPanel.setOpaque(false);
+        combinedSubtitleCheckBox = new JCheckBox("去小字", true);
+        combinedTrailerCheckBox = new JCheckBox("去未完待续", true);
+        combinedCompressCheckBox = new JCheckBox("转小", true);
+        for (JCheckBox checkBox : List.of(combinedSubtitleCheckBox, combinedTrailerCheckBox, combinedCompressCheckBox)) {
+            checkBox.setFont(NORMAL_FONT);
+            checkBox.setOpaque(false);
+            stepsPanel.add(checkBox);
+        }
+
+        // 去水印参数面板
+        JPanel delogoPanel = new JPanel(new BorderLayout(10, 0));
+        delogoPanel.setOpaque(false);
+        delogoPanel.add(createStyledLabel("去水印参数(x,y,w,h):"), BorderLayout.WEST);
+        delogoPanel.add(combinedDelogoParamsField, BorderLayout.CENTER);
+
+        // 结尾处理时长和裁剪面板
+        JPanel durationPanel = new JPanel(new GridLayout(1, 6, 10, 0));
+        durationPanel.setOpaque(false);
+        durationPanel.add(createStyledLabel("结尾处理时长(秒):"));
+        durationPanel.add(combinedDurationField);
+        durationPanel.add(createStyledLabel("裁掉开头(秒):"));
+        durationPanel.add(combinedTrimStartField);
+        durationPanel.add(createStyledLabel("裁掉结尾(秒):"));
+        durationPanel.add(combinedTrimEndField);
+
+        inputsPanel.add(compressPanel);
+        inputsPanel.add(stepsPanel);
+        inputsPanel.add(delogoPanel);
+        inputsPanel.add(durationPanel);
+
+        // 添加说明面板
+        JPanel descPanel = new JPanel(new BorderLayout());
+        descPanel.setOpaque(false);
+        descPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+
+        JLabel descLabel = new JLabel("<html>选中的操作和裁剪合并成一次编码，避免分别处理时多次压缩损失画质；<br>"
+                + "处理后的文件按操作依次添加后缀，如\"_s_w_c\"（有裁剪时在 c 前加 t）</html>");
+        descLabel.setFont(NORMAL_FONT);
+        descLabel.setForeground(new Color(90, 90, 90));
+        descPanel.add(descLabel, BorderLayout.CENTER);
+
+        // 创建硬件加速选项面板的副本
+        JPanel accelerationPanelCopy = createAccelerationPanelCopy();
+
+        // 添加硬件加速选项到面板
+        JPanel centerPanel = new JPanel(new BorderLayout());
+        centerPanel.setOpaque(false);
+        centerPanel.add(accelerationPanelCopy, BorderLayout.NORTH);
+        centerPanel.add(descPanel, BorderLayout.CENTER);
+
+        panel.add(inputsPanel, BorderLayout.NORTH);
+        panel.add(centerPanel, BorderLayout.CENTER);
+
+        return panel;
+    }
+
     private JPanel createVideoSpliceAdvancedPanel() {
         JPanel panel = new JPanel(new BorderLayout());
         panel.setOpaque(false);
@@ -650,9 +824,17 @@ public class FFmpegBatchProcessor extends JFrame {
         spliceTailCheckBox.setFont(NORMAL_FONT);
         spliceTailCheckBox.setOpaque(false);
         spliceTailCheckBox.setSelected(true);
+
+        spliceModeComboBox = new JComboBox<>(SpliceMode.values());
+        spliceModeComboBox.setFont(NORMAL_FONT);
+        spliceModeComboBox.setToolTipText("<html>分段编码：各部分分别重新编码后拼接<br>"
+                + "智能剪切：只重新编码切点附近的画面，其余直接复制（两个视频编码参数需一致）<br>"
+                + "单次滤镜：一条命令完成拼接，不写临时文件，AAC 音频直接复制</html>");
         
         optionsPanel.add(spliceHeadCheckBox);
         optionsPanel.add(spliceTailCheckBox);
+        optionsPanel.add(createStyledLabel("拼接方式:"));
+        optionsPanel.add(spliceModeComboBox);
 
         // 片头时长面板
         JPanel headDurationPanel = new JPanel(new BorderLayout(10, 0));
@@ -764,6 +946,68 @@ public class FFmpegBatchProcessor extends JFrame {
     }
 
     private void addListeners() {
+        // 并发数调整，对正在运行的批次同样生效
+        concurrencySpinner.addChangeListener(e ->
+                jobScheduler.setMaxConcurrent((Integer) concurrencySpinner.getValue()));
+
+        // 处理中取消勾选监视文件夹：不再接收新文件，已加入的任务继续完成
+        watchFolderCheckBox.addActionListener(e -> {
+            FolderWatcher watcher = folderWatcher;
+            if (!watchFolderCheckBox.isSelected() && watcher != null && !watcher.isStopped()) {
+                watcher.stop();
+                addLogMessage("正在停止监视，已加入的任务会继续完成");
+            }
+        });
+
+        // 分布式模式开关
+        distributedCheckBox.addActionListener(e -> toggleDistributed(distributedCheckBox.isSelected()));
+
+        // 暂停/继续按钮监听器
+        pauseButton.addActionListener(e -> {
+            JobScheduler.Batch batch = currentBatch;
+            if (batch == null) {
+                return;
+            }
+            DistributedCoordinator remote = coordinator;
+            if (jobScheduler.processes().isPaused()) {
+                batch.resume();
+                if (remote != null) {
+                    remote.resumeAll();
+                }
+                pauseButton.setText("暂停");
+                addLogMessage("继续处理");
+            } else {
+                batch.pause();
+                if (remote != null) {
+                    remote.pauseAll();
+                }
+                pauseButton.setText("继续");
+                addLogMessage(jobScheduler.processes().supportsSuspend()
+                        ? "已暂停：正在运行的 ffmpeg 进程已挂起"
+                        : "已暂停：当前系统不支持挂起进程，正在运行的任务会继续，之后的任务等待继续");
+            }
+        });
+
+        // 取消按钮监听器
+        cancelButton.addActionListener(e -> {
+            JobScheduler.Batch batch = currentBatch;
+            if (batch == null) {
+                return;
+            }
+            int result = JOptionPane.showConfirmDialog(FFmpegBatchProcessor.this,
+                    "确定要取消当前批处理吗？未完成的输出文件会被删除", "取消处理", JOptionPane.YES_NO_OPTION);
+            if (result == JOptionPane.YES_OPTION) {
+                addLogMessage("正在取消批处理...");
+                batch.cancel();
+                DistributedCoordinator remote = coordinator;
+                if (remote != null) {
+                    remote.cancelAll();
+                }
+                pauseButton.setEnabled(false);
+                cancelButton.setEnabled(false);
+            }
+        });
+
         // 浏览按钮监听器
         browseButton.addActionListener(e -> {
             JFileChooser fileChooser = new JFileChooser();
@@ -783,12 +1027,16 @@ public class FFmpegBatchProcessor extends JFrame {
                         "请输入有效的文件夹路径", "错误", JOptionPane.ERROR_MESSAGE);
                 return;
             }
+            if (discoveryOptions() == null) {
+                return;
+            }
 
             // 根据当前页面执行不同的处理
             switch (currentPage) {
                 case COMPRESS -> processCompress(folderPath);
                 case REMOVE_SUBTITLE -> processRemoveSubtitle(folderPath);
                 case REMOVE_TRAILER -> processRemoveTrailer(folderPath);
+                case COMBINED -> processCombined(folderPath);
                 case VIDEO_SPLICE_ADVANCED -> processVideoSpliceAdvanced(folderPath);
             }
         });
@@ -805,18 +1053,8 @@ public class FFmpegBatchProcessor extends JFrame {
 
         addLogMessage("开始压缩处理...");
 
-        // 在后台线程中执行处理
-        new Thread(() -> {
-            try {
-                processFiles(folderPath, ffmpegCommand, "", "", "c");
-            } finally {
-                SwingUtilities.invokeLater(() -> {
-                    processButton.setEnabled(true);
-                    statusLabel.setText("处理完成");
-                    progressBar.setValue(100);
-                });
-            }
-        }).start();
+        // 提交到批处理调度器
+        processFiles(PageType.COMPRESS, folderPath, ffmpegCommand, "", "");
     }
 
     private void processRemoveSubtitle(String folderPath) {
@@ -824,7 +1062,7 @@ public class FFmpegBatchProcessor extends JFrame {
         String ffmpegCommand = subtitleCompressParamsField.getText().trim();
 
         // 验证去水印参数格式
-        if (!delogoParams.isEmpty() && !isValidMultipleDelogoParams(delogoParams)) {
+        if (!delogoParams.isEmpty() && !MediaProcessor.isValidMultipleDelogoParams(delogoParams)) {
             JOptionPane.showMessageDialog(this,
                     "去小字参数格式不正确，请使用x,y,w,h格式（例如：98,1169,879,155）",
                     "错误", JOptionPane.ERROR_MESSAGE);
@@ -839,18 +1077,8 @@ public class FFmpegBatchProcessor extends JFrame {
 
         addLogMessage("开始去小字处理...");
 
-        // 在后台线程中执行处理
-        new Thread(() -> {
-            try {
-                processFiles(folderPath, ffmpegCommand, delogoParams, "", "s");
-            } finally {
-                SwingUtilities.invokeLater(() -> {
-                    processButton.setEnabled(true);
-                    statusLabel.setText("处理完成");
-                    progressBar.setValue(100);
-                });
-            }
-        }).start();
+        // 提交到批处理调度器
+        processFiles(PageType.REMOVE_SUBTITLE, folderPath, ffmpegCommand, delogoParams, "");
     }
 
     /**
@@ -864,7 +1092,7 @@ public class FFmpegBatchProcessor extends JFrame {
         String ffmpegCommand = trailerCompressParamsField.getText().trim();
 
         // 验证去水印参数格式
-        if (!delogoParams.isEmpty() && !isValidMultipleDelogoParams(delogoParams)) {
+        if (!delogoParams.isEmpty() && !MediaProcessor.isValidMultipleDelogoParams(delogoParams)) {
             JOptionPane.showMessageDialog(this,
                     "去未完待续参数格式不正确，请使用x,y,w,h格式（例如：98,1169,879,155）",
                     "错误", JOptionPane.ERROR_MESSAGE);
@@ -890,18 +1118,68 @@ public class FFmpegBatchProcessor extends JFrame {
 
         addLogMessage("开始去未完待续处理...");
 
-        // 在后台线程中执行处理
-        new Thread(() -> {
+        // 提交到批处理调度器
+        processFiles(PageType.REMOVE_TRAILER, folderPath, ffmpegCommand, delogoParams, lastDuration,
+                partialTrailerCheckBox.isSelected());
+    }
+
+    // 组合处理：去小字、去未完待续、裁剪和压缩一次完成
+    private void processCombined(String folderPath) {
+        Set<PageType> steps = EnumSet.noneOf(PageType.class);
+        if (combinedSubtitleCheckBox.isSelected()) {
+            steps.add(PageType.REMOVE_SUBTITLE);
+        }
+        if (combinedTrailerCheckBox.isSelected()) {
+            steps.add(PageType.REMOVE_TRAILER);
+        }
+        if (combinedCompressCheckBox.isSelected()) {
+            steps.add(PageType.COMPRESS);
+        }
+        String delogoParams = combinedDelogoParamsField.getText().trim();
+        String lastDuration = combinedDurationField.getText().trim();
+        String trimStart = combinedTrimStartField.getText().trim();
+        String trimEnd = combinedTrimEndField.getText().trim();
+        String ffmpegCommand = combinedCompressParamsField.getText().trim();
+
+        boolean needsDelogo = steps.contains(PageType.REMOVE_SUBTITLE) || steps.contains(PageType.REMOVE_TRAILER);
+        if (needsDelogo && !MediaProcessor.isValidMultipleDelogoParams(delogoParams)) {
+            JOptionPane.showMessageDialog(this,
+                    "去水印参数格式不正确，请使用x,y,w,h格式（例如：98,1169,879,155）",
+                    "错误", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        for (String seconds : List.of(lastDuration, trimStart, trimEnd)) {
             try {
-                processFiles(folderPath, ffmpegCommand, delogoParams, lastDuration, "w");
-            } finally {
-                SwingUtilities.invokeLater(() -> {
-                    processButton.setEnabled(true);
-                    statusLabel.setText("处理完成");
-                    progressBar.setValue(100);
-                });
+                if (JobSettings.seconds(seconds) < 0) {
+                    throw new NumberFormatException(seconds);
+                }
+            } catch (NumberFormatException ex) {
+                JOptionPane.showMessageDialog(this,
+                        "结尾处理时长和裁剪时长必须是有效的非负数字（秒）", "错误", JOptionPane.ERROR_MESSAGE);
+                return;
             }
-        }).start();
+        }
+        if (steps.contains(PageType.REMOVE_TRAILER) && lastDuration.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "去未完待续需要填写结尾处理时长", "错误", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (steps.isEmpty() && trimStart.isEmpty() && trimEnd.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "请至少选择一种操作或填写裁剪时长", "错误", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        // 禁用按钮防止重复点击
+        processButton.setEnabled(false);
+
+        // 清空日志
+        logArea.setText("");
+
+        JobSettings settings = JobSettings.forCombined(steps, ffmpegCommand, needsDelogo ? delogoParams : "",
+                lastDuration, trimStart, trimEnd, (Integer) chunkCountSpinner.getValue());
+        addLogMessage("开始组合处理（输出后缀 _" + settings.outputSuffix() + "）...");
+
+        // 提交到批处理调度器
+        processFiles(folderPath, settings);
     }
 
     private void processVideoSpliceAdvanced(String folderPath) {
@@ -949,831 +1227,285 @@ public class FFmpegBatchProcessor extends JFrame {
         addLogMessage("开始高级视频拼接处理...");
         addLogMessage("拼接模式: " + (doSpliceHead ? "片头 " : "") + (doSpliceTail ? "片尾" : ""));
 
-        // 在后台线程中执行处理
-        new Thread(() -> {
-            try {
-                processVideoSpliceAdvancedFiles(folderPath, ffmpegCommand, headDuration, tailDuration, doSpliceHead, doSpliceTail);
-            } finally {
-                SwingUtilities.invokeLater(() -> {
-                    processButton.setEnabled(true);
-                    statusLabel.setText("处理完成");
-                    progressBar.setValue(100);
-                });
-            }
-        }).start();
+        // 提交到批处理调度器
+        processVideoSpliceAdvancedFiles(folderPath, ffmpegCommand, headDuration, tailDuration, doSpliceHead, doSpliceTail,
+                (SpliceMode) spliceModeComboBox.getSelectedItem());
     }
 
-    private void processVideoSpliceAdvancedFiles(String folderPath, String ffmpegArgs, 
-            String headDuration, String tailDuration, boolean doSpliceHead, boolean doSpliceTail) {
-        File folder = new File(folderPath);
-        if (!folder.exists() || !folder.isDirectory()) {
-            SwingUtilities.invokeLater(() -> {
-                JOptionPane.showMessageDialog(this, 
-                    "指定的路径不是有效的文件夹", "错误", JOptionPane.ERROR_MESSAGE);
-                statusLabel.setText("错误：无效的文件夹路径");
-                processButton.setEnabled(true);
-            });
-            return;
-        }
-        
-        File[] files = folder.listFiles();
-        if (files == null || files.length == 0) {
-            SwingUtilities.invokeLater(() -> {
-                JOptionPane.showMessageDialog(this, 
-                    "文件夹为空，没有要处理的文件", "警告", JOptionPane.WARNING_MESSAGE);
-                statusLabel.setText("警告：文件夹为空");
-                processButton.setEnabled(true);
-            });
-            return;
-        }
-        
-        // 找出所有没有_no_sub后缀的媒体文件
-        List<File> originalFiles = new ArrayList<>();
-        for (File file : files) {
-            if (file.isFile() && isMediaFile(file.getName()) && !file.getName().contains("_no_sub")) {
-                // 检查是否存在对应的_no_sub文件
-                String noSubFileName = getNoSubFileName(file.getName());
-                File noSubFile = new File(folder, noSubFileName);
-                if (noSubFile.exists()) {
-                    originalFiles.add(file);
-                }
+    // 自动检测按钮：用文件夹中的第一个文件检测固定区域，结果填入参数框，检测在后台线程进行
+    private JButton createDetectButton(JTextField targetField, boolean trailer) {
+        JButton button = createStyledButton("自动检测");
+        button.setToolTipText(trailer
+                ? "根据第一个文件检测小字区域和结尾新出现的未完待续区域"
+                : "根据第一个文件检测整集固定不动的小字、台标区域");
+        button.addActionListener(e -> {
+            String folderPath = folderPathField.getText().trim();
+            if (folderPath.isEmpty() || !new File(folderPath).isDirectory()) {
+                JOptionPane.showMessageDialog(this, "请输入有效的文件夹路径", "错误", JOptionPane.ERROR_MESSAGE);
+                return;
             }
-        }
-        
-        if (originalFiles.isEmpty()) {
-            SwingUtilities.invokeLater(() -> {
-                JOptionPane.showMessageDialog(this, 
-                    "文件夹中没有找到配对的媒体文件（需要有原文件和带_no_sub后缀的文件）", 
-                    "警告", JOptionPane.WARNING_MESSAGE);
-                statusLabel.setText("警告：没有找到配对的媒体文件");
-                processButton.setEnabled(true);
-            });
-            return;
-        }
-        
-        // 确保输出目录存在
-        File okFolder = new File(folder, "OK");
-        if (!okFolder.exists()) {
-            okFolder.mkdir();
-        }
-        
-        // 设置进度条
-        SwingUtilities.invokeLater(() -> {
-            progressBar.setMaximum(originalFiles.size());
-            progressBar.setValue(0);
-        });
-        
-        // 处理每个文件
-        int count = 0;
-        for (File file : originalFiles) {
-            final int currentCount = ++count;
-            final String fileName = file.getName();
-            
-            SwingUtilities.invokeLater(() -> {
-                statusLabel.setText("处理中: " + fileName + " (" + currentCount + "/" + originalFiles.size() + ")");
-                progressBar.setValue(currentCount - 1);
-            });
-            
+            FileDiscovery.Options discovery = discoveryOptions();
+            if (discovery == null) {
+                return;
+            }
+            double lastDuration;
             try {
-                processVideoSpliceAdvancedFile(file, folder, okFolder, ffmpegArgs, 
-                        headDuration, tailDuration, doSpliceHead, doSpliceTail);
-            } catch (Exception e) {
-                final String errorMessage = "处理文件 " + fileName + " 时出错: " + e.getMessage();
+                lastDuration = trailer ? Double.parseDouble(trailerDurationField.getText().trim()) : 0;
+            } catch (NumberFormatException ex) {
+                JOptionPane.showMessageDialog(this, "结尾处理时长必须是有效的数字（秒）", "错误", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+
+            button.setEnabled(false);
+            Thread worker = new Thread(() -> {
+                String params = null;
+                String error = null;
+                try {
+                    File sample = new FileDiscovery(Path.of(folderPath), discovery, this::addLogMessage).first();
+                    if (sample == null) {
+                        error = "文件夹中没有找到媒体文件";
+                    } else {
+                        addLogMessage("正在自动检测区域: " + sample.getName());
+                        params = trailer ? mediaProcessor.detectTrailerRegion(sample, lastDuration)
+                                : mediaProcessor.detectRegions(sample);
+                    }
+                } catch (Exception ex) {
+                    error = "自动检测区域失败: " + ex.getMessage();
+                }
+                String result = params;
+                String message = error;
                 SwingUtilities.invokeLater(() -> {
-                    statusLabel.setText("错误: " + fileName);
+                    button.setEnabled(true);
+                    if (message != null) {
+                        addLogMessage(message);
+                        JOptionPane.showMessageDialog(this, message, "自动检测", JOptionPane.ERROR_MESSAGE);
+                    } else if (result.isEmpty()) {
+                        JOptionPane.showMessageDialog(this, "没有检测到固定不动的区域，请手动填写参数",
+                                "自动检测", JOptionPane.WARNING_MESSAGE);
+                    } else {
+                        targetField.setText(result);
+                        addLogMessage("自动检测的区域: " + result);
+                    }
                 });
-                addLogMessage(errorMessage);
-                addLogMessage(e.toString());
-                for (StackTraceElement element : e.getStackTrace()) {
-                    addLogMessage(element.toString());
-                }
-            }
-            
-            SwingUtilities.invokeLater(() -> {
-                progressBar.setValue(currentCount);
-            });
-        }
+            }, "region-detect");
+            worker.setDaemon(true);
+            worker.start();
+        });
+        return button;
     }
-    
-    private void processVideoSpliceAdvancedFile(File originalFile, File inputFolder, File outputFolder, 
-            String ffmpegArgs, String headDuration, String tailDuration, 
-            boolean doSpliceHead, boolean doSpliceTail) throws Exception {
-        String originalPath = originalFile.getAbsolutePath();
-        String fileName = originalFile.getName();
-        String noSubFileName = getNoSubFileName(fileName);
-        File noSubFile = new File(inputFolder, noSubFileName);
-        
-        if (!noSubFile.exists()) {
-            throw new Exception("找不到对应的无字幕文件: " + noSubFileName);
-        }
-        
-        String noSubPath = noSubFile.getAbsolutePath();
-        
-        // 获取视频时长
-        String endTimeStr = getVideoDuration(originalPath);
-        addLogMessage("视频总时长: " + endTimeStr + " 秒");
-        
-        double duration = Double.parseDouble(endTimeStr);
-        double headDurationValue = doSpliceHead ? Double.parseDouble(headDuration) : 0;
-        double tailDurationValue = doSpliceTail ? Double.parseDouble(tailDuration) : 0;
-        
-        // 确保时长不超过视频总时长
-        headDurationValue = Math.min(headDurationValue, duration / 2);
-        tailDurationValue = Math.min(tailDurationValue, duration / 2);
-        
-        // 确保头尾时长总和不超过视频总时长
-        if (headDurationValue + tailDurationValue > duration) {
-            double ratio = duration / (headDurationValue + tailDurationValue);
-            headDurationValue *= ratio;
-            tailDurationValue *= ratio;
-            addLogMessage(String.format("警告：拼接时长总和超过视频时长，已按比例缩减为 %.2f + %.2f 秒", 
-                    headDurationValue, tailDurationValue));
-        }
-        
-        double tailStartTime = Math.max(0, duration - tailDurationValue);
-        
-        // 日志输出拼接策略
-        if (doSpliceHead && doSpliceTail) {
-            addLogMessage(String.format("拼接策略：取原视频的前 %.2f 秒作为片头，取原视频的后 %.2f 秒作为片尾，中间部分使用无字幕视频", 
-                    headDurationValue, tailDurationValue));
-        } else if (doSpliceHead) {
-            addLogMessage(String.format("拼接策略：取原视频的前 %.2f 秒作为片头，后续部分使用无字幕视频", headDurationValue));
-        } else {
-            addLogMessage(String.format("拼接策略：取无字幕视频的前 %.2f 秒，再拼接原视频的后 %.2f 秒作为片尾", 
-                    tailStartTime, tailDurationValue));
-        }
-        
-        // 临时文件路径
-        String tempDir = System.getProperty("java.io.tmpdir");
-        List<File> tempFiles = new ArrayList<>();
-        String outputPrefix = "";
-        
-        if (doSpliceHead && doSpliceTail) {
-            outputPrefix = "head_tail_";
-        } else if (doSpliceHead) {
-            outputPrefix = "head_";
-        } else {
-            outputPrefix = "tail_";
-        }
-        
-        // 生成输出文件名
-        String outputFileName = outputPrefix + "spliced_" + fileName;
-        File outputFile = new File(outputFolder, outputFileName);
-        
+
+    // 文件扫描选项；通配符格式错误时提示并返回 null
+    private FileDiscovery.Options discoveryOptions() {
         try {
-            // 新方案：先准备视频部分，然后提取和准备音频部分，最后合并
-
-            // 1. 提取原始视频的完整音频
-            addLogMessage("正在提取原始视频的完整音频...");
-            File audioFile = new File(tempDir, "temp_audio_" + System.currentTimeMillis() + ".aac");
-            tempFiles.add(audioFile);
-            
-            List<String> audioCommand = new ArrayList<>();
-            audioCommand.add("ffmpeg");
-            audioCommand.add("-i");
-            audioCommand.add(originalPath);
-            audioCommand.add("-vn");  // 不要视频
-            audioCommand.add("-acodec");
-            audioCommand.add("aac");
-            audioCommand.add("-b:a");
-            audioCommand.add("192k");
-            audioCommand.add("-y");
-            audioCommand.add(audioFile.getAbsolutePath());
-            
-            executeCommand(audioCommand);
-            
-            // 2. 准备视频部分（不含音频）
-            addLogMessage("正在准备视频部分...");
-            
-            // 各部分视频临时文件
-            List<String> videoFiles = new ArrayList<>();
-            
-            if (doSpliceHead) {
-                // 准备片头临时文件 - 原视频的前部分（仅视频）
-                File headFile = new File(tempDir, "temp_head_" + System.currentTimeMillis() + ".mp4");
-                tempFiles.add(headFile);
-                
-                List<String> headCommand = new ArrayList<>();
-                headCommand.add("ffmpeg");
-                headCommand.add("-i");
-                headCommand.add(originalPath);
-                headCommand.add("-an");  // 不要音频
-                headCommand.add("-t");
-                headCommand.add(String.format("%.2f", headDurationValue));
-                headCommand.add("-c:v");
-                headCommand.add("libx264");
-                headCommand.add("-crf");
-                headCommand.add("23");
-                headCommand.add("-y");
-                headCommand.add(headFile.getAbsolutePath());
-                
-                executeCommand(headCommand);
-                videoFiles.add(headFile.getAbsolutePath());
-            }
-            
-            // 准备中间部分 - 无字幕视频的中间部分（仅视频）
-            File middleFile = new File(tempDir, "temp_middle_" + System.currentTimeMillis() + ".mp4");
-            tempFiles.add(middleFile);
-            
-            List<String> middleCommand = new ArrayList<>();
-            middleCommand.add("ffmpeg");
-            middleCommand.add("-i");
-            middleCommand.add(noSubPath);
-            middleCommand.add("-an");  // 不要音频
-            
-            if (doSpliceHead) {
-                // 跳过片头部分
-                middleCommand.add("-ss");
-                middleCommand.add(String.format("%.2f", headDurationValue));
-            }
-            
-            if (doSpliceTail) {
-                // 限制时长，不包括片尾部分
-                middleCommand.add("-t");
-                double middleDuration = tailStartTime - (doSpliceHead ? headDurationValue : 0);
-                middleCommand.add(String.format("%.2f", middleDuration));
-            }
-            
-            middleCommand.add("-c:v");
-            middleCommand.add("libx264");
-            middleCommand.add("-crf");
-            middleCommand.add("23");
-            middleCommand.add("-y");
-            middleCommand.add(middleFile.getAbsolutePath());
-            
-            executeCommand(middleCommand);
-            videoFiles.add(middleFile.getAbsolutePath());
-            
-            if (doSpliceTail) {
-                // 准备片尾临时文件 - 原视频的后部分（仅视频）
-                File tailFile = new File(tempDir, "temp_tail_" + System.currentTimeMillis() + ".mp4");
-                tempFiles.add(tailFile);
-                
-                List<String> tailCommand = new ArrayList<>();
-                tailCommand.add("ffmpeg");
-                tailCommand.add("-i");
-                tailCommand.add(originalPath);
-                tailCommand.add("-an");  // 不要音频
-                tailCommand.add("-ss");
-                tailCommand.add(String.format("%.2f", tailStartTime));
-                tailCommand.add("-c:v");
-                tailCommand.add("libx264");
-                tailCommand.add("-crf");
-                tailCommand.add("23");
-                tailCommand.add("-y");
-                tailCommand.add(tailFile.getAbsolutePath());
-                
-                executeCommand(tailCommand);
-                videoFiles.add(tailFile.getAbsolutePath());
-            }
-            
-            // 3. 合并所有视频流，并与音频合并
-            addLogMessage("正在合并视频片段与音频...");
-            
-            // 创建一个视频片段列表文件
-            File videoListFile = new File(tempDir, "video_list_" + System.currentTimeMillis() + ".txt");
-            tempFiles.add(videoListFile);
-            
-            try (java.io.PrintWriter writer = new java.io.PrintWriter(videoListFile)) {
-                for (String filePath : videoFiles) {
-                    writer.println("file '" + filePath.replace("\\", "\\\\") + "'");
-                }
-            }
-            
-            // 先把所有视频合并成一个无声视频
-            File mergedVideoFile = new File(tempDir, "temp_merged_video_" + System.currentTimeMillis() + ".mp4");
-            tempFiles.add(mergedVideoFile);
-            
-            List<String> mergeVideoCommand = new ArrayList<>();
-            mergeVideoCommand.add("ffmpeg");
-            mergeVideoCommand.add("-f");
-            mergeVideoCommand.add("concat");
-            mergeVideoCommand.add("-safe");
-            mergeVideoCommand.add("0");
-            mergeVideoCommand.add("-i");
-            mergeVideoCommand.add(videoListFile.getAbsolutePath());
-            mergeVideoCommand.add("-c");
-            mergeVideoCommand.add("copy");
-            mergeVideoCommand.add("-y");
-            mergeVideoCommand.add(mergedVideoFile.getAbsolutePath());
-            
-            executeCommand(mergeVideoCommand);
-            
-            // 4. 最后合并视频和音频
-            List<String> finalCommand = new ArrayList<>();
-            finalCommand.add("ffmpeg");
-            finalCommand.add("-i");
-            finalCommand.add(mergedVideoFile.getAbsolutePath());
-            finalCommand.add("-i");
-            finalCommand.add(audioFile.getAbsolutePath());
-            finalCommand.add("-c:v");
-            finalCommand.add("copy");
-            finalCommand.add("-c:a");
-            finalCommand.add("aac");
-            finalCommand.add("-strict");
-            finalCommand.add("experimental");
-            finalCommand.add("-map");
-            finalCommand.add("0:v:0");
-            finalCommand.add("-map");
-            finalCommand.add("1:a:0");
-            finalCommand.add("-shortest");
-            
-//            // 添加用户自定义参数，但排除可能冲突的
-//            String[] args = ffmpegArgs.split("\\s+");
-//            for (String arg : args) {
-//                if (!arg.trim().isEmpty() && !arg.contains("-y")
-//                    && !arg.contains("-c:v") && !arg.contains("-c:a")
-//                    && !arg.contains("-map") && !arg.contains("-shortest")) {
-//                    finalCommand.add(arg.trim());
-//                }
-//            }
-            
-            finalCommand.add("-y");
-            finalCommand.add(outputFile.getAbsolutePath());
-            
-            executeCommand(finalCommand);
-            
-            addLogMessage("成功处理文件: " + fileName);
-            
-        } finally {
-            // 删除所有临时文件
-            for (File tempFile : tempFiles) {
-                if (tempFile.exists()) {
-                    tempFile.delete();
-                }
-            }
+            return FileDiscovery.Options.of(recursiveCheckBox.isSelected(), includeGlobField.getText(),
+                    excludeGlobField.getText());
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, "无效的通配符: " + e.getMessage(), "错误", JOptionPane.ERROR_MESSAGE);
+            return null;
         }
     }
 
-    private String getNoSubFileName(String originalFileName) {
-        int dotIndex = originalFileName.lastIndexOf('.');
-        if (dotIndex > 0) {
-            String baseName = originalFileName.substring(0, dotIndex);
-            String extension = originalFileName.substring(dotIndex);
-            return baseName + "_no_sub" + extension;
-        } else {
-            return originalFileName + "_no_sub";
+    private void processVideoSpliceAdvancedFiles(String folderPath, String ffmpegArgs, 
+            String headDuration, String tailDuration, boolean doSpliceHead, boolean doSpliceTail, SpliceMode spliceMode) {
+        JobOrder order = (JobOrder) jobOrderComboBox.getSelectedItem();
+        FileDiscovery.Options discovery = discoveryOptions();
+        JobSettings settings = JobSettings.forSplice(ffmpegArgs, headDuration, tailDuration, doSpliceHead, doSpliceTail,
+                spliceMode);
+        JobJournal journal = new JobJournal(settings, true, this::addLogMessage);
+        mediaProcessor.setCommandListener(journal::command);
+        if (watchFolderCheckBox.isSelected()) {
+            addLogMessage("高级拼接需要成对的文件，不支持监视文件夹，按普通批处理执行");
         }
+        startBatch(jobScheduler.submit(
+                batch -> batchPlanner.planSpliceJobs(batch, folderPath, doSpliceHead, doSpliceTail, order, journal,
+                        discovery),
+                journal.track(mediaProcessor.pipeline(settings, job -> runTask(job, settings))),
+                createBatchListener()));
     }
 
-    private void processVideoSpliceFile(File originalFile, File inputFolder, File outputFolder,
-                                        String ffmpegArgs, String lastDuration) throws Exception {
-        String originalPath = originalFile.getAbsolutePath();
-        String fileName = originalFile.getName();
-        String noSubFileName = getNoSubFileName(fileName);
-        File noSubFile = new File(inputFolder, noSubFileName);
-
-        if (!noSubFile.exists()) {
-            throw new Exception("找不到对应的无字幕文件: " + noSubFileName);
-        }
-
-        String noSubPath = noSubFile.getAbsolutePath();
-
-        // 获取视频时长
-        String endTime = getVideoDuration(originalPath);
-        addLogMessage("视频总时长: " + endTime + " 秒");
-
-        double duration = Double.parseDouble(endTime);
-        double lastDurationValue = Double.parseDouble(lastDuration);
-        double startTime = Math.max(0, duration - lastDurationValue);
-
-        addLogMessage(String.format("拼接点: %.2f 秒，将取原视频的后 %.2f 秒和无字幕视频的前 %.2f 秒进行拼接",
-                startTime, lastDurationValue, startTime));
-
-        // 临时文件路径
-        String tempDir = System.getProperty("java.io.tmpdir");
-        File tempPart1 = new File(tempDir, "temp_part1_" + System.currentTimeMillis() + ".mp4");
-        File tempPart2 = new File(tempDir, "temp_part2_" + System.currentTimeMillis() + ".mp4");
-
-        // 输出文件路径
-        String outputFileName = "spliced_" + fileName;
-        File outputFile = new File(outputFolder, outputFileName);
-
-        try {
-            // 1. 切割原视频的后部分
-            addLogMessage("正在切割原视频的后部分...");
-            List<String> command1 = new ArrayList<>();
-            command1.add("ffmpeg");
-            command1.add("-i");
-            command1.add(originalPath);
-            command1.add("-ss");
-            command1.add(String.format("%.2f", startTime));
-
-            // 添加用户指定的参数
-            String[] args = ffmpegArgs.split("\\s+");
-            for (String arg : args) {
-                if (!arg.trim().isEmpty() && !arg.contains("-y")) {
-                    command1.add(arg.trim());
-                }
-            }
-
-            command1.add("-y");
-            command1.add(tempPart1.getAbsolutePath());
-
-            executeCommand(command1);
-
-            // 2. 切割无字幕视频的前部分
-            addLogMessage("正在切割无字幕视频的前部分...");
-            List<String> command2 = new ArrayList<>();
-            command2.add("ffmpeg");
-            command2.add("-i");
-            command2.add(noSubPath);
-            command2.add("-t");
-            command2.add(String.format("%.2f", startTime));
-
-            // 添加用户指定的参数
-            for (String arg : args) {
-                if (!arg.trim().isEmpty() && !arg.contains("-y")) {
-                    command2.add(arg.trim());
-                }
-            }
-
-            command2.add("-y");
-            command2.add(tempPart2.getAbsolutePath());
-
-            executeCommand(command2);
-
-            // 3. 合并两个部分
-            addLogMessage("正在合并视频...");
-            List<String> command3 = new ArrayList<>();
-            command3.add("ffmpeg");
-            command3.add("-i");
-            command3.add(tempPart2.getAbsolutePath());
-            command3.add("-i");
-            command3.add(tempPart1.getAbsolutePath());
-            command3.add("-filter_complex");
-            command3.add("[0:v][0:a][1:v][1:a]concat=n=2:v=1:a=1[v][a]");
-            command3.add("-map");
-            command3.add("[v]");
-            command3.add("-map");
-            command3.add("[a]");
-            command3.add("-y");
-            command3.add(outputFile.getAbsolutePath());
-
-            executeCommand(command3);
-
-            addLogMessage("成功处理文件: " + fileName);
-
-        } finally {
-            // 删除临时文件
-            if (tempPart1.exists()) tempPart1.delete();
-            if (tempPart2.exists()) tempPart2.delete();
-        }
+    
+    private void processFiles(PageType operation, String folderPath, String ffmpegArgs, String delogoParams,
+                              String lastDuration) {
+        processFiles(operation, folderPath, ffmpegArgs, delogoParams, lastDuration, false);
     }
 
-    private void executeCommand(List<String> command) throws Exception {
-        // 显示构建的命令
-        String cmdLine = String.join(" ", command);
-        addLogMessage("执行命令: " + cmdLine);
-
-        // 执行命令
-        ProcessBuilder pb = new ProcessBuilder(command);
-        pb.redirectErrorStream(true);
-
-        // 设置环境变量，确保正确处理中文路径和输出
-        Map<String, String> env = pb.environment();
-        env.put("LC_ALL", "zh_CN.UTF-8");
-        env.put("PYTHONIOENCODING", "utf-8");
-
-        Process process = pb.start();
-
-        // 读取和显示输出
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                addLogMessage(line);
-            }
-
-            // 等待进程结束
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                throw new Exception("FFmpeg进程返回错误代码: " + exitCode);
-            }
-        }
+    private void processFiles(PageType operation, String folderPath, String ffmpegArgs, String delogoParams,
+                              String lastDuration, boolean partialTrailer) {
+        int chunkCount = (Integer) chunkCountSpinner.getValue();
+        processFiles(folderPath, JobSettings.forFiles(operation, ffmpegArgs, delogoParams, lastDuration, chunkCount,
+                partialTrailer));
     }
 
-    private String getVideoDuration(String inputPath) throws Exception {
-        // 构建ffprobe命令获取视频时长
-        List<String> command = new ArrayList<>();
-        command.add("ffprobe");
-        command.add("-i");
-        command.add(inputPath);
-        command.add("-show_entries");
-        command.add("format=duration");
-        command.add("-v");
-        command.add("quiet");
-        command.add("-of");
-        command.add("csv=p=0");
-
-        // 显示构建的命令
-        String cmdLine = String.join(" ", command);
-        addLogMessage("执行命令: " + cmdLine);
-
-        // 执行命令
-        ProcessBuilder pb = new ProcessBuilder(command);
-        pb.redirectErrorStream(true);
-
-        // 设置环境变量，确保正确处理中文路径和输出
-        Map<String, String> env = pb.environment();
-        env.put("LC_ALL", "zh_CN.UTF-8");
-        env.put("PYTHONIOENCODING", "utf-8");
-
-        Process process = pb.start();
-
-        // 读取输出
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"))) {
-            String duration = reader.readLine();
-
-            // 等待进程结束
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                throw new Exception("FFprobe进程返回错误代码: " + exitCode);
-            }
-
-            if (duration == null || duration.trim().isEmpty()) {
-                throw new Exception("无法获取视频时长");
-            }
-
-            addLogMessage("视频时长: " + duration + " 秒");
-            return duration.trim();
+    private void processFiles(String folderPath, JobSettings settings) {
+        JobOrder order = (JobOrder) jobOrderComboBox.getSelectedItem();
+        FileDiscovery.Options discovery = discoveryOptions();
+        // 同一文件夹用同样参数再次运行时，从任务日志续跑未完成的文件
+        JobJournal journal = new JobJournal(settings, true, this::addLogMessage);
+        mediaProcessor.setCommandListener(journal::command);
+        JobScheduler.Planner planner;
+        if (watchFolderCheckBox.isSelected()) {
+            FolderWatcher watcher = new FolderWatcher(this::addLogMessage);
+            folderWatcher = watcher;
+            planner = batch -> batchPlanner.watchFileJobs(batch, folderPath, settings.outputSuffix(), journal,
+                    discovery, watcher);
+        } else {
+            planner = batch -> batchPlanner.planFileJobs(batch, folderPath, settings.outputSuffix(), order, journal,
+                    discovery);
         }
+        startBatch(jobScheduler.submit(planner, journal.track(mediaProcessor.pipeline(settings, job -> runTask(job, settings))), createBatchListener()));
     }
 
-    private boolean isValidDelogoParams(String params) {
-        // 检查格式是否为四个数字，用逗号分隔
-        String regex = "\\d+,\\d+,\\d+,\\d+";
-        return Pattern.matches(regex, params);
-    }
-
-    /**
-     * @author Ocean
-     * @date: 2025/4/18 15:54
-     * @description: 验证多个的参数
-     * 369,576,280,150&369,576,280,150
-     */
-    private boolean isValidMultipleDelogoParams(String params) {
-        // Split the input string by '&' to handle multiple sets of parameters
-        String[] paramSets = params.split("&");
-        for (String paramSet : paramSets) {
-            if (!isValidDelogoParams(paramSet)) {
-                return false;
-            }
+    // 在本机处理一个任务；分布式模式下交给 worker
+    private void runTask(JobScheduler.Job job, JobSettings settings) throws Exception {
+        DistributedCoordinator remote = coordinator;
+        if (remote != null) {
+            remote.execute(job, settings);
+        } else {
+            mediaProcessor.process(job, settings);
         }
-        return true;
     }
 
-    private void processFiles(String folderPath, String ffmpegArgs, String delogoParams,
-                              String lastDuration, String outputSuffix) {
-        File folder = new File(folderPath);
-        if (!folder.exists() || !folder.isDirectory()) {
-            SwingUtilities.invokeLater(() -> {
-                JOptionPane.showMessageDialog(this,
-                        "指定的路径不是有效的文件夹", "错误", JOptionPane.ERROR_MESSAGE);
-                statusLabel.setText("错误：无效的文件夹路径");
-                processButton.setEnabled(true);
-            });
+    // 启动或停止分布式协调端；启用时并发任务数跟随 worker 的总槽位数
+    private void toggleDistributed(boolean enabled) {
+        if (!enabled) {
+            DistributedCoordinator remote = coordinator;
+            coordinator = null;
+            if (remote != null) {
+                remote.stop();
+                addLogMessage("分布式协调端已停止，之后的任务在本机执行");
+            }
+            distributedPortField.setEnabled(true);
             return;
         }
 
-        File[] files = folder.listFiles();
-        if (files == null || files.length == 0) {
-            SwingUtilities.invokeLater(() -> {
-                JOptionPane.showMessageDialog(this,
-                        "文件夹为空，没有要处理的文件", "警告", JOptionPane.WARNING_MESSAGE);
-                statusLabel.setText("警告：文件夹为空");
-                processButton.setEnabled(true);
-            });
+        int port;
+        try {
+            port = Integer.parseInt(distributedPortField.getText().trim());
+        } catch (NumberFormatException ex) {
+            JOptionPane.showMessageDialog(this, "端口必须是有效的数字", "错误", JOptionPane.ERROR_MESSAGE);
+            distributedCheckBox.setSelected(false);
             return;
         }
 
-        // 过滤出媒体文件
-        List<File> mediaFiles = new ArrayList<>();
-        for (File file : files) {
-            if (file.isFile() && isMediaFile(file.getName())) {
-                mediaFiles.add(file);
-            }
-        }
-
-        if (mediaFiles.isEmpty()) {
-            SwingUtilities.invokeLater(() -> {
-                JOptionPane.showMessageDialog(this,
-                        "文件夹中没有找到媒体文件", "警告", JOptionPane.WARNING_MESSAGE);
-                statusLabel.setText("警告：没有找到媒体文件");
-                processButton.setEnabled(true);
-            });
+        DistributedCoordinator remote = DistributedCoordinator.fromSystemProperties(port, jobScheduler.processes(), this::addLogMessage,
+                totalSlots -> SwingUtilities.invokeLater(() -> concurrencySpinner.setValue(Math.max(1, totalSlots))));
+        try {
+            remote.start();
+        } catch (java.io.IOException ex) {
+            JOptionPane.showMessageDialog(this, "无法监听端口 " + port + ": " + ex.getMessage(), "错误", JOptionPane.ERROR_MESSAGE);
+            distributedCheckBox.setSelected(false);
             return;
         }
-
-        // TODO 生成在 OK 文件夹中
-        File okFolder = new File(folder, "OK");
-        if (!okFolder.exists()) {
-            okFolder.mkdir();
-        }
-
-        // 设置进度条
-        SwingUtilities.invokeLater(() -> {
-            progressBar.setMaximum(mediaFiles.size());
-            progressBar.setValue(0);
-        });
-
-        // 处理每个文件
-        int count = 0;
-        for (File file : mediaFiles) {
-            final int currentCount = ++count;
-            final String fileName = file.getName();
-
-            SwingUtilities.invokeLater(() -> {
-                statusLabel.setText("处理中: " + fileName + " (" + currentCount + "/" + mediaFiles.size() + ")");
-                progressBar.setValue(currentCount - 1);
-            });
-
-            try {
-                processFile(file, ffmpegArgs, delogoParams, lastDuration, outputSuffix);
-            } catch (Exception e) {
-                final String errorMessage = "处理文件 " + fileName + " 时出错: " + e.getMessage();
-                SwingUtilities.invokeLater(() -> {
-                    statusLabel.setText("错误: " + fileName);
-                });
-                addLogMessage(errorMessage);
-                addLogMessage(e.toString());
-                for (StackTraceElement element : e.getStackTrace()) {
-                    addLogMessage(element.toString());
-                }
-            }
-
-            SwingUtilities.invokeLater(() -> {
-                progressBar.setValue(currentCount);
-            });
-        }
+        coordinator = remote;
+        distributedPortField.setEnabled(false);
     }
 
-    private void processFile(File inputFile, String ffmpegArgs, String delogoParams,
-                             String lastDuration, String outputSuffix) throws Exception {
-        String inputPath = inputFile.getAbsolutePath();
-        String outputPath = generateOutputPath(inputPath, outputSuffix);
-
-        // 如果指定了结尾处理时长，获取视频总时长
-        String endTime = null;
-        if (!lastDuration.isEmpty() && !delogoParams.isEmpty()) {
-            endTime = getVideoDuration(inputPath);
-            addLogMessage("视频总时长: " + endTime);
-        }
-
-        // 构建FFmpeg命令
-        List<String> command = new ArrayList<>();
-        command.add("ffmpeg");
-        command.add("-i");
-        command.add(inputPath);
-
-        // 添加去水印参数（如果提供）
-        if (!delogoParams.isEmpty()) {
-            try {
-
-                // 根据是否指定了结尾处理时长来构建不同的delogo参数
-                String delogoFilter;
-                if (endTime != null && !lastDuration.isEmpty()) {
-                    double duration = Double.parseDouble(endTime);
-                    double lastDurationValue = Double.parseDouble(lastDuration);
-                    double startTime = Math.max(0, duration - lastDurationValue);
-//                   这里是去未完待续
-                    if (!delogoParams.contains("&")) {
-                        // 单个区域
-                        DelogoParams params = DelogoParams.parse(delogoParams);
-
-                        addLogMessage(String.format("应用水印去除：从 %.2f 秒到 %.2f 秒", startTime, duration));
-
-                        delogoFilter = """
-                                "delogo=x=%d:y=%d:w=%d:h=%d:enable='between(t,%.2f,%.2f)'" """
-                                .formatted(params.x(), params.y(), params.width(), params.height(), startTime, duration);
-                    } else {
-                        // 多个区域
-                        List<DelogoParams> paramsList = DelogoParams.parseList(delogoParams);
-                        List<String> strList = new ArrayList<>(paramsList.size());
-                        for (int i = 0; i < paramsList.size() - 1; i++) {
-                            DelogoParams params = paramsList.get(i);
-                            String delogo = """
-                                    delogo=x=%d:y=%d:w=%d:h=%d""".formatted(params.x(), params.y(), params.width(), params.height());
-//                            sb.append(delogoFilter.trim());
-                            strList.add(delogo);
-                        }
-                        // 最后一个是未完待续框
-                        DelogoParams lastParams = paramsList.getLast();
-
-                        addLogMessage(String.format("应用水印去除：从 %.2f 秒到 %.2f 秒", startTime, duration));
-                        String delogoLast = """
-                                delogo=x=%d:y=%d:w=%d:h=%d:enable='between(t,%.2f,%.2f)'"""
-                                .formatted(lastParams.x(), lastParams.y(), lastParams.width(), lastParams.height(), startTime, duration);
-                        strList.add(delogoLast);
-
-                        // join
-                        delogoFilter = """
-                                "%s" """.formatted(String.join(",", strList));
-                    }
+    // 记录当前批次并启用暂停/取消按钮
+    private void startBatch(JobScheduler.Batch batch) {
+        currentBatch = batch;
+        pauseButton.setText("暂停");
+        pauseButton.setEnabled(true);
+        cancelButton.setEnabled(true);
+    }
 
-                } else {
-                    // 这里是去小字
-                    if (!delogoParams.contains("&")) {
-                        // 单个区域
-                        DelogoParams params = DelogoParams.parse(delogoParams);
-                        delogoFilter = """
-                                "delogo=x=%d:y=%d:w=%d:h=%d" """.formatted(params.x(), params.y(), params.width(), params.height());
-                    } else {
-                        // 多个区域
-                        List<DelogoParams> paramsList = DelogoParams.parseList(delogoParams);
-                        List<String> strList = new ArrayList<>(paramsList.size());
-                        for (DelogoParams params : paramsList) {
-                            String delogo = """
-                                    delogo=x=%d:y=%d:w=%d:h=%d""".formatted(params.x(), params.y(), params.width(), params.height());
-//                            sb.append(delogoFilter.trim());
-                            strList.add(delogo);
-                        }
-                        // join
-                        delogoFilter = """
-                                "%s" """.formatted(String.join(",", strList));
-                    }
+    // 批处理进度回调：更新状态栏、总进度条，并输出失败信息
+    private JobScheduler.Listener createBatchListener() {
+        return new JobScheduler.Listener() {
+            @Override
+            public void onJobStarted(JobScheduler.Job job, JobScheduler.Batch batch) {
+                addLogMessage(job, "开始处理");
+                updateBatchStatus("处理中: " + job.name(), batch);
+            }
 
+            @Override
+            public void onJobFinished(JobScheduler.Job job, Exception error, JobScheduler.Batch batch) {
+                if (job.state() == JobScheduler.JobState.CANCELLED) {
+                    addLogMessage(job, "已取消");
+                    return;
                 }
-
-                command.add("-vf");
-                command.add(delogoFilter);
-            } catch (Exception e) {
-                addLogMessage("解析去水印参数时出错: " + e.getMessage());
-                throw e;
+                if (error == null) {
+                    return;
+                }
+                addLogMessage("处理文件 " + job.name() + " 时出错: " + error.getMessage());
+                addLogMessage(error.toString());
+                for (StackTraceElement element : error.getStackTrace()) {
+                    addLogMessage(element.toString());
+                }
+                updateBatchStatus("错误: " + job.name(), batch);
             }
-        }
 
-        // 添加用户指定的参数
-        String[] args = ffmpegArgs.split("\\s+");
-        for (String arg : args) {
-            if (!arg.trim().isEmpty()) {
-                command.add(arg.trim());
+            @Override
+            public void onProgress(JobScheduler.Batch batch) {
+                int percent = (int) Math.round(batch.completedFraction() * 100);
+                double eta = batch.estimatedRemainingSeconds();
+                String text = Double.isNaN(eta) ? percent + "%"
+                        : "%d%%  剩余约 %s".formatted(percent, formatSeconds(eta));
+                SwingUtilities.invokeLater(() -> {
+                    progressBar.setMaximum(100);
+                    progressBar.setValue(percent);
+                    progressBar.setString(text);
+                });
             }
-        }
-
-        command.add(outputPath);
-
-        // 显示构建的命令
-        String cmdLine = String.join(" ", command);
-        addLogMessage("执行命令: " + cmdLine);
 
-        // 执行命令
-        ProcessBuilder pb = new ProcessBuilder(command);
-        pb.redirectErrorStream(true);
-
-        // 设置环境变量，确保正确处理中文路径和输出
-        Map<String, String> env = pb.environment();
-        env.put("LC_ALL", "zh_CN.UTF-8");
-        env.put("PYTHONIOENCODING", "utf-8");
-
-        Process process = pb.start();
-
-        // 读取和显示输出
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                addLogMessage(line);
+            @Override
+            public void onPlanningFailed(Exception error) {
+                if (!(error instanceof BatchPlanner.PlanningException planning)) {
+                    addLogMessage("扫描文件时出错: " + error.getMessage());
+                    return;
+                }
+                SwingUtilities.invokeLater(() -> {
+                    JOptionPane.showMessageDialog(FFmpegBatchProcessor.this, planning.getMessage(),
+                            planning.isWarning() ? "警告" : "错误",
+                            planning.isWarning() ? JOptionPane.WARNING_MESSAGE : JOptionPane.ERROR_MESSAGE);
+                    statusLabel.setText((planning.isWarning() ? "警告：" : "错误：") + planning.status());
+                    processButton.setEnabled(true);
+                });
             }
 
-            // 等待进程结束
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                throw new Exception("FFmpeg进程返回错误代码: " + exitCode);
+            @Override
+            public void onBatchFinished(JobScheduler.Batch batch) {
+                if (batch.total() > 0) {
+                    addLogMessage("批处理完成：成功 %d 个，失败 %d 个，取消 %d 个".formatted(
+                            batch.done(), batch.failed(), batch.cancelled()));
+                }
+                folderWatcher = null;
+                SwingUtilities.invokeLater(() -> {
+                    if (currentBatch == batch) {
+                        currentBatch = null;
+                    }
+                    processButton.setEnabled(true);
+                    pauseButton.setEnabled(false);
+                    pauseButton.setText("暂停");
+                    cancelButton.setEnabled(false);
+                    statusLabel.setText(batch.isCancelled() ? "已取消" : "处理完成");
+                    progressBar.setMaximum(100);
+                    progressBar.setValue(100);
+                    progressBar.setString(null);
+                });
             }
+        };
+    }
 
-            addLogMessage("成功处理文件: " + inputFile.getName());
-        }
+    private void updateBatchStatus(String prefix, JobScheduler.Batch batch) {
+        String stages = batch.stageStatus().stream().map(String::valueOf).collect(Collectors.joining(", "));
+        String text = "%s (进行中 %d, 已完成 %d/%d) %s".formatted(prefix, batch.running(),
+                batch.done() + batch.failed(), batch.total(), stages);
+        SwingUtilities.invokeLater(() -> statusLabel.setText(text));
     }
 
-    private String generateOutputPath(String inputPath, String suffix) {
-        int dotIndex = inputPath.lastIndexOf('.');
-        if (dotIndex > 0) {
-            String basePath = inputPath.substring(0, dotIndex);
-            String extension = inputPath.substring(dotIndex);
-            int gangIndex = inputPath.lastIndexOf(File.separator);
-            if (gangIndex > 0) {
-                String baseFolderPath = basePath.substring(0, gangIndex);
-                // 这个里面带一个 /
-                String baseName = basePath.substring(gangIndex + 1);
-
-                return baseFolderPath + File.separator + "OK" + File.separator + baseName + "_" + suffix + ".mp4";
-            } else{
-                return basePath + "_" + suffix + extension;
-            }
-        } else {
-            return inputPath + "_" + suffix;
-        }
+    // 并发处理时给日志加上文件名前缀，便于区分各任务的输出
+    private void addLogMessage(JobScheduler.Job job, String message) {
+        addLogMessage(job == null ? message : "[" + job.name() + "] " + message);
     }
 
-    private boolean isMediaFile(String fileName) {
-        String lowerName = fileName.toLowerCase();
-        return lowerName.endsWith(".mp4") || lowerName.endsWith(".avi") ||
-                lowerName.endsWith(".mkv") || lowerName.endsWith(".mov") ||
-                lowerName.endsWith(".wmv") || lowerName.endsWith(".flv") ||
-                lowerName.endsWith(".mp3") || lowerName.endsWith(".wav") ||
-                lowerName.endsWith(".webm") || lowerName.endsWith(".m4a") || lowerName.endsWith(".mxf");
+    // 剩余时间显示为 时:分:秒 或 分:秒
+    private static String formatSeconds(double seconds) {
+        long total = Math.round(seconds);
+        return total >= 3600 ? "%d:%02d:%02d".formatted(total / 3600, total / 60 % 60, total % 60)
+                : "%d:%02d".formatted(total / 60, total % 60);
     }
 
-    // 检查字体是否可用
+        // 检查字体是否可用
     private boolean isFontAvailable(String fontName) {
         Font[] fonts = GraphicsEnvironment.getLocalGraphicsEnvironment().getAllFonts();
         for (Font font : fonts) {
@@ -0,0 +1,161 @@
+package com.ffmpegui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @description: ffmpeg 输出的解析
+ * 启动时加上 -progress pipe:1 -nostats：标准输出是机器可读的 key=value，每组以 progress=continue/end 结束，
+ * 每组解析成一个 {@link Sample}，用于任务内的进度、速度和剩余时间；
+ * 标准错误只剩下人读的信息，去掉流详情等噪音后写入日志。
+ */
+final class FfmpegProgress {
+    // 标准错误中不写入日志的行：输入输出的元数据、流详情（缩进行）和按键提示
+    private static final Set<String> NOISE_PREFIXES = Set.of("Press [q]", "  ", "\t");
+
+    /**
+     * 一组进度
+     *
+     * @param outTimeSeconds 已输出的媒体时长（秒），未知时为 NaN
+     * @param fps            编码帧率，未知时为 NaN
+     * @param speed          处理速度（媒体秒/实际秒），未知时为 NaN
+     * @param totalSize      已写出的字节数，未知时为 -1
+     * @param end            ffmpeg 已处理完
+     */
+    record Sample(double outTimeSeconds, double fps, double speed, long totalSize, boolean end) {
+        // 按预计的输出时长换算的完成比例（0~1），时长未知时为 NaN
+        double fraction(double totalSeconds) {
+            if (end) {
+                return 1;
+            }
+            if (!(totalSeconds > 0) || Double.isNaN(outTimeSeconds)) {
+                return Double.NaN;
+            }
+            return Math.max(0, Math.min(1, outTimeSeconds / totalSeconds));
+        }
+
+        // 按当前速度处理完剩余时长所需的秒数，无法估计时为 NaN
+        double etaSeconds(double totalSeconds) {
+            if (end) {
+                return 0;
+            }
+            if (!(totalSeconds > 0) || Double.isNaN(outTimeSeconds) || !(speed > 0)) {
+                return Double.NaN;
+            }
+            return Math.max(0, totalSeconds - outTimeSeconds) / speed;
+        }
+    }
+
+    private double outTimeSeconds = Double.NaN;
+    private double fps = Double.NaN;
+    private double speed = Double.NaN;
+    private long totalSize = -1;
+
+    /**
+     * 读入标准输出的一行；一组结束（progress= 行）时返回这一组的进度，否则返回 null
+     */
+    Sample accept(String line) {
+        int eq = line.indexOf('=');
+        if (eq <= 0) {
+            return null;
+        }
+        String key = line.substring(0, eq).trim();
+        String value = line.substring(eq + 1).trim();
+        switch (key) {
+            // out_time_ms 实际也是微秒，旧版本只输出这一项
+            case "out_time_us", "out_time_ms" -> {
+                long micros = parseLong(value);
+                if (micros >= 0) {
+                    outTimeSeconds = micros / 1_000_000.0;
+                }
+            }
+            case "fps" -> fps = parseDouble(value);
+            case "speed" -> speed = parseDouble(value.endsWith("x") ? value.substring(0, value.length() - 1) : value);
+            case "total_size" -> totalSize = parseLong(value);
+            case "progress" -> {
+                return new Sample(outTimeSeconds, fps, speed, totalSize, value.equals("end"));
+            }
+            default -> {
+                // frame、bitrate、dup_frames 等不使用
+            }
+        }
+        return null;
+    }
+
+    // 标准错误的一行是否写入日志
+    static boolean isLogged(String line) {
+        if (line.isBlank()) {
+            return false;
+        }
+        for (String prefix : NOISE_PREFIXES) {
+            if (line.startsWith(prefix)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 加上 -progress pipe:1 -nostats -hide_banner；只用于 ffmpeg，且标准输出没有被用作数据输出（pipe:1）的命令，
+     * 其余命令原样返回
+     */
+    static List<String> withProgress(List<String> command) {
+        if (!supports(command)) {
+            return command;
+        }
+        List<String> result = new ArrayList<>(command.size() + 4);
+        result.add(command.getFirst());
+        result.add("-progress");
+        result.add("pipe:1");
+        result.add("-nostats");
+        result.add("-hide_banner");
+        result.addAll(command.subList(1, command.size()));
+        return result;
+    }
+
+    static boolean supports(List<String> command) {
+        return !command.isEmpty() && command.getFirst().equals("ffmpeg")
+                && !command.contains("pipe:1") && !command.contains("-progress");
+    }
+
+    /**
+     * 命令预计输出的媒体时长（秒）：输入时长减去输入端的 -ss，再受 -t 限制；无法判断时为 NaN
+     *
+     * @param inputDuration 第一个输入的时长（秒），未知时为 NaN
+     */
+    static double expectedSeconds(List<String> command, double inputDuration) {
+        int input = command.indexOf("-i");
+        double total = inputDuration;
+        for (int i = 1; i + 1 < command.size(); i++) {
+            String option = command.get(i);
+            double value = parseDouble(command.get(i + 1));
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            if (option.equals("-ss") && i < input) {
+                total -= value;
+            } else if (option.equals("-t")) {
+                total = Double.isNaN(total) ? value : Math.min(total, value);
+            }
+        }
+        return total > 0 ? total : Double.NaN;
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            // N/A
+            return Double.NaN;
+        }
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
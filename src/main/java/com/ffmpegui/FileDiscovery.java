@@ -0,0 +1,230 @@
+package com.ffmpegui;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * @description: 输入文件夹的扫描
+ * 用 DirectoryStream 逐层遍历子文件夹（同一层按名称排序，每次运行顺序一致），按包含/排除通配符过滤媒体文件；
+ * 每扫完一个文件夹就把其中的文件交给回调，不必等整棵目录树扫完就能开始处理。
+ * 跳过输出文件夹 OK、隐藏文件夹和指向文件夹的符号链接（避免循环）。
+ */
+final class FileDiscovery {
+    private static final String OUTPUT_FOLDER = "OK";
+
+    /**
+     * 扫描选项
+     *
+     * @param recursive 是否进入子文件夹
+     * @param includes  文件需要匹配其中之一，为空时不限制
+     * @param excludes  匹配的文件或文件夹跳过
+     */
+    record Options(boolean recursive, List<String> includes, List<String> excludes) {
+        static final Options FLAT = new Options(false, List.of(), List.of());
+
+        // 通配符用逗号分隔，如 "*.mkv,S01/**"；格式错误时抛出 IllegalArgumentException
+        static Options of(boolean recursive, String includes, String excludes) {
+            Options options = new Options(recursive, splitGlobs(includes), splitGlobs(excludes));
+            matchers(options.includes());
+            matchers(options.excludes());
+            return options;
+        }
+
+        private static List<String> splitGlobs(String globs) {
+            List<String> result = new ArrayList<>();
+            if (globs != null) {
+                for (String glob : globs.split(",")) {
+                    if (!glob.isBlank()) {
+                        result.add(glob.trim());
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 一个文件夹的扫描结果
+     *
+     * @param files 通过过滤的媒体文件，按名称排序
+     * @param names 文件夹中所有文件的名称（不受过滤影响），用于配对查找，不再逐个访问文件系统
+     */
+    record Listing(Path dir, List<File> files, Set<String> names) {
+        boolean contains(String name) {
+            return names.contains(name);
+        }
+    }
+
+    @FunctionalInterface
+    interface Visitor {
+        void visit(Listing listing) throws Exception;
+    }
+
+    private final Path root;
+    private final Options options;
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+    private final Consumer<String> log;
+
+    FileDiscovery(Path root, Options options, Consumer<String> log) {
+        this.root = root.toAbsolutePath();
+        this.options = options;
+        this.log = log;
+        this.includes = matchers(options.includes());
+        this.excludes = matchers(options.excludes());
+    }
+
+    private static List<PathMatcher> matchers(List<String> globs) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        for (String glob : globs) {
+            matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+        }
+        return matchers;
+    }
+
+    // 从根文件夹开始扫描，先交出当前文件夹的文件再进入子文件夹；回调抛出的异常直接传出
+    void walk(Visitor visitor) throws Exception {
+        walk(root, visitor, () -> false);
+    }
+
+    // 扫描顺序中的第一个媒体文件，找到后不再进入其他子文件夹；没有时返回 null
+    File first() throws Exception {
+        File[] first = new File[1];
+        walk(root, listing -> {
+            if (first[0] == null && !listing.files().isEmpty()) {
+                first[0] = listing.files().getFirst();
+            }
+        }, () -> first[0] != null);
+        return first[0];
+    }
+
+    private void walk(Path dir, Visitor visitor, BooleanSupplier stop) throws Exception {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path entry : stream) {
+                entries.add(entry);
+            }
+        } catch (IOException e) {
+            if (dir.equals(root)) {
+                throw e;
+            }
+            // 没有权限等无法读取的子文件夹跳过，不影响其他文件夹
+            log.accept("无法读取文件夹，跳过: " + dir + " " + e.getMessage());
+            return;
+        }
+        entries.sort(Comparator.comparing(path -> path.getFileName().toString()));
+
+        List<File> files = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        List<Path> subdirs = new ArrayList<>();
+        for (Path entry : entries) {
+            String name = entry.getFileName().toString();
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (attrs.isSymbolicLink()) {
+                    attrs = Files.readAttributes(entry, BasicFileAttributes.class);
+                    if (attrs.isDirectory()) {
+                        continue;
+                    }
+                }
+            } catch (IOException e) {
+                // 扫描期间被删除或失效的链接
+                continue;
+            }
+            Path relative = root.relativize(entry);
+            if (attrs.isDirectory()) {
+                if (options.recursive() && !name.startsWith(".") && !isOutputFolder(name) && !excluded(relative)) {
+                    subdirs.add(entry);
+                }
+            } else if (attrs.isRegularFile()) {
+                names.add(name);
+                if (MediaProcessor.isMediaFile(name) && included(relative) && !excluded(relative)) {
+                    files.add(entry.toFile());
+                }
+            }
+        }
+
+        visitor.visit(new Listing(dir, files, names));
+        for (Path subdir : subdirs) {
+            if (stop.getAsBoolean()) {
+                return;
+            }
+            walk(subdir, visitor, stop);
+        }
+    }
+
+    // 监视模式中新出现的文件：扫描时是否会收入（所在文件夹会被进入，且通过过滤）
+    boolean accepts(Path file) {
+        Path absolute = file.toAbsolutePath();
+        Path parent = absolute.getParent();
+        return parent != null && enters(parent) && MediaProcessor.isMediaFile(absolute.getFileName().toString())
+                && included(root.relativize(absolute)) && !excluded(root.relativize(absolute));
+    }
+
+    // 监视模式中新出现的文件夹：扫描时是否会进入；指向文件夹的符号链接不进入
+    boolean enters(Path dir) {
+        Path absolute = dir.toAbsolutePath();
+        if (absolute.equals(root)) {
+            return true;
+        }
+        if (!options.recursive() || !absolute.startsWith(root) || Files.isSymbolicLink(absolute)) {
+            return false;
+        }
+        Path relative = root.relativize(absolute);
+        for (int i = 1; i <= relative.getNameCount(); i++) {
+            String name = relative.getName(i - 1).toString();
+            if (name.startsWith(".") || isOutputFolder(name) || excluded(relative.subpath(0, i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 输出都放在根文件夹的 OK 下；以前按文件夹各自生成的 OK 也跳过
+    private static boolean isOutputFolder(String name) {
+        return name.equals(OUTPUT_FOLDER);
+    }
+
+    private boolean included(Path relative) {
+        return includes.isEmpty() || matches(includes, relative);
+    }
+
+    private boolean excluded(Path relative) {
+        return matches(excludes, relative);
+    }
+
+    // 通配符既匹配相对根文件夹的路径，也匹配文件名本身，"*.mkv" 对所有子文件夹都有效
+    private static boolean matches(List<PathMatcher> matchers, Path relative) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(relative) || matcher.matches(relative.getFileName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @description: 输出文件夹：根文件夹下的 OK，子文件夹中的输入在 OK 下保持原有的目录结构
+     * 例如 root/S01/a.mp4 输出到 root/OK/S01/
+     */
+    static File outputFolder(File root, File input) {
+        File okFolder = new File(root.getAbsoluteFile(), OUTPUT_FOLDER);
+        Path relative = root.getAbsoluteFile().toPath().relativize(input.getAbsoluteFile().getParentFile().toPath());
+        return relative.toString().isEmpty() ? okFolder : new File(okFolder, relative.toString());
+    }
+}
@@ -0,0 +1,139 @@
+package com.ffmpegui;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.BiConsumer;
+
+/**
+ * @description: 单次调用的高级拼接
+ * 原视频和无字幕视频作为两个输入，用 trim + concat 滤镜在一条 ffmpeg 命令里拼出完整视频轨，
+ * 音频直接取原视频整轨（已是 AAC 时流复制），一次解码、一次编码得到成品，不写任何中间文件。
+ */
+final class FilterGraphSplicer {
+    // 与分段编码方式相同的视频编码参数
+    private static final List<String> VIDEO_ARGS = List.of("-c:v", "libx264", "-crf", "23");
+
+    // 拼接的一个片段：input 为输入序号（0 原视频，1 无字幕视频），end 为无穷大时到输入末尾
+    private record Segment(int input, double start, double end) {
+    }
+
+    private final CommandExecutor executor;
+    private final ProbeService probes;
+    private final BiConsumer<JobScheduler.Job, String> log;
+
+    FilterGraphSplicer(CommandExecutor executor, ProbeService probes, BiConsumer<JobScheduler.Job, String> log) {
+        this.executor = executor;
+        this.probes = probes;
+        this.log = log;
+    }
+
+    /**
+     * @param headEnd   片头结束时间（秒），不拼片头时忽略
+     * @param tailStart 片尾开始时间（秒），不拼片尾时忽略
+     */
+    void splice(JobScheduler.Job job, String originalPath, String noSubPath, double headEnd, double tailStart,
+                boolean doSpliceHead, boolean doSpliceTail, File output) throws Exception {
+        List<Segment> segments = new ArrayList<>();
+        if (doSpliceHead) {
+            segments.add(new Segment(0, 0, headEnd));
+        }
+        segments.add(new Segment(1, doSpliceHead ? headEnd : 0, doSpliceTail ? tailStart : Double.POSITIVE_INFINITY));
+        if (doSpliceTail) {
+            segments.add(new Segment(0, tailStart, Double.POSITIVE_INFINITY));
+        }
+
+        MediaInfo original = probes.probe(originalPath);
+        MediaInfo noSub = probes.probe(noSubPath);
+        String graph = buildGraph(segments, original.video(), noSub.video());
+
+        List<String> command = new ArrayList<>();
+        command.add("ffmpeg");
+        command.add("-i");
+        command.add(originalPath);
+        command.add("-i");
+        command.add(noSubPath);
+        command.add("-filter_complex");
+        command.add(graph);
+        command.add("-map");
+        command.add("[v]");
+        command.addAll(VIDEO_ARGS);
+
+        // 音频取原视频整轨，时间轴与拼好的视频一致，不需要 atrim
+        MediaInfo.Stream audio = original.audio();
+        if (audio != null) {
+            command.add("-map");
+            command.add("0:a:0");
+            if ("aac".equals(audio.codecName())) {
+                log.accept(job, "原视频音频为 AAC，直接复制");
+                command.add("-c:a");
+                command.add("copy");
+            } else {
+                command.add("-c:a");
+                command.add("aac");
+                command.add("-b:a");
+                command.add("192k");
+            }
+            command.add("-shortest");
+        }
+        command.add("-y");
+        command.add(output.getAbsolutePath());
+
+        log.accept(job, "单次滤镜拼接：%d 个片段，不生成中间文件".formatted(segments.size()));
+        executor.execute(job, command);
+    }
+
+    // 例如 [0:v]split=2[in0_0][in0_1];[in0_0]trim=start=0:end=5,setpts=PTS-STARTPTS[v0];...;[v0][v1][v2]concat=n=3:v=1:a=0[v]
+    private static String buildGraph(List<Segment> segments, MediaInfo.Stream original, MediaInfo.Stream noSub) {
+        // 两个视频分辨率不同时，无字幕视频缩放到原视频的分辨率，否则 concat 无法拼接
+        boolean rescale = original != null && noSub != null && original.width() > 0
+                && (original.width() != noSub.width() || original.height() != noSub.height());
+
+        List<String> chains = new ArrayList<>();
+        String[] sources = new String[segments.size()];
+        for (int input = 0; input < 2; input++) {
+            List<Integer> uses = new ArrayList<>();
+            for (int i = 0; i < segments.size(); i++) {
+                if (segments.get(i).input() == input) {
+                    uses.add(i);
+                }
+            }
+            if (uses.size() == 1) {
+                sources[uses.getFirst()] = "[%d:v]".formatted(input);
+            } else if (uses.size() > 1) {
+                // 同一输入用在多个片段时先 split，只解码一次
+                StringBuilder split = new StringBuilder("[%d:v]split=%d".formatted(input, uses.size()));
+                for (int use = 0; use < uses.size(); use++) {
+                    String label = "[in%d_%d]".formatted(input, use);
+                    split.append(label);
+                    sources[uses.get(use)] = label;
+                }
+                chains.add(split.toString());
+            }
+        }
+
+        StringBuilder concat = new StringBuilder();
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            StringBuilder chain = new StringBuilder(sources[i]);
+            chain.append(String.format(Locale.ROOT, "trim=start=%.3f", segment.start()));
+            if (segment.end() != Double.POSITIVE_INFINITY) {
+                chain.append(String.format(Locale.ROOT, ":end=%.3f", segment.end()));
+            }
+            chain.append(",setpts=PTS-STARTPTS");
+            if (rescale) {
+                if (segment.input() == 1) {
+                    chain.append(",scale=%d:%d".formatted(original.width(), original.height()));
+                }
+                chain.append(",setsar=1");
+            }
+            chain.append("[v%d]".formatted(i));
+            chains.add(chain.toString());
+            concat.append("[v%d]".formatted(i));
+        }
+        concat.append("concat=n=%d:v=1:a=0[v]".formatted(segments.size()));
+        chains.add(concat.toString());
+        return String.join(";", chains);
+    }
+}
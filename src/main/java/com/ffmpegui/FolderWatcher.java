@@ -0,0 +1,171 @@
+package com.ffmpegui;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * @description: 监视文件夹中新到达的媒体文件
+ * 基于 {@link WatchService} 发现新文件，文件大小和修改时间在一段时间内不再变化（拷贝完成）后才交给回调处理；
+ * 范围与批处理的扫描相同（见 {@link FileDiscovery}）：包含子文件夹时逐个监视扫描会进入的子文件夹，
+ * 包含/排除通配符同样生效，OK 和隐藏文件夹不监视。
+ */
+final class FolderWatcher {
+    private static final long POLL_MILLIS = 1_000;
+    // 文件大小持续这么久不变才认为已经写完
+    static final long STABLE_MILLIS = 5_000;
+
+    // 等待稳定的文件：上次看到的大小、修改时间，以及从什么时候起没有变化
+    private record Candidate(long size, long modified, long since) {
+    }
+
+    private final Consumer<String> log;
+    private volatile boolean stopped;
+
+    FolderWatcher(Consumer<String> log) {
+        this.log = log;
+    }
+
+    // 停止监视，watch 在下一次轮询时返回
+    void stop() {
+        stopped = true;
+    }
+
+    boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * 阻塞监视文件夹，直到调用 {@link #stop()} 或 cancelled 返回 true。
+     * 开始时文件夹中已有的文件同样要等稳定后才处理。
+     *
+     * @param discovery 扫描范围，与批处理使用同样的选项
+     * @param skip      不需要处理的文件（如上次已完成的）
+     * @param onStable  文件写完后回调，每个文件只回调一次
+     */
+    void watch(File folder, FileDiscovery discovery, Collection<File> skip, Consumer<File> onStable,
+               BooleanSupplier cancelled) throws Exception {
+        Path dir = folder.toPath().toAbsolutePath();
+        Set<Path> handled = new HashSet<>();
+        for (File file : skip) {
+            handled.add(file.toPath().toAbsolutePath());
+        }
+        Map<Path, Candidate> candidates = new LinkedHashMap<>();
+
+        try (WatchService watchService = dir.getFileSystem().newWatchService()) {
+            // 每个被监视的文件夹，事件中的文件名相对于它
+            Map<WatchKey, Path> watched = new HashMap<>();
+            scan(discovery, watchService, watched, handled, candidates);
+
+            while (!stopped && !cancelled.getAsBoolean()) {
+                WatchKey key = watchService.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    Path keyDir = watched.get(key);
+                    boolean rescan = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // 事件太多被丢弃，重新扫描一遍
+                            rescan = true;
+                        } else if (event.context() instanceof Path name && keyDir != null) {
+                            Path path = keyDir.resolve(name);
+                            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                                // 新建（或移入）的子文件夹：重新扫描，注册它并收入其中已有的文件
+                                rescan |= discovery.enters(path);
+                            } else if (discovery.accepts(path)) {
+                                track(path, handled, candidates);
+                            }
+                        }
+                    }
+                    if (rescan) {
+                        scan(discovery, watchService, watched, handled, candidates);
+                    }
+                    if (!key.reset()) {
+                        watched.remove(key);
+                        if (dir.equals(keyDir)) {
+                            log.accept("监视的文件夹已不可用，停止监视: " + folder);
+                            return;
+                        }
+                    }
+                }
+                emitStable(handled, candidates, onStable);
+            }
+        } catch (ClosedWatchServiceException e) {
+            // 正在退出
+        }
+    }
+
+    /**
+     * 按扫描范围收入文件，并注册还没有监视的文件夹。
+     * 文件夹在列出内容之后才注册，期间到达的文件没有事件，所以有新注册的文件夹时再扫描一遍
+     */
+    private static void scan(FileDiscovery discovery, WatchService watchService, Map<WatchKey, Path> watched,
+                             Set<Path> handled, Map<Path, Candidate> candidates) throws Exception {
+        boolean registered = true;
+        while (registered) {
+            boolean[] added = new boolean[1];
+            discovery.walk(listing -> {
+                Path listed = listing.dir().toAbsolutePath();
+                if (!watched.containsValue(listed)) {
+                    WatchKey key = listed.register(watchService,
+                            StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                    watched.put(key, listed);
+                    added[0] = true;
+                }
+                for (File file : listing.files()) {
+                    track(file.toPath().toAbsolutePath(), handled, candidates);
+                }
+            });
+            registered = added[0];
+        }
+    }
+
+    private static void track(Path path, Set<Path> handled, Map<Path, Candidate> candidates) {
+        File file = path.toFile();
+        if (handled.contains(path) || candidates.containsKey(path) || !file.isFile()) {
+            return;
+        }
+        candidates.put(path, new Candidate(file.length(), file.lastModified(), System.currentTimeMillis()));
+    }
+
+    // 检查等待中的文件，大小和修改时间稳定的交给回调
+    private void emitStable(Set<Path> handled, Map<Path, Candidate> candidates, Consumer<File> onStable) {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Path, Candidate>> it = candidates.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, Candidate> entry = it.next();
+            File file = entry.getKey().toFile();
+            Candidate last = entry.getValue();
+            if (!file.isFile()) {
+                // 拷贝中途被删除或改名
+                it.remove();
+                continue;
+            }
+            long size = file.length();
+            long modified = file.lastModified();
+            if (size != last.size() || modified != last.modified() || size == 0) {
+                entry.setValue(new Candidate(size, modified, now));
+            } else if (now - last.since() >= STABLE_MILLIS) {
+                it.remove();
+                handled.add(entry.getKey());
+                onStable.accept(file);
+            }
+        }
+    }
+}
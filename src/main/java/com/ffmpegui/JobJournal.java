@@ -0,0 +1,238 @@
+package com.ffmpegui;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * @description: 批处理任务日志（只追加），用于中断后续跑
+ * 每个输入文件夹、每种操作一个日志文件，逐行记录任务的排队、开始、执行的命令、完成（含输出大小）和失败，
+ * 子文件夹中的文件按相对路径记录；
+ * 每条记录写入后立即落盘，进程或机器崩溃时最多丢失最后一行。
+ * 重新运行同样参数的批次时，已完成且输出通过校验的文件直接跳过，中途被打断的文件删除残留输出后重新处理；
+ * 参数不同则视为新批次，旧日志作废。
+ */
+final class JobJournal {
+    private static final String FILE_PREFIX = ".ffmpeg_batch_";
+    private static final String FILE_SUFFIX = ".journal";
+
+    private static final String BATCH = "BATCH";
+    private static final String QUEUED = "QUEUED";
+    private static final String STARTED = "STARTED";
+    private static final String COMMAND = "COMMAND";
+    private static final String DONE = "DONE";
+    private static final String FAILED = "FAILED";
+
+    // 上次运行中已完成的任务：输出路径和当时的输出大小
+    record Completed(String outputPath, long size) {
+    }
+
+    private final JobSettings settings;
+    private final boolean resume;
+    private final Consumer<String> log;
+    private final Map<String, Completed> completed = new HashMap<>();
+    private final Set<String> interrupted = new HashSet<>();
+    private volatile Path path;
+    private volatile Path folder;
+    private boolean writeFailed;
+
+    /**
+     * @param resume 为 false 时忽略已有日志，所有文件重新处理
+     */
+    JobJournal(JobSettings settings, boolean resume, Consumer<String> log) {
+        this.settings = settings;
+        this.resume = resume;
+        this.log = log;
+    }
+
+    // 规划阶段调用：读取文件夹中已有的日志，参数不一致或不续跑时重新开始
+    synchronized void load(File folder) throws IOException {
+        this.folder = folder.getAbsoluteFile().toPath();
+        path = new File(folder, FILE_PREFIX + settings.operation().name().toLowerCase() + FILE_SUFFIX).toPath();
+        completed.clear();
+        interrupted.clear();
+
+        String fingerprint = fingerprint(settings);
+        boolean matched = false;
+        if (resume && Files.exists(path)) {
+            matched = replay(Files.readAllLines(path, StandardCharsets.UTF_8), fingerprint);
+        }
+        if (!matched) {
+            completed.clear();
+            interrupted.clear();
+            Files.deleteIfExists(path);
+        } else if (!completed.isEmpty() || !interrupted.isEmpty()) {
+            log.accept("读取任务日志 %s：已完成 %d 个，中断 %d 个".formatted(
+                    path.getFileName(), completed.size(), interrupted.size()));
+        }
+        append(BATCH, "-", fingerprint);
+    }
+
+    // 上次已完成的记录；输出是否仍然有效由调用方校验
+    synchronized Completed completed(File input) {
+        return completed.get(keyOf(input));
+    }
+
+    // 上次开始处理但没有完成（崩溃、取消或失败）
+    synchronized boolean wasInterrupted(File input) {
+        return interrupted.contains(keyOf(input));
+    }
+
+    void queued(JobScheduler.Job job) {
+        append(QUEUED, keyOf(job.input()), job.outputPath());
+    }
+
+    void command(JobScheduler.Job job, List<String> command) {
+        if (job != null) {
+            append(COMMAND, keyOf(job.input()), String.join(" ", command));
+        }
+    }
+
+    // 包装任务：执行前记录开始，结束后记录完成或失败
+    JobScheduler.Task track(JobScheduler.Task task) {
+        return finished(started(task));
+    }
+
+    // 包装流水线：编码前记录开始，有校验阶段时校验通过才记录完成
+    JobScheduler.Pipeline track(JobScheduler.Pipeline pipeline) {
+        if (pipeline.verify() == null) {
+            return new JobScheduler.Pipeline(pipeline.probe(), track(pipeline.encode()), null);
+        }
+        return new JobScheduler.Pipeline(pipeline.probe(), started(pipeline.encode()), finished(pipeline.verify()));
+    }
+
+    private JobScheduler.Task started(JobScheduler.Task task) {
+        return job -> {
+            append(STARTED, keyOf(job.input()), job.outputPath());
+            runLogged(task, job);
+        };
+    }
+
+    private JobScheduler.Task finished(JobScheduler.Task task) {
+        return job -> {
+            runLogged(task, job);
+            append(DONE, keyOf(job.input()), job.outputPath() + "\t" + new File(job.outputPath()).length());
+        };
+    }
+
+    private void runLogged(JobScheduler.Task task, JobScheduler.Job job) throws Exception {
+        try {
+            task.run(job);
+        } catch (Exception e) {
+            append(FAILED, keyOf(job.input()), String.valueOf(e.getMessage()));
+            throw e;
+        }
+    }
+
+    // 按顺序重放日志，返回日志是否属于同一参数的批次
+    private boolean replay(List<String> lines, String fingerprint) {
+        boolean matched = false;
+        for (String line : lines) {
+            String[] fields = line.split("\t", 5);
+            if (fields.length < 4) {
+                // 崩溃时写了一半的行
+                continue;
+            }
+            String type = fields[1];
+            String name = fields[2];
+            switch (type) {
+                case BATCH -> {
+                    if (!fields[3].equals(fingerprint)) {
+                        return false;
+                    }
+                    matched = true;
+                }
+                case STARTED -> {
+                    completed.remove(name);
+                    interrupted.add(name);
+                }
+                case DONE -> {
+                    if (fields.length == 5) {
+                        try {
+                            completed.put(name, new Completed(fields[3], Long.parseLong(fields[4])));
+                            interrupted.remove(name);
+                        } catch (NumberFormatException ignored) {
+                            // 不完整的记录按未完成处理
+                        }
+                    }
+                }
+                default -> {
+                    // QUEUED、COMMAND、FAILED 只用于排查问题
+                }
+            }
+        }
+        return matched;
+    }
+
+    // 写入一行并立即落盘
+    private synchronized void append(String type, String name, String data) {
+        Path target = path;
+        if (target == null) {
+            return;
+        }
+        String line = System.currentTimeMillis() + "\t" + type + "\t" + clean(name) + "\t"
+                + data.replace('\r', ' ').replace('\n', ' ') + "\n";
+        try (FileChannel channel = FileChannel.open(target,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            // 日志写不进去不影响处理本身，只提示一次
+            if (!writeFailed) {
+                writeFailed = true;
+                log.accept("写入任务日志失败，本批次中断后将无法续跑: " + e.getMessage());
+            }
+        }
+    }
+
+    // 记录中的文件标识：相对批次文件夹的路径，根文件夹中的文件就是文件名；不同子文件夹中的同名文件互不影响
+    private String keyOf(File input) {
+        Path root = folder;
+        Path file = input.getAbsoluteFile().toPath();
+        if (root == null || !file.startsWith(root)) {
+            return input.getName();
+        }
+        return root.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    private static String clean(String text) {
+        return text.replace('\t', ' ').replace('\r', ' ').replace('\n', ' ');
+    }
+
+    // 影响输出结果的参数摘要；分段数和拼接方式只影响处理方式，不参与比较。
+    // 局部处理结尾时前面的画面不经过压缩，输出不同；只在开启时加入，不影响已有的任务日志
+    private static String fingerprint(JobSettings settings) {
+        String canonical = String.join("\n", settings.operation().name(), settings.ffmpegArgs(),
+                settings.delogoParams(), settings.lastDuration(), settings.headDuration(), settings.tailDuration(),
+                String.valueOf(settings.doSpliceHead()), String.valueOf(settings.doSpliceTail()));
+        if (settings.partialTrailer()) {
+            canonical += "\npartialTrailer";
+        }
+        if (settings.operation() == PageType.COMBINED) {
+            canonical += "\n" + settings.outputSuffix() + "\n" + settings.trimStart() + "\n" + settings.trimEnd();
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonical.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.ffmpegui;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @description: 批处理任务排序策略
+ * 规划阶段先探测每个输入的时长作为预计耗时，再按策略决定入队顺序：
+ * 最长优先可以缩短多并发时整批的总耗时，最短优先可以尽早产出更多成品。
+ */
+enum JobOrder {
+    LONGEST_FIRST("最长优先"),
+    SHORTEST_FIRST("最短优先"),
+    NAME("按文件名");
+
+    private final String title;
+
+    JobOrder(String title) {
+        this.title = title;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    // 按文件名排序时不需要探测时长
+    boolean needsCost() {
+        return this != NAME;
+    }
+
+    // 按预计耗时排序，探测失败（没有耗时）的文件排在最后并保持原有顺序
+    <T> List<T> order(List<T> items, Map<T, Double> costs) {
+        if (!needsCost()) {
+            return new ArrayList<>(items);
+        }
+        Comparator<T> byCost = Comparator.comparingDouble(costs::get);
+        if (this == LONGEST_FIRST) {
+            byCost = byCost.reversed();
+        }
+        List<T> known = new ArrayList<>();
+        List<T> unknown = new ArrayList<>();
+        for (T item : items) {
+            if (costs.get(item) == null) {
+                unknown.add(item);
+            } else {
+                known.add(item);
+            }
+        }
+        known.sort(byCost);
+        known.addAll(unknown);
+        return known;
+    }
+
+    @Override
+    public String toString() {
+        return title;
+    }
+}
@@ -0,0 +1,575 @@
+package com.ffmpegui;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @description: 批处理任务调度器
+ * 用有界的工作线程池同时运行多个 ffmpeg 任务，转小、去小字、去未完待续共用同一个调度器。
+ * 每个批次先在协调线程上执行规划（扫描文件、生成输出路径），再把任务逐个放入工作队列。
+ * 并发上限同时作用于 ffmpeg 进程槽位：一个任务内部并行的多个阶段（如高级拼接）也要占用槽位。
+ * 批次可以取消、暂停和继续，外部进程由 {@link ProcessController} 统一控制。
+ * 每个任务依次经过 探测 → 编码 → 校验 三个阶段，各阶段有自己的线程数和队列：
+ * 探测提前读取后面任务的输入信息，校验与下一个任务的编码同时进行，两者都不占编码线程。
+ */
+final class JobScheduler {
+    private static final int PROBE_THREADS = 2;
+    private static final int VERIFY_THREADS = 2;
+    // 探测最多领先编码线程这么多个任务
+    private static final int PREFETCH_DEPTH = 4;
+    // 校验队列满时编码线程等待，不再开始新任务
+    private static final int VERIFY_QUEUE = 4;
+    // 总进度不到 1% 时估算的剩余时间误差太大，不估算
+    private static final double MIN_ETA_FRACTION = 0.01;
+
+    // 流水线阶段
+    enum PipelineStage {
+        PROBE("探测"),
+        ENCODE("编码"),
+        VERIFY("校验");
+
+        private final String title;
+
+        PipelineStage(String title) {
+            this.title = title;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+    }
+
+    // 某个阶段当前的线程数、正在执行和排队的任务数
+    record StageStatus(PipelineStage stage, int threads, int active, int queued) {
+        @Override
+        public String toString() {
+            return "%s %d/%d（排队 %d）".formatted(stage.getTitle(), active, threads, queued);
+        }
+    }
+
+    /**
+     * 正在运行的 ffmpeg 命令的状态，来自 -progress 输出
+     *
+     * @param fps        编码帧率，未知时为 NaN
+     * @param speed      处理速度（媒体秒/实际秒），未知时为 NaN
+     * @param etaSeconds 这条命令的剩余时间（秒），未知时为 NaN
+     */
+    record EncodeStatus(double fps, double speed, double etaSeconds) {
+    }
+
+    // 任务状态
+    enum JobState {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED
+    }
+
+    // 单个文件的处理任务
+    static final class Job {
+        private final File input;
+        private final String outputPath;
+        private volatile JobState state = JobState.QUEUED;
+        private volatile double progress;
+        private volatile EncodeStatus encodeStatus;
+        private volatile Batch batch;
+
+        Job(File input, String outputPath) {
+            this.input = input;
+            this.outputPath = outputPath;
+        }
+
+        String name() {
+            return input.getName();
+        }
+
+        File input() {
+            return input;
+        }
+
+        String outputPath() {
+            return outputPath;
+        }
+
+        JobState state() {
+            return state;
+        }
+
+        double progress() {
+            return progress;
+        }
+
+        // 更新任务内进度（0~1），并通知批次刷新总进度
+        void setProgress(double value) {
+            progress = Math.max(0, Math.min(1, value));
+            Batch owner = batch;
+            if (owner != null) {
+                owner.listener.onProgress(owner);
+            }
+        }
+
+        // 最近一次的编码状态，没有运行中的 ffmpeg 命令时为 null
+        EncodeStatus encodeStatus() {
+            return encodeStatus;
+        }
+
+        void setEncodeStatus(EncodeStatus status) {
+            encodeStatus = status;
+            Batch owner = batch;
+            if (owner != null && status != null) {
+                owner.listener.onJobProgress(this, owner);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface Planner {
+        void plan(Batch batch) throws Exception;
+    }
+
+    @FunctionalInterface
+    interface Task {
+        void run(Job job) throws Exception;
+    }
+
+    // 任务内部的一个处理阶段（通常是一次 ffmpeg 调用）
+    @FunctionalInterface
+    interface Stage {
+        void run() throws Exception;
+    }
+
+    // 一个批次的三个阶段；probe 和 verify 可以为 null，表示跳过该阶段
+    record Pipeline(Task probe, Task encode, Task verify) {
+        static Pipeline of(Task encode) {
+            return new Pipeline(null, encode, null);
+        }
+    }
+
+    interface Listener {
+        void onJobStarted(Job job, Batch batch);
+
+        void onJobFinished(Job job, Exception error, Batch batch);
+
+        void onBatchFinished(Batch batch);
+
+        default void onProgress(Batch batch) {
+        }
+
+        // 任务内的编码状态更新（每组 -progress 输出一次，约每 0.5 秒）
+        default void onJobProgress(Job job, Batch batch) {
+        }
+
+        default void onPlanningFailed(Exception error) {
+        }
+    }
+
+    // 一次批处理：规划阶段不断 add 任务，规划结束后封口，全部任务结束时回调 onBatchFinished
+    final class Batch {
+        private final Pipeline pipeline;
+        private final Listener listener;
+        private final List<Job> jobs = new CopyOnWriteArrayList<>();
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger done = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger cancelled = new AtomicInteger();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final CountDownLatch finishedLatch = new CountDownLatch(1);
+        // 已加入但还没交给探测阶段的任务，按加入顺序放行
+        private final Deque<Job> pending = new ArrayDeque<>();
+        // 已交给探测阶段、还没开始编码的任务数
+        private int prefetched;
+        private volatile boolean sealed;
+        private final long startNanos = System.nanoTime();
+
+        private Batch(Pipeline pipeline, Listener listener) {
+            this.pipeline = pipeline;
+            this.listener = listener;
+        }
+
+        void add(Job job) {
+            if (sealed) {
+                throw new IllegalStateException("批次已封口，不能再添加任务");
+            }
+            job.batch = this;
+            jobs.add(job);
+            metrics.jobQueued();
+            synchronized (pending) {
+                pending.add(job);
+            }
+            pump();
+        }
+
+        List<Job> jobs() {
+            return List.copyOf(jobs);
+        }
+
+        int total() {
+            return jobs.size();
+        }
+
+        int running() {
+            return running.get();
+        }
+
+        int done() {
+            return done.get();
+        }
+
+        int failed() {
+            return failed.get();
+        }
+
+        int cancelled() {
+            return cancelled.get();
+        }
+
+        boolean isCancelled() {
+            return processes.isCancelled();
+        }
+
+        // 各阶段的线程和队列情况
+        List<StageStatus> stageStatus() {
+            return JobScheduler.this.stageStatus();
+        }
+
+        // 取消整批：排队中的任务不再执行，运行中的进程树被结束，未完成的输出文件被删除
+        void cancel() {
+            processes.cancelAll();
+        }
+
+        void pause() {
+            processes.pauseAll();
+        }
+
+        void resume() {
+            processes.resumeAll();
+        }
+
+        // 所有任务进度之和 / 任务数，用于驱动总进度条
+        double completedFraction() {
+            int total = jobs.size();
+            if (total == 0) {
+                return sealed ? 1 : 0;
+            }
+            double sum = 0;
+            for (Job job : jobs) {
+                sum += job.progress;
+            }
+            return sum / total;
+        }
+
+        // 按已用时间和总进度估算的剩余时间（秒），进度太少无法估计时为 NaN
+        double estimatedRemainingSeconds() {
+            double fraction = completedFraction();
+            if (fraction >= 1) {
+                return 0;
+            }
+            if (fraction < MIN_ETA_FRACTION) {
+                return Double.NaN;
+            }
+            double elapsed = (System.nanoTime() - startNanos) / 1e9;
+            return elapsed * (1 - fraction) / fraction;
+        }
+
+        void awaitCompletion() throws InterruptedException {
+            finishedLatch.await();
+        }
+
+        boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+            return finishedLatch.await(timeout, unit);
+        }
+
+        // 在探测领先编码的上限内放行排队的任务；编码队列保持加入顺序，编码线程开始前等待该任务探测完成
+        private void pump() {
+            synchronized (pending) {
+                while (!pending.isEmpty() && prefetched < getMaxConcurrent() + PREFETCH_DEPTH) {
+                    Job job = pending.poll();
+                    prefetched++;
+                    CompletableFuture<Void> probed = pipeline.probe() == null
+                            ? CompletableFuture.completedFuture(null)
+                            : CompletableFuture.runAsync(() -> runStep(pipeline.probe(), job), probeStage);
+                    workers.execute(() -> runJob(job, probed));
+                }
+            }
+        }
+
+        private void runJob(Job job, CompletableFuture<Void> probed) {
+            Exception error = null;
+            try {
+                probed.join();
+            } catch (CompletionException e) {
+                error = e.getCause() instanceof Exception cause ? cause : e;
+            }
+            synchronized (pending) {
+                prefetched--;
+            }
+            pump();
+
+            if (processes.isCancelled()) {
+                job.state = JobState.CANCELLED;
+                job.progress = 1;
+                cancelled.incrementAndGet();
+                metrics.jobFinished(job, false);
+                listener.onJobFinished(job, null, this);
+                checkFinished();
+                return;
+            }
+
+            job.state = JobState.RUNNING;
+            running.incrementAndGet();
+            metrics.jobStarted(job);
+            listener.onJobStarted(job, this);
+
+            try {
+                if (error == null) {
+                    pipeline.encode().run(job);
+                }
+            } catch (Exception e) {
+                error = e;
+            } finally {
+                running.decrementAndGet();
+                metrics.jobEncoded(job);
+            }
+
+            if (error == null && pipeline.verify() != null && !processes.isCancelled()) {
+                // 校验在校验线程上进行，编码线程接着处理下一个任务
+                try {
+                    verifyStage.execute(() -> verifyJob(job));
+                    return;
+                } catch (RejectedExecutionException e) {
+                    error = e;
+                }
+            }
+            finishJob(job, error);
+        }
+
+        private void verifyJob(Job job) {
+            Exception error = null;
+            try {
+                pipeline.verify().run(job);
+            } catch (Exception e) {
+                error = e;
+            }
+            finishJob(job, error);
+        }
+
+        private void finishJob(Job job, Exception error) {
+            if (error == null) {
+                job.state = JobState.DONE;
+                done.incrementAndGet();
+            } else if (processes.isCancelled()) {
+                error = null;
+                job.state = JobState.CANCELLED;
+                cancelled.incrementAndGet();
+                deletePartialOutput(job);
+            } else {
+                job.state = JobState.FAILED;
+                failed.incrementAndGet();
+            }
+            job.progress = 1;
+            job.encodeStatus = null;
+            metrics.jobFinished(job, true);
+
+            listener.onJobFinished(job, error, this);
+            listener.onProgress(this);
+            checkFinished();
+        }
+
+        private void deletePartialOutput(Job job) {
+            File output = new File(job.outputPath());
+            if (output.isFile() && !output.delete()) {
+                output.deleteOnExit();
+            }
+        }
+
+        private void seal() {
+            sealed = true;
+            checkFinished();
+        }
+
+        private void checkFinished() {
+            if (sealed && done.get() + failed.get() + cancelled.get() == jobs.size()
+                    && finished.compareAndSet(false, true)) {
+                listener.onBatchFinished(this);
+                finishedLatch.countDown();
+            }
+        }
+    }
+
+    private final ThreadPoolExecutor workers;
+    private final ExecutorService coordinator;
+    private final ExecutorService stages;
+    private final ThreadPoolExecutor probeStage;
+    private final ThreadPoolExecutor verifyStage;
+    private final ProcessController processes = new ProcessController();
+    private final ResourceGovernor governor = new ResourceGovernor(processes);
+    private final Metrics metrics = new Metrics();
+
+    // ffmpeg 进程槽位
+    private final Object slotLock = new Object();
+    private int processSlots;
+    private int usedSlots;
+
+    JobScheduler(int maxConcurrent) {
+        int size = Math.max(1, maxConcurrent);
+        workers = new ThreadPoolExecutor(size, size, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), daemonThreadFactory("ffmpeg-worker-"));
+        workers.allowCoreThreadTimeOut(true);
+        coordinator = Executors.newCachedThreadPool(daemonThreadFactory("batch-planner-"));
+        stages = Executors.newCachedThreadPool(daemonThreadFactory("ffmpeg-stage-"));
+        probeStage = new ThreadPoolExecutor(PROBE_THREADS, PROBE_THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), daemonThreadFactory("ffmpeg-probe-"));
+        probeStage.allowCoreThreadTimeOut(true);
+        // 校验队列有界：满了以后提交方（编码线程）阻塞等待
+        verifyStage = new ThreadPoolExecutor(VERIFY_THREADS, VERIFY_THREADS, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(VERIFY_QUEUE), daemonThreadFactory("ffmpeg-verify-"), (runnable, executor) -> {
+            try {
+                executor.getQueue().put(runnable);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(e);
+            }
+        });
+        verifyStage.allowCoreThreadTimeOut(true);
+        processSlots = size;
+        metrics.registerMBean();
+    }
+
+    ProcessController processes() {
+        return processes;
+    }
+
+    ResourceGovernor governor() {
+        return governor;
+    }
+
+    Metrics metrics() {
+        return metrics;
+    }
+
+    int getMaxConcurrent() {
+        return workers.getMaximumPoolSize();
+    }
+
+    // 调整同时运行的 ffmpeg 任务数，对已排队的任务立即生效
+    void setMaxConcurrent(int maxConcurrent) {
+        int size = Math.max(1, maxConcurrent);
+        if (size > workers.getMaximumPoolSize()) {
+            workers.setMaximumPoolSize(size);
+            workers.setCorePoolSize(size);
+        } else {
+            workers.setCorePoolSize(size);
+            workers.setMaximumPoolSize(size);
+        }
+        synchronized (slotLock) {
+            processSlots = size;
+            slotLock.notifyAll();
+        }
+    }
+
+    // 启动编码进程前占用一个槽位，槽位用完时阻塞等待
+    void acquireProcessSlot() throws InterruptedException {
+        synchronized (slotLock) {
+            while (usedSlots >= processSlots) {
+                slotLock.wait();
+            }
+            usedSlots++;
+        }
+    }
+
+    void releaseProcessSlot() {
+        synchronized (slotLock) {
+            usedSlots--;
+            slotLock.notifyAll();
+        }
+    }
+
+    // 各流水线阶段的线程数和队列深度，用于显示进度
+    List<StageStatus> stageStatus() {
+        return List.of(status(PipelineStage.PROBE, probeStage),
+                status(PipelineStage.ENCODE, workers),
+                status(PipelineStage.VERIFY, verifyStage));
+    }
+
+    private static StageStatus status(PipelineStage stage, ThreadPoolExecutor executor) {
+        BlockingQueue<Runnable> queue = executor.getQueue();
+        return new StageStatus(stage, executor.getMaximumPoolSize(), executor.getActiveCount(), queue.size());
+    }
+
+    // 执行探测阶段；已取消时跳过
+    private void runStep(Task step, Job job) {
+        if (processes.isCancelled()) {
+            return;
+        }
+        try {
+            step.run(job);
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    // 在阶段线程池上异步执行一个阶段，用于任务内部互不依赖的步骤并行
+    CompletableFuture<Void> runStage(Stage stage) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                stage.run();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, stages);
+    }
+
+    // 等待所有阶段结束，任一阶段失败时抛出其原始异常
+    static void awaitAll(List<CompletableFuture<Void>> futures) throws Exception {
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture<?>[]::new)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    Batch submit(Planner planner, Task task, Listener listener) {
+        return submit(planner, Pipeline.of(task), listener);
+    }
+
+    Batch submit(Planner planner, Pipeline pipeline, Listener listener) {
+        Batch batch = new Batch(pipeline, listener);
+        processes.reset();
+        coordinator.execute(() -> {
+            try {
+                planner.plan(batch);
+            } catch (Exception e) {
+                listener.onPlanningFailed(e);
+            } finally {
+                batch.seal();
+            }
+        });
+        return batch;
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,137 @@
+package com.ffmpegui;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * @description: 一个批次的处理参数，界面上读取后传给 {@link MediaProcessor}；
+ * 分布式模式下随任务一起发送给 worker
+ */
+record JobSettings(PageType operation, String ffmpegArgs, String delogoParams, String lastDuration,
+                   int chunkCount, String headDuration, String tailDuration,
+                   boolean doSpliceHead, boolean doSpliceTail, SpliceMode spliceMode, boolean partialTrailer,
+                   Set<PageType> steps, String trimStart, String trimEnd) {
+
+    // 组合处理可以合并的操作，输出文件名按这个顺序加后缀（与分别处理时依次追加的后缀一致）
+    static final List<PageType> COMBINABLE = List.of(PageType.REMOVE_SUBTITLE, PageType.REMOVE_TRAILER, PageType.COMPRESS);
+    // 裁剪片头片尾的后缀
+    static final String TRIM_SUFFIX = "t";
+
+    JobSettings {
+        steps = Set.copyOf(steps);
+    }
+
+    // 转小、去小字、去未完待续
+    static JobSettings forFiles(PageType operation, String ffmpegArgs, String delogoParams,
+                                String lastDuration, int chunkCount) {
+        return forFiles(operation, ffmpegArgs, delogoParams, lastDuration, chunkCount, false);
+    }
+
+    // partialTrailer：去未完待续时只重新编码结尾，前面的画面流复制
+    static JobSettings forFiles(PageType operation, String ffmpegArgs, String delogoParams,
+                                String lastDuration, int chunkCount, boolean partialTrailer) {
+        return new JobSettings(operation, ffmpegArgs, delogoParams, lastDuration, chunkCount,
+                "", "", false, false, SpliceMode.SEGMENTS, partialTrailer, Set.of(), "", "");
+    }
+
+    /**
+     * 组合处理：去小字、去未完待续、裁剪和压缩合并成一条滤镜链，每个文件只解码、编码一次
+     *
+     * @param steps     选中的操作，取自 {@link #COMBINABLE}
+     * @param trimStart 去掉开头的秒数，空字符串表示不裁剪
+     * @param trimEnd   去掉结尾的秒数，空字符串表示不裁剪
+     */
+    static JobSettings forCombined(Set<PageType> steps, String ffmpegArgs, String delogoParams, String lastDuration,
+                                   String trimStart, String trimEnd, int chunkCount) {
+        return new JobSettings(PageType.COMBINED, ffmpegArgs, delogoParams,
+                steps.contains(PageType.REMOVE_TRAILER) ? lastDuration : "", chunkCount,
+                "", "", false, false, SpliceMode.SEGMENTS, false, steps, trimStart, trimEnd);
+    }
+
+    // 高级拼接
+    static JobSettings forSplice(String ffmpegArgs, String headDuration, String tailDuration,
+                                 boolean doSpliceHead, boolean doSpliceTail, SpliceMode spliceMode) {
+        return new JobSettings(PageType.VIDEO_SPLICE_ADVANCED, ffmpegArgs, "", "", 1,
+                headDuration, tailDuration, doSpliceHead, doSpliceTail, spliceMode, false, Set.of(), "", "");
+    }
+
+    // 换成另一组去水印区域（自动检测的结果），其余参数不变
+    JobSettings withDelogoParams(String params) {
+        return new JobSettings(operation, ffmpegArgs, params, lastDuration, chunkCount, headDuration, tailDuration,
+                doSpliceHead, doSpliceTail, spliceMode, partialTrailer, steps, trimStart, trimEnd);
+    }
+
+    // 输出文件名后缀；组合处理按选中的操作依次拼接，如 s_w_c
+    String outputSuffix() {
+        if (operation != PageType.COMBINED) {
+            return operation.getOutputSuffix();
+        }
+        StringJoiner suffix = new StringJoiner("_");
+        for (PageType step : COMBINABLE) {
+            if (step == PageType.COMPRESS && trimSeconds() > 0) {
+                suffix.add(TRIM_SUFFIX);
+            }
+            if (steps.contains(step)) {
+                suffix.add(step.getOutputSuffix());
+            }
+        }
+        return suffix.toString();
+    }
+
+    // 裁剪掉的总时长（秒）
+    double trimSeconds() {
+        return seconds(trimStart) + seconds(trimEnd);
+    }
+
+    static double seconds(String value) {
+        return value == null || value.isBlank() ? 0 : Double.parseDouble(value.trim());
+    }
+
+    Properties toProperties() {
+        Properties props = new Properties();
+        props.setProperty("operation", operation.name());
+        props.setProperty("ffmpegArgs", ffmpegArgs);
+        props.setProperty("delogoParams", delogoParams);
+        props.setProperty("lastDuration", lastDuration);
+        props.setProperty("chunkCount", String.valueOf(chunkCount));
+        props.setProperty("headDuration", headDuration);
+        props.setProperty("tailDuration", tailDuration);
+        props.setProperty("doSpliceHead", String.valueOf(doSpliceHead));
+        props.setProperty("doSpliceTail", String.valueOf(doSpliceTail));
+        props.setProperty("spliceMode", spliceMode.name());
+        props.setProperty("partialTrailer", String.valueOf(partialTrailer));
+        StringJoiner stepNames = new StringJoiner(",");
+        steps.forEach(step -> stepNames.add(step.name()));
+        props.setProperty("steps", stepNames.toString());
+        props.setProperty("trimStart", trimStart);
+        props.setProperty("trimEnd", trimEnd);
+        return props;
+    }
+
+    static JobSettings fromProperties(Properties props) {
+        Set<PageType> steps = EnumSet.noneOf(PageType.class);
+        for (String name : props.getProperty("steps", "").split(",")) {
+            if (!name.isEmpty()) {
+                steps.add(PageType.valueOf(name));
+            }
+        }
+        return new JobSettings(
+                PageType.valueOf(props.getProperty("operation")),
+                props.getProperty("ffmpegArgs", ""),
+                props.getProperty("delogoParams", ""),
+                props.getProperty("lastDuration", ""),
+                Integer.parseInt(props.getProperty("chunkCount", "1")),
+                props.getProperty("headDuration", ""),
+                props.getProperty("tailDuration", ""),
+                Boolean.parseBoolean(props.getProperty("doSpliceHead")),
+                Boolean.parseBoolean(props.getProperty("doSpliceTail")),
+                SpliceMode.valueOf(props.getProperty("spliceMode", SpliceMode.SEGMENTS.name())),
+                Boolean.parseBoolean(props.getProperty("partialTrailer")),
+                steps,
+                props.getProperty("trimStart", ""),
+                props.getProperty("trimEnd", ""));
+    }
+}
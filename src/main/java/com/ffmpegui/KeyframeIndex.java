@@ -0,0 +1,83 @@
+package com.ffmpegui;
+
+import java.util.Arrays;
+
+/**
+ * @description: 视频流的关键帧时间表（秒，相对第一帧），用于按 GOP 边界切分
+ * 由 {@link ProbeService#keyframes(String)} 从 ffprobe 的 packet 列表生成，只读取封装层，不解码
+ */
+final class KeyframeIndex {
+    private final double[] times;
+
+    private KeyframeIndex(double[] times) {
+        this.times = times;
+    }
+
+    /**
+     * 解析 ffprobe -show_entries packet=pts_time,flags -of csv=p=0 的输出，
+     * 每行形如 12.345000,K_；时间换算成相对第一个 packet 的偏移，与 ffmpeg -ss 的含义一致
+     */
+    static KeyframeIndex parse(String csv) {
+        double first = Double.MAX_VALUE;
+        double[] keyframes = new double[64];
+        int count = 0;
+        for (String line : csv.split("\n")) {
+            String[] fields = line.trim().split(",");
+            if (fields.length < 2) {
+                continue;
+            }
+            double time;
+            try {
+                time = Double.parseDouble(fields[0]);
+            } catch (NumberFormatException e) {
+                // pts_time 为 N/A
+                continue;
+            }
+            first = Math.min(first, time);
+            if (fields[1].startsWith("K")) {
+                if (count == keyframes.length) {
+                    keyframes = Arrays.copyOf(keyframes, count * 2);
+                }
+                keyframes[count++] = time;
+            }
+        }
+        double[] times = Arrays.copyOf(keyframes, count);
+        for (int i = 0; i < count; i++) {
+            times[i] -= first;
+        }
+        // packet 按解码顺序排列，关键帧一般已经有序，这里保险起见再排一次
+        Arrays.sort(times);
+        return new KeyframeIndex(times);
+    }
+
+    int size() {
+        return times.length;
+    }
+
+    // 不早于 time 的第一个关键帧，没有时返回 NaN
+    double atOrAfter(double time) {
+        int i = search(time);
+        return i < times.length ? times[i] : Double.NaN;
+    }
+
+    // 不晚于 time 的最后一个关键帧，没有时返回 NaN
+    double atOrBefore(double time) {
+        int i = search(time);
+        if (i < times.length && times[i] == time) {
+            return time;
+        }
+        return i > 0 ? times[i - 1] : Double.NaN;
+    }
+
+    // 第一个不小于 time 的下标
+    private int search(double time) {
+        int i = Arrays.binarySearch(times, time);
+        if (i >= 0) {
+            while (i > 0 && times[i - 1] == time) {
+                i--;
+            }
+            return i;
+        }
+        return -i - 1;
+    }
+}
@@ -0,0 +1,83 @@
+package com.ffmpegui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @description: 界面日志的有界环形缓冲
+ * 生产方（ffmpeg 输出读取线程、调度回调）写入，界面定时取走；缓冲满时覆盖最旧的行并计数，
+ * ffmpeg 输出再快，界面每次最多也只追加 capacity 行，内存占用固定。
+ * 每一行同时写入完整日志文件（{@link RotatingLogFile}），界面丢掉的行在文件里都有。
+ */
+final class LogBuffer {
+    /**
+     * 一次取走的内容
+     *
+     * @param lines   按写入顺序的日志行
+     * @param dropped 上次取走之后因缓冲满被覆盖的行数
+     */
+    record Drain(List<String> lines, long dropped) {
+    }
+
+    private final String[] ring;
+    private final RotatingLogFile spill;
+    // 最旧一行的位置和当前行数
+    private int head;
+    private int count;
+    private long dropped;
+
+    /**
+     * @param spill 完整日志文件，为 null 时只保留在内存中
+     */
+    LogBuffer(int capacity, RotatingLogFile spill) {
+        this.ring = new String[Math.max(1, capacity)];
+        this.spill = spill;
+    }
+
+    void add(String line) {
+        if (spill != null) {
+            spill.append(line);
+        }
+        synchronized (ring) {
+            if (count == ring.length) {
+                ring[head] = line;
+                head = (head + 1) % ring.length;
+                dropped++;
+            } else {
+                ring[(head + count) % ring.length] = line;
+                count++;
+            }
+        }
+    }
+
+    Drain drain() {
+        synchronized (ring) {
+            List<String> lines = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int index = (head + i) % ring.length;
+                lines.add(ring[index]);
+                ring[index] = null;
+            }
+            Drain result = new Drain(lines, dropped);
+            head = 0;
+            count = 0;
+            dropped = 0;
+            return result;
+        }
+    }
+
+    // 还没取走的行数
+    int size() {
+        synchronized (ring) {
+            return count;
+        }
+    }
+
+    int capacity() {
+        return ring.length;
+    }
+
+    RotatingLogFile spill() {
+        return spill;
+    }
+}
@@ -0,0 +1,115 @@
+package com.ffmpegui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @description: ffprobe 探测到的媒体信息：时长、封装格式和各路流
+ * 由 {@link ProbeService} 从 ffprobe 的 JSON 输出解析
+ */
+record MediaInfo(String duration, String formatName, List<Stream> streams) {
+
+    /**
+     * @param frameRate   帧率，ffprobe 原样的分数形式，如 30000/1001
+     * @param profile     编码档次，如 High、Main 10
+     * @param pixelFormat 像素格式，如 yuv420p
+     */
+    record Stream(int index, String codecType, String codecName, int width, int height, String frameRate,
+                  int sampleRate, int channels, String channelLayout, String profile, String pixelFormat) {
+
+        boolean isVideo() {
+            return "video".equals(codecType);
+        }
+
+        boolean isAudio() {
+            return "audio".equals(codecType);
+        }
+
+        // 帧率换算成小数，未知时返回 0
+        double frameRateValue() {
+            if (frameRate == null || frameRate.isEmpty()) {
+                return 0;
+            }
+            try {
+                int slash = frameRate.indexOf('/');
+                if (slash < 0) {
+                    return Double.parseDouble(frameRate);
+                }
+                double denominator = Double.parseDouble(frameRate.substring(slash + 1));
+                return denominator == 0 ? 0 : Double.parseDouble(frameRate.substring(0, slash)) / denominator;
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+
+    // 时长（秒），未知时抛出
+    double durationSeconds() throws Exception {
+        if (duration == null || duration.isBlank()) {
+            throw new Exception("无法获取视频时长");
+        }
+        return Double.parseDouble(duration);
+    }
+
+    // 第一路视频流，没有时返回 null
+    Stream video() {
+        for (Stream stream : streams) {
+            if (stream.isVideo()) {
+                return stream;
+            }
+        }
+        return null;
+    }
+
+    // 第一路音频流，没有时返回 null
+    Stream audio() {
+        for (Stream stream : streams) {
+            if (stream.isAudio()) {
+                return stream;
+            }
+        }
+        return null;
+    }
+
+    // 解析 ffprobe -print_format json -show_format -show_streams 的输出
+    @SuppressWarnings("unchecked")
+    static MediaInfo fromJson(String json) {
+        Map<String, Object> root = (Map<String, Object>) Json.parse(json);
+        Map<String, Object> format = (Map<String, Object>) root.getOrDefault("format", Map.of());
+        List<Stream> streams = new ArrayList<>();
+        for (Object item : (List<Object>) root.getOrDefault("streams", List.of())) {
+            Map<String, Object> stream = (Map<String, Object>) item;
+            String frameRate = text(stream, "avg_frame_rate");
+            if (frameRate == null || frameRate.equals("0/0")) {
+                frameRate = text(stream, "r_frame_rate");
+            }
+            streams.add(new Stream(number(stream, "index"), text(stream, "codec_type"), text(stream, "codec_name"),
+                    number(stream, "width"), number(stream, "height"), frameRate,
+                    number(stream, "sample_rate"), number(stream, "channels"), text(stream, "channel_layout"),
+                    text(stream, "profile"), text(stream, "pix_fmt")));
+        }
+        return new MediaInfo(text(format, "duration"), text(format, "format_name"), List.copyOf(streams));
+    }
+
+    private static String text(Map<String, Object> map, String key) {
+        Object value = map.get(key);
+        return value == null ? null : value.toString();
+    }
+
+    // ffprobe 的数字有的是 JSON 数字，有的是字符串（如 sample_rate）
+    private static int number(Map<String, Object> map, String key) {
+        Object value = map.get(key);
+        if (value instanceof Double d) {
+            return d.intValue();
+        }
+        if (value instanceof String s) {
+            try {
+                return Integer.parseInt(s);
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+}
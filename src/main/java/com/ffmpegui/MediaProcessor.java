@@ -0,0 +1,1078 @@
+package com.ffmpegui;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * @description: 单个文件的处理逻辑（转小、去小字、去未完待续、高级拼接）
+ * 不依赖界面，图形界面和分布式 worker 共用；外部进程通过调度器的进程槽位和 {@link ProcessController} 启动。
+ */
+final class MediaProcessor {
+    // 默认的 CPU 压缩参数
+    static final String DEFAULT_COMPRESS_PARAMS = "-c:v libx264 -b:v 8000k -crf 23 -c:a aac -b:a 192k -y";
+    // 输出时长与输入相差不超过 1 秒或 1%（取较大者）视为正常
+    private static final double VERIFY_TOLERANCE_SECONDS = 1.0;
+    private static final double VERIFY_TOLERANCE_RATIO = 0.01;
+    // 拼接的临时文件（音频、片头片尾等片段，以及合并开始前中间部分写入缓冲文件的数据）预计不超过两个输入大小之和
+    private static final int SPLICE_SCRATCH_FACTOR = 1;
+    // 局部处理结尾时，切点最多在结尾处理开始前一个 GOP（秒）
+    private static final double TRAILER_GOP_MARGIN_SECONDS = 10;
+    // 这些参数会截取时间段，输出时长不再与输入一致
+    private static final Set<String> DURATION_LIMIT_OPTIONS = Set.of("-t", "-to", "-ss", "-sseof",
+            "-frames:v", "-vframes", "-fs");
+
+    private final JobScheduler scheduler;
+    private final Consumer<String> log;
+    private final ChunkedEncoder chunkedEncoder;
+    private final SmartCutSplicer smartCutSplicer;
+    private final FilterGraphSplicer filterGraphSplicer;
+    private final TrailerPatcher trailerPatcher;
+    private final ProbeService probeService;
+    private final RegionDetector regionDetector;
+    private final ScratchManager scratchManager;
+    // 每条要执行的 ffmpeg 命令都会通知这里，用于写入任务日志
+    private volatile BiConsumer<JobScheduler.Job, List<String>> commandListener = (job, command) -> {
+    };
+
+    MediaProcessor(JobScheduler scheduler, Consumer<String> log) {
+        this(scheduler, ScratchManager.fromSystemProperties(scheduler.processes(), log), log);
+    }
+
+    MediaProcessor(JobScheduler scheduler, ScratchManager scratchManager, Consumer<String> log) {
+        this.scheduler = scheduler;
+        this.log = log;
+        this.scratchManager = scratchManager;
+        this.chunkedEncoder = new ChunkedEncoder(scheduler, this::executeCommand, scratchManager, this::log);
+        this.probeService = new ProbeService(scheduler.processes(), scheduler.metrics(),
+                ProbeService.defaultCacheFile(), scratchManager.root(), log);
+        scheduler.metrics().bindScratch(scratchManager::reservedBytes, scratchManager::usedBytes);
+        this.regionDetector = new RegionDetector(scheduler.processes(), probeService,
+                RegionDetector.defaultCacheFile(), log);
+        this.smartCutSplicer = new SmartCutSplicer(scheduler, this::executeCommand, probeService, this::log);
+        this.trailerPatcher = new TrailerPatcher(this::executeCommand, probeService, this::log);
+        this.filterGraphSplicer = new FilterGraphSplicer(this::executeCommand, probeService, this::log);
+
+        // 后台清理上次崩溃遗留的临时目录
+        Thread sweeper = new Thread(scratchManager::sweepOrphans, "scratch-sweeper");
+        sweeper.setDaemon(true);
+        sweeper.start();
+    }
+
+    void setCommandListener(BiConsumer<JobScheduler.Job, List<String>> commandListener) {
+        this.commandListener = commandListener;
+    }
+
+    // 按操作类型处理一个任务
+    void process(JobScheduler.Job job, JobSettings settings) throws Exception {
+        switch (settings.operation()) {
+            case COMPRESS, REMOVE_SUBTITLE, REMOVE_TRAILER, COMBINED -> processFile(job, settings);
+            case VIDEO_SPLICE_ADVANCED -> processVideoSpliceAdvancedFile(job, settings.ffmpegArgs(),
+                    settings.headDuration(), settings.tailDuration(),
+                    settings.doSpliceHead(), settings.doSpliceTail(), settings.spliceMode());
+        }
+    }
+
+    // 批处理流水线：探测和校验在本机进行，编码可以换成其他执行方式（如交给分布式 worker）
+    JobScheduler.Pipeline pipeline(JobSettings settings, JobScheduler.Task encode) {
+        return new JobScheduler.Pipeline(job -> prefetch(job, settings), encode, job -> verify(job, settings));
+    }
+
+    // 探测阶段：提前读取输入（拼接时还有无字幕文件）的媒体信息，编码时直接命中缓存；
+    // 探测失败不影响编码，由编码阶段报告真正的错误
+    void prefetch(JobScheduler.Job job, JobSettings settings) {
+        List<File> inputs = new ArrayList<>();
+        inputs.add(job.input());
+        if (settings.operation() == PageType.VIDEO_SPLICE_ADVANCED) {
+            inputs.add(new File(job.input().getParentFile(), getNoSubFileName(job.name())));
+        }
+        for (File input : inputs) {
+            if (!input.isFile()) {
+                continue;
+            }
+            try {
+                probeService.probe(input.getAbsolutePath());
+            } catch (Exception e) {
+                log(job, "预读媒体信息失败: " + input.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // 校验阶段：重新探测输出文件，读不出时长或与输入时长相差过大时删除输出并报错
+    void verify(JobScheduler.Job job, JobSettings settings) throws Exception {
+        File output = new File(job.outputPath());
+        if (!output.isFile() || output.length() == 0) {
+            throw new Exception("输出文件不存在或为空: " + output.getName());
+        }
+
+        double outputDuration;
+        try {
+            outputDuration = probeService.probe(output.getAbsolutePath()).durationSeconds();
+        } catch (Exception e) {
+            deleteOutput(output);
+            throw new Exception("输出文件校验失败，无法读取时长: " + output.getName());
+        }
+
+        // 用户参数里截取了时间段时输出本来就比输入短，只检查能否读取
+        if (limitsDuration(splitArgs(settings.ffmpegArgs()))) {
+            return;
+        }
+        double inputDuration;
+        try {
+            inputDuration = probeService.probe(job.input().getAbsolutePath()).durationSeconds();
+        } catch (Exception e) {
+            log(job, "无法读取输入时长，跳过时长校验");
+            return;
+        }
+        // 组合处理裁剪了片头片尾时，输出应比输入短相应的时长
+        double expectedDuration = Math.max(0, inputDuration - settings.trimSeconds());
+        double tolerance = Math.max(VERIFY_TOLERANCE_SECONDS, expectedDuration * VERIFY_TOLERANCE_RATIO);
+        if (Math.abs(outputDuration - expectedDuration) > tolerance) {
+            deleteOutput(output);
+            throw new Exception(String.format("输出文件校验失败：时长 %.2f 秒，应为 %.2f 秒",
+                    outputDuration, expectedDuration));
+        }
+        log(job, String.format("输出校验通过，时长 %.2f 秒", outputDuration));
+    }
+
+    private static boolean limitsDuration(List<String> args) {
+        for (String arg : args) {
+            if (DURATION_LIMIT_OPTIONS.contains(arg)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void deleteOutput(File output) {
+        if (output.isFile() && !output.delete()) {
+            output.deleteOnExit();
+        }
+    }
+
+    // 并发处理时给日志加上文件名前缀，便于区分各任务的输出
+    void log(JobScheduler.Job job, String message) {
+        log.accept(job == null ? message : "[" + job.name() + "] " + message);
+    }
+
+    // 转小、去小字、去未完待续以及它们的组合：裁剪、去水印和压缩参数合并成一条命令，只解码、编码一次
+    private void processFile(JobScheduler.Job job, JobSettings settings) throws Exception {
+        String ffmpegArgs = settings.ffmpegArgs();
+        String delogoParams = settings.delogoParams();
+        String lastDuration = settings.lastDuration();
+        File inputFile = job.input();
+        String inputPath = inputFile.getAbsolutePath();
+        String outputPath = job.outputPath();
+        double trimStart = JobSettings.seconds(settings.trimStart());
+        double trimEnd = JobSettings.seconds(settings.trimEnd());
+        boolean trimmed = trimStart > 0 || trimEnd > 0;
+
+        // 裁剪后保留的时长；-ss 放在输入端，滤镜看到的时间从 0 开始，结尾处理相对裁剪后的结尾
+        double keepDuration = 0;
+        if (trimmed) {
+            double duration = Double.parseDouble(getVideoDuration(inputPath));
+            keepDuration = duration - trimStart - trimEnd;
+            if (keepDuration <= 0) {
+                throw new Exception(String.format("裁剪的时长（%.2f 秒）不短于视频时长（%.2f 秒）",
+                        trimStart + trimEnd, duration));
+            }
+            log(job, String.format("裁剪：保留 %.2f - %.2f 秒", trimStart, trimStart + keepDuration));
+        }
+
+        // 如果指定了结尾处理时长，获取视频总时长
+        String endTime = null;
+        if (!lastDuration.isEmpty() && !delogoParams.isEmpty()) {
+            endTime = trimmed ? String.valueOf(keepDuration) : getVideoDuration(inputPath);
+            log(job, "视频总时长: " + endTime);
+        }
+
+        // 添加去水印参数（如果提供）
+        String delogoFilter = null;
+        if (!delogoParams.isEmpty()) {
+            try {
+                delogoFilter = buildDelogoFilter(job, delogoParams, lastDuration, endTime);
+            } catch (Exception e) {
+                log(job, "解析去水印参数时出错: " + e.getMessage());
+                throw e;
+            }
+        }
+
+        // 只涂抹未完待续时，前面的画面流复制，只重新编码结尾；有整集的小字区域时仍需整片重新编码
+        if (settings.partialTrailer() && endTime != null && !trimmed) {
+            if (delogoParams.contains("&")) {
+                log(job, "有整集生效的小字区域，不能只处理结尾，改为整片重新编码");
+            } else if (patchTrailer(job, DelogoParams.parse(delogoParams), Double.parseDouble(lastDuration),
+                    Double.parseDouble(endTime))) {
+                log(job, "成功处理文件: " + inputFile.getName());
+                return;
+            }
+        }
+
+        // 分段并行编码：只用于转小和去小字，去未完待续的 delogo 和裁剪依赖整片的时间轴
+        List<String> userArgs = splitArgs(ffmpegArgs);
+        if (settings.chunkCount() > 1 && lastDuration.isEmpty() && !trimmed && ChunkedEncoder.supports(inputFile)) {
+            double duration = Double.parseDouble(getVideoDuration(inputPath));
+            int chunks = ChunkedEncoder.effectiveChunks(duration, settings.chunkCount());
+            if (chunks > 1) {
+                chunkedEncoder.encode(job, duration, chunks, delogoFilter, userArgs);
+                log(job, "成功处理文件: " + inputFile.getName());
+                return;
+            }
+            log(job, "视频较短，不分段编码");
+        }
+
+        // 构建FFmpeg命令
+        List<String> command = new ArrayList<>();
+        command.add("ffmpeg");
+        if (trimStart > 0) {
+            command.add("-ss");
+            command.add(String.format(Locale.ROOT, "%.3f", trimStart));
+        }
+        command.add("-i");
+        command.add(inputPath);
+        if (trimmed) {
+            command.add("-t");
+            command.add(String.format(Locale.ROOT, "%.3f", keepDuration));
+        }
+
+        if (delogoFilter != null) {
+            command.add("-vf");
+            command.add(delogoFilter);
+        }
+
+        // 添加用户指定的参数
+        command.addAll(userArgs);
+
+        command.add(outputPath);
+
+        executeCommand(job, command, true);
+        log(job, "成功处理文件: " + inputFile.getName());
+    }
+
+    // 局部处理结尾；不适合时返回 false，由调用方整片重新编码
+    private boolean patchTrailer(JobScheduler.Job job, DelogoParams box, double lastDuration, double duration)
+            throws Exception {
+        File inputFile = job.input();
+        // 临时文件只有结尾重新编码的一段，按结尾时长加上一个 GOP 的余量估算
+        double ratio = duration > 0 ? Math.min(1, (lastDuration + TRAILER_GOP_MARGIN_SECONDS) / duration) : 1;
+        ScratchManager.Scratch scratch = scratchManager.open(job, (long) (inputFile.length() * ratio));
+        try {
+            List<List<String>> pipeline = trailerPatcher.patch(job, box, lastDuration, new File(job.outputPath()), scratch);
+            if (pipeline == null) {
+                return false;
+            }
+            executePipeline(job, pipeline);
+            return true;
+        } finally {
+            scratch.close();
+        }
+    }
+
+    // 根据去水印参数构建 delogo 滤镜；指定了结尾处理时长时，最后一个区域只在片尾生效
+    String buildDelogoFilter(JobScheduler.Job job, String delogoParams, String lastDuration,
+                             String endTime) {
+        // 根据是否指定了结尾处理时长来构建不同的delogo参数
+        String delogoFilter;
+        if (endTime != null && !lastDuration.isEmpty()) {
+            double duration = Double.parseDouble(endTime);
+            double lastDurationValue = Double.parseDouble(lastDuration);
+            double startTime = Math.max(0, duration - lastDurationValue);
+//                   这里是去未完待续
+            if (!delogoParams.contains("&")) {
+                // 单个区域
+                DelogoParams params = DelogoParams.parse(delogoParams);
+
+                log(job, String.format("应用水印去除：从 %.2f 秒到 %.2f 秒", startTime, duration));
+
+                delogoFilter = """
+                        "delogo=x=%d:y=%d:w=%d:h=%d:enable='between(t,%.2f,%.2f)'" """
+                        .formatted(params.x(), params.y(), params.width(), params.height(), startTime, duration);
+            } else {
+                // 多个区域
+                List<DelogoParams> paramsList = DelogoParams.parseList(delogoParams);
+                List<String> strList = new ArrayList<>(paramsList.size());
+                for (int i = 0; i < paramsList.size() - 1; i++) {
+                    DelogoParams params = paramsList.get(i);
+                    String delogo = """
+                            delogo=x=%d:y=%d:w=%d:h=%d""".formatted(params.x(), params.y(), params.width(), params.height());
+//                            sb.append(delogoFilter.trim());
+                    strList.add(delogo);
+                }
+                // 最后一个是未完待续框
+                DelogoParams lastParams = paramsList.getLast();
+
+                log(job, String.format("应用水印去除：从 %.2f 秒到 %.2f 秒", startTime, duration));
+                String delogoLast = """
+                        delogo=x=%d:y=%d:w=%d:h=%d:enable='between(t,%.2f,%.2f)'"""
+                        .formatted(lastParams.x(), lastParams.y(), lastParams.width(), lastParams.height(), startTime, duration);
+                strList.add(delogoLast);
+
+                // join
+                delogoFilter = """
+                        "%s" """.formatted(String.join(",", strList));
+            }
+
+        } else {
+            // 这里是去小字
+            if (!delogoParams.contains("&")) {
+                // 单个区域
+                DelogoParams params = DelogoParams.parse(delogoParams);
+                delogoFilter = """
+                        "delogo=x=%d:y=%d:w=%d:h=%d" """.formatted(params.x(), params.y(), params.width(), params.height());
+            } else {
+                // 多个区域
+                List<DelogoParams> paramsList = DelogoParams.parseList(delogoParams);
+                List<String> strList = new ArrayList<>(paramsList.size());
+                for (DelogoParams params : paramsList) {
+                    String delogo = """
+                            delogo=x=%d:y=%d:w=%d:h=%d""".formatted(params.x(), params.y(), params.width(), params.height());
+//                            sb.append(delogoFilter.trim());
+                    strList.add(delogo);
+                }
+                // join
+                delogoFilter = """
+                        "%s" """.formatted(String.join(",", strList));
+            }
+
+        }
+
+        return delogoFilter;
+    }
+
+    private void processVideoSpliceAdvancedFile(JobScheduler.Job job, String ffmpegArgs,
+            String headDuration, String tailDuration, 
+            boolean doSpliceHead, boolean doSpliceTail, SpliceMode spliceMode) throws Exception {
+        File originalFile = job.input();
+        String originalPath = originalFile.getAbsolutePath();
+        String fileName = originalFile.getName();
+        String noSubFileName = getNoSubFileName(fileName);
+        File noSubFile = new File(originalFile.getParentFile(), noSubFileName);
+        
+        if (!noSubFile.exists()) {
+            throw new Exception("找不到对应的无字幕文件: " + noSubFileName);
+        }
+        
+        String noSubPath = noSubFile.getAbsolutePath();
+        
+        // 获取视频时长
+        String endTimeStr = getVideoDuration(originalPath);
+        log(job, "视频总时长: " + endTimeStr + " 秒");
+        
+        double duration = Double.parseDouble(endTimeStr);
+        double headDurationValue = doSpliceHead ? Double.parseDouble(headDuration) : 0;
+        double tailDurationValue = doSpliceTail ? Double.parseDouble(tailDuration) : 0;
+        
+        // 确保时长不超过视频总时长
+        headDurationValue = Math.min(headDurationValue, duration / 2);
+        tailDurationValue = Math.min(tailDurationValue, duration / 2);
+        
+        // 确保头尾时长总和不超过视频总时长
+        if (headDurationValue + tailDurationValue > duration) {
+            double ratio = duration / (headDurationValue + tailDurationValue);
+            headDurationValue *= ratio;
+            tailDurationValue *= ratio;
+            log(job, String.format("警告：拼接时长总和超过视频时长，已按比例缩减为 %.2f + %.2f 秒", 
+                    headDurationValue, tailDurationValue));
+        }
+        
+        double tailStartTime = Math.max(0, duration - tailDurationValue);
+        
+        // 日志输出拼接策略
+        if (doSpliceHead && doSpliceTail) {
+            log(job, String.format("拼接策略：取原视频的前 %.2f 秒作为片头，取原视频的后 %.2f 秒作为片尾，中间部分使用无字幕视频", 
+                    headDurationValue, tailDurationValue));
+        } else if (doSpliceHead) {
+            log(job, String.format("拼接策略：取原视频的前 %.2f 秒作为片头，后续部分使用无字幕视频", headDurationValue));
+        } else {
+            log(job, String.format("拼接策略：取无字幕视频的前 %.2f 秒，再拼接原视频的后 %.2f 秒作为片尾", 
+                    tailStartTime, tailDurationValue));
+        }
+
+        if (spliceMode == SpliceMode.SINGLE_PASS) {
+            filterGraphSplicer.splice(job, originalPath, noSubPath, headDurationValue, tailStartTime,
+                    doSpliceHead, doSpliceTail, new File(job.outputPath()));
+            log(job, "成功处理文件: " + fileName);
+            return;
+        }
+        
+        // 临时文件放在本任务独立的临时目录中，任务结束后整个目录删除
+        ScratchManager.Scratch scratch = scratchManager.open(job,
+                (originalFile.length() + noSubFile.length()) * SPLICE_SCRATCH_FACTOR);
+        File outputFile = new File(job.outputPath());
+
+        // 已启动的阶段，出错时也要等它们结束后再清理临时文件
+        List<CompletableFuture<Void>> stages = new ArrayList<>();
+        // 分段编码时中间部分经这个管道送给合并命令
+        SpooledPipe middlePipe = null;
+        
+        try {
+            // 音频、片头、中间、片尾四个阶段互不依赖，同时开始；
+            // 合并依赖音频和片头片尾，中间部分在合并开始前写入缓冲文件，合并开始后边生成边读取
+
+            // 1. 提取原始视频的完整音频
+            log(job, "正在提取原始视频的完整音频...");
+            File audioFile = scratch.newFile("temp_audio_", ".aac");
+            
+            List<String> audioCommand = new ArrayList<>();
+            audioCommand.add("ffmpeg");
+            audioCommand.add("-i");
+            audioCommand.add(originalPath);
+            audioCommand.add("-vn");  // 不要视频
+            audioCommand.add("-acodec");
+            audioCommand.add("aac");
+            audioCommand.add("-b:a");
+            audioCommand.add("192k");
+            audioCommand.add("-y");
+            audioCommand.add(audioFile.getAbsolutePath());
+            
+            CompletableFuture<Void> audioStage = scheduler.runStage(() -> executeCommand(job, audioCommand));
+            stages.add(audioStage);
+            
+            // 2. 准备视频部分（不含音频）：各片段写成 MPEG-TS，由最后的合并命令用 concat 分离器按顺序读取；
+            //    最长的一段不写成完整的文件，经管道送给合并命令
+            File videoListFile = scratch.newFile("video_list_", ".txt");
+            List<String> streamCommand = null;
+            // 合并之前要完成的阶段：音频，以及片头片尾等写成文件的片段
+            List<CompletableFuture<Void>> mergeInputs = new ArrayList<>();
+            mergeInputs.add(audioStage);
+            CompletableFuture<Void> middleStage = null;
+            if (spliceMode == SpliceMode.SMART_CUT) {
+                // 智能剪切：关键帧之间流复制，只重新编码切点附近的 GOP；不适用时退回完整重新编码
+                List<SmartCutSplicer.Segment> segments = new ArrayList<>();
+                if (doSpliceHead) {
+                    segments.add(new SmartCutSplicer.Segment(originalPath, 0, headDurationValue));
+                }
+                segments.add(new SmartCutSplicer.Segment(noSubPath, doSpliceHead ? headDurationValue : 0,
+                        doSpliceTail ? tailStartTime : Double.POSITIVE_INFINITY));
+                if (doSpliceTail) {
+                    segments.add(new SmartCutSplicer.Segment(originalPath, tailStartTime, Double.POSITIVE_INFINITY));
+                }
+                streamCommand = smartCutSplicer.splice(job, segments, videoListFile, scratch);
+            }
+
+            if (streamCommand == null) {
+                log(job, "正在准备视频部分...");
+            
+                // 各部分视频的 concat 列表项，中间部分为 pipe:0
+                List<String> videoEntries = new ArrayList<>();
+            
+                if (doSpliceHead) {
+                    // 准备片头临时文件 - 原视频的前部分（仅视频）
+                    File headFile = scratch.newFile("temp_head_", ".ts");
+                
+                    List<String> headCommand = new ArrayList<>();
+                    headCommand.add("ffmpeg");
+                    headCommand.add("-i");
+                    headCommand.add(originalPath);
+                    headCommand.add("-an");  // 不要音频
+                    headCommand.add("-t");
+                    headCommand.add(String.format(Locale.ROOT, "%.2f", headDurationValue));
+                    headCommand.add("-c:v");
+                    headCommand.add("libx264");
+                    headCommand.add("-crf");
+                    headCommand.add("23");
+                    headCommand.add("-f");
+                    headCommand.add("mpegts");
+                    headCommand.add("-y");
+                    headCommand.add(headFile.getAbsolutePath());
+                
+                    mergeInputs.add(scheduler.runStage(() -> executeCommand(job, headCommand)));
+                    videoEntries.add(headFile.getAbsolutePath());
+                }
+            
+                // 中间部分 - 无字幕视频的中间部分（仅视频），写到标准输出；耗时最长，与其他阶段同时开始
+                List<String> middleCommand = new ArrayList<>();
+                middleCommand.add("ffmpeg");
+                middleCommand.add("-i");
+                middleCommand.add(noSubPath);
+                middleCommand.add("-an");  // 不要音频
+            
+                if (doSpliceHead) {
+                    // 跳过片头部分
+                    middleCommand.add("-ss");
+                    middleCommand.add(String.format(Locale.ROOT, "%.2f", headDurationValue));
+                }
+            
+                if (doSpliceTail) {
+                    // 限制时长，不包括片尾部分
+                    middleCommand.add("-t");
+                    double middleDuration = tailStartTime - (doSpliceHead ? headDurationValue : 0);
+                    middleCommand.add(String.format(Locale.ROOT, "%.2f", middleDuration));
+                }
+            
+                middleCommand.add("-c:v");
+                middleCommand.add("libx264");
+                middleCommand.add("-crf");
+                middleCommand.add("23");
+                middleCommand.add("-f");
+                middleCommand.add("mpegts");
+                middleCommand.add("pipe:1");
+                SpooledPipe pipe = new SpooledPipe(scratch.newFile("temp_middle_", ".ts").toPath());
+                middlePipe = pipe;
+                middleStage = scheduler.runStage(() -> executeCommand(job, middleCommand, false, null, pipe));
+                stages.add(middleStage);
+                videoEntries.add("pipe:0");
+            
+                if (doSpliceTail) {
+                    // 准备片尾临时文件 - 原视频的后部分（仅视频）
+                    File tailFile = scratch.newFile("temp_tail_", ".ts");
+                
+                    List<String> tailCommand = new ArrayList<>();
+                    tailCommand.add("ffmpeg");
+                    tailCommand.add("-i");
+                    tailCommand.add(originalPath);
+                    tailCommand.add("-an");  // 不要音频
+                    tailCommand.add("-ss");
+                    tailCommand.add(String.format(Locale.ROOT, "%.2f", tailStartTime));
+                    tailCommand.add("-c:v");
+                    tailCommand.add("libx264");
+                    tailCommand.add("-crf");
+                    tailCommand.add("23");
+                    tailCommand.add("-f");
+                    tailCommand.add("mpegts");
+                    tailCommand.add("-y");
+                    tailCommand.add(tailFile.getAbsolutePath());
+                
+                    mergeInputs.add(scheduler.runStage(() -> executeCommand(job, tailCommand)));
+                    videoEntries.add(tailFile.getAbsolutePath());
+                }
+                stages.addAll(mergeInputs.subList(1, mergeInputs.size()));
+            
+                // 创建视频片段列表文件
+                try (java.io.PrintWriter writer = new java.io.PrintWriter(videoListFile, "UTF-8")) {
+                    for (String entry : videoEntries) {
+                        writer.println("file '" + entry.replace("\\", "\\\\") + "'");
+                    }
+                }
+            }
+            
+            // 3. concat 按顺序读取，片头片尾要先写完；等待它们和音频完成后合并视频和音频
+            JobScheduler.awaitAll(mergeInputs);
+            log(job, "正在合并视频与音频...");
+
+            List<String> finalCommand = new ArrayList<>();
+            finalCommand.add("ffmpeg");
+            finalCommand.add("-f");
+            finalCommand.add("concat");
+            finalCommand.add("-safe");
+            finalCommand.add("0");
+            // 列表中的 pipe:0 需要允许 pipe 协议
+            finalCommand.add("-protocol_whitelist");
+            finalCommand.add("file,pipe");
+            finalCommand.add("-i");
+            finalCommand.add(videoListFile.getAbsolutePath());
+            finalCommand.add("-i");
+            finalCommand.add(audioFile.getAbsolutePath());
+            finalCommand.add("-c:v");
+            finalCommand.add("copy");
+            finalCommand.add("-c:a");
+            finalCommand.add("aac");
+            finalCommand.add("-strict");
+            finalCommand.add("experimental");
+            finalCommand.add("-map");
+            finalCommand.add("0:v:0");
+            finalCommand.add("-map");
+            finalCommand.add("1:a:0");
+            finalCommand.add("-shortest");
+            
+//            // 添加用户自定义参数，但排除可能冲突的
+//            String[] args = ffmpegArgs.split("\\s+");
+//            for (String arg : args) {
+//                if (!arg.trim().isEmpty() && !arg.contains("-y")
+//                    && !arg.contains("-c:v") && !arg.contains("-c:a")
+//                    && !arg.contains("-map") && !arg.contains("-shortest")) {
+//                    finalCommand.add(arg.trim());
+//                }
+//            }
+            
+            finalCommand.add("-y");
+            finalCommand.add(outputFile.getAbsolutePath());
+            
+            if (middlePipe == null) {
+                executePipeline(job, List.of(streamCommand, finalCommand));
+            } else {
+                // 合并申请的配额不能早于中间部分，配额紧张时两边会互相等待
+                try {
+                    CompletableFuture.anyOf(middlePipe.started(), middleStage).join();
+                } catch (CompletionException e) {
+                    JobScheduler.awaitAll(List.of(middleStage));
+                }
+                executeCommand(job, finalCommand, false, middlePipe, null);
+                // 中间部分出错时合并命令只是读到提前结束的数据，可能照常退出
+                JobScheduler.awaitAll(List.of(middleStage));
+            }
+            
+            log(job, "成功处理文件: " + fileName);
+            
+        } finally {
+            if (middlePipe != null) {
+                middlePipe.abort();
+            }
+            // 等待仍在运行的阶段结束，再删除临时目录
+            for (CompletableFuture<Void> stage : stages) {
+                try {
+                    stage.join();
+                } catch (Exception ignored) {
+                    // 失败原因已经由 awaitAll 抛出
+                }
+            }
+            scratch.close();
+        }
+    }
+
+    static String getNoSubFileName(String originalFileName) {
+        int dotIndex = originalFileName.lastIndexOf('.');
+        if (dotIndex > 0) {
+            String baseName = originalFileName.substring(0, dotIndex);
+            String extension = originalFileName.substring(dotIndex);
+            return baseName + "_no_sub" + extension;
+        } else {
+            return originalFileName + "_no_sub";
+        }
+    }
+
+    void executeCommand(JobScheduler.Job job, List<String> command) throws Exception {
+        executeCommand(job, command, false);
+    }
+
+    /**
+     * 执行一条命令。ffmpeg 命令加上 -progress pipe:1：标准输出解析成编码状态（帧率、速度、剩余时间），
+     * 标准错误过滤后写入日志。
+     *
+     * @param drivesProgress 这条命令就是整个任务（如转小），按它的进度更新任务内进度；
+     *                       任务由多条命令组成时由调用方自行更新
+     */
+    void executeCommand(JobScheduler.Job job, List<String> command, boolean drivesProgress) throws Exception {
+        executeCommand(job, command, drivesProgress, null, null);
+    }
+
+    /**
+     * @param input  非 null 时命令从 pipe:0 读数据，进程启动后把标准输入接到这个管道上，结束时等管道送完
+     * @param output 非 null 时命令写到 pipe:1，标准输出交给这个管道，进程退出即返回，不等下游读完
+     */
+    private void executeCommand(JobScheduler.Job job, List<String> command, boolean drivesProgress,
+                                SpooledPipe input, SpooledPipe output) throws Exception {
+        boolean progress = FfmpegProgress.supports(command);
+        if (input != null) {
+            command = withNoStdin(command);
+        }
+        command = FfmpegProgress.withProgress(command);
+
+        // 显示构建的命令
+        String cmdLine = String.join(" ", command);
+        log(job, "执行命令: " + cmdLine);
+        commandListener.accept(job, command);
+
+        // 执行命令
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectErrorStream(!progress && output == null);
+
+        // 设置环境变量，确保正确处理中文路径和输出
+        Map<String, String> env = pb.environment();
+        env.put("LC_ALL", "zh_CN.UTF-8");
+        env.put("PYTHONIOENCODING", "utf-8");
+
+        // 编码命令占用一个进程槽位，只复制流的命令不占；两者都按估算的资源需求申请配额
+        ResourceGovernor.CostClass costClass = ResourceGovernor.classify(command);
+        boolean encode = costClass == ResourceGovernor.CostClass.ENCODE;
+        int[] resolution = encode ? getVideoResolution(inputOf(command)) : new int[2];
+        ResourceGovernor.Demand demand = scheduler.governor().demand(costClass, resolution[0], resolution[1]);
+
+        if (encode) {
+            scheduler.acquireProcessSlot();
+        }
+        ResourceGovernor.Lease lease = null;
+        Process process = null;
+        try {
+            lease = acquireResources(job, demand);
+            process = scheduler.processes().start(pb);
+            if (input != null) {
+                input.connect(process.getOutputStream());
+            }
+            if (output != null) {
+                output.start(process);
+            }
+
+            // 读取和显示输出
+            String lastLine;
+            if (progress) {
+                LogReader stderr = LogReader.start(this, job, process.getErrorStream());
+                readProgress(job, process.getInputStream(), expectedSeconds(command), drivesProgress, encode);
+                lastLine = stderr.await();
+            } else {
+                lastLine = logOutput(job, output != null ? process.getErrorStream() : process.getInputStream());
+            }
+
+            // 等待进程结束
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new Exception(failureMessage(exitCode, lastLine));
+            }
+            if (input != null) {
+                input.await();
+            }
+        } finally {
+            job.setEncodeStatus(null);
+            scheduler.processes().release(process);
+            if (lease != null) {
+                lease.close();
+            }
+            if (encode) {
+                scheduler.releaseProcessSlot();
+            }
+        }
+    }
+
+    /**
+     * 执行用管道首尾相连的一组命令：前一条写到 pipe:1 的数据由后一条从 pipe:0 直接读取，不写中间文件，
+     * 各条命令同时运行。整组一次申请资源配额（其中有编码命令时按编码申请并占用一个进程槽位），
+     * 避免上游已经启动、下游还在等配额而互相卡住。第一条之后的命令都从标准输入读数据，一律加上 -nostdin。
+     */
+    void executePipeline(JobScheduler.Job job, List<List<String>> commands) throws Exception {
+        // 最后一条命令的标准输出没有用来传数据，加上 -progress 读取编码状态
+        commands = new ArrayList<>(commands);
+        for (int i = 1; i < commands.size(); i++) {
+            commands.set(i, withNoStdin(commands.get(i)));
+        }
+        List<String> last = commands.getLast();
+        boolean progress = FfmpegProgress.supports(last);
+        commands.set(commands.size() - 1, FfmpegProgress.withProgress(last));
+
+        List<String> cmdLines = new ArrayList<>();
+        for (List<String> command : commands) {
+            cmdLines.add(String.join(" ", command));
+            commandListener.accept(job, command);
+        }
+        log(job, "执行命令: " + String.join(" | ", cmdLines));
+
+        List<String> encodeCommand = null;
+        for (List<String> command : commands) {
+            if (ResourceGovernor.classify(command) == ResourceGovernor.CostClass.ENCODE) {
+                encodeCommand = command;
+                break;
+            }
+        }
+        boolean encode = encodeCommand != null;
+        int[] resolution = encode ? getVideoResolution(inputOf(encodeCommand)) : new int[2];
+        ResourceGovernor.Demand demand = scheduler.governor().demand(
+                encode ? ResourceGovernor.CostClass.ENCODE : ResourceGovernor.CostClass.IO, resolution[0], resolution[1]);
+
+        List<ProcessBuilder> builders = new ArrayList<>();
+        for (int i = 0; i < commands.size(); i++) {
+            ProcessBuilder pb = new ProcessBuilder(commands.get(i));
+            // 前面的命令标准输出用来传数据，最后一条的标准输出是进度，日志都单独从标准错误读取
+            pb.redirectErrorStream(i == commands.size() - 1 && !progress);
+            Map<String, String> env = pb.environment();
+            env.put("LC_ALL", "zh_CN.UTF-8");
+            env.put("PYTHONIOENCODING", "utf-8");
+            builders.add(pb);
+        }
+
+        if (encode) {
+            scheduler.acquireProcessSlot();
+        }
+        ResourceGovernor.Lease lease = null;
+        List<Process> started = List.of();
+        List<LogReader> readers = new ArrayList<>();
+        try {
+            lease = acquireResources(job, demand);
+            started = scheduler.processes().startPipeline(builders);
+            for (Process upstream : started.subList(0, started.size() - 1)) {
+                readers.add(LogReader.start(this, job, upstream.getErrorStream()));
+            }
+            String lastLine;
+            if (progress) {
+                LogReader stderr = LogReader.start(this, job, started.getLast().getErrorStream());
+                readProgress(job, started.getLast().getInputStream(), expectedSeconds(commands.getLast()), false,
+                        ResourceGovernor.classify(commands.getLast()) == ResourceGovernor.CostClass.ENCODE);
+                lastLine = stderr.await();
+            } else {
+                lastLine = logOutput(job, started.getLast().getInputStream());
+            }
+
+            // 每一条都要检查：上游出错时下游只是读到提前结束的数据，可能照常退出
+            int exitCode = 0;
+            for (Process process : started) {
+                int code = process.waitFor();
+                if (exitCode == 0) {
+                    exitCode = code;
+                }
+            }
+            for (LogReader reader : readers) {
+                String line = reader.await();
+                if (lastLine == null) {
+                    lastLine = line;
+                }
+            }
+            if (exitCode != 0) {
+                throw new Exception(failureMessage(exitCode, lastLine));
+            }
+        } finally {
+            job.setEncodeStatus(null);
+            // 出错或取消时结束整条管道，否则上游可能一直阻塞在写管道上
+            for (Process process : started) {
+                if (process.isAlive()) {
+                    process.destroyForcibly();
+                }
+                scheduler.processes().release(process);
+            }
+            if (lease != null) {
+                lease.close();
+            }
+            if (encode) {
+                scheduler.releaseProcessSlot();
+            }
+        }
+    }
+
+    /**
+     * 从标准输入读数据的 ffmpeg 命令加上 -nostdin。输入是 concat 列表时 ffmpeg 不知道列表里的 pipe:0 也在读标准输入，
+     * 仍会开启按键交互，定时从标准输入取走一个字节当作按键：数据流被破坏，取到 q 时还会提前正常退出，输出被截短。
+     */
+    static List<String> withNoStdin(List<String> command) {
+        if (command.isEmpty() || !command.getFirst().equals("ffmpeg") || command.contains("-nostdin")) {
+            return command;
+        }
+        List<String> result = new ArrayList<>(command.size() + 1);
+        result.add(command.getFirst());
+        result.add("-nostdin");
+        result.addAll(command.subList(1, command.size()));
+        return result;
+    }
+
+    // 过滤后写入日志，返回最后一行写入的内容（用于错误信息），没有时为 null
+    private String logOutput(JobScheduler.Job job, InputStream output) throws IOException {
+        String last = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(output, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (FfmpegProgress.isLogged(line)) {
+                    log(job, line);
+                    last = line;
+                }
+            }
+        }
+        return last;
+    }
+
+    // 在后台线程读取一个进程的标准错误，与读取标准输出的线程互不阻塞
+    private static final class LogReader {
+        private final Thread thread;
+        private volatile String lastLine;
+
+        private LogReader(MediaProcessor owner, JobScheduler.Job job, InputStream stderr) {
+            thread = new Thread(() -> {
+                try {
+                    lastLine = owner.logOutput(job, stderr);
+                } catch (IOException e) {
+                    // 进程被结束时管道关闭
+                }
+            }, "ffmpeg-log");
+            thread.setDaemon(true);
+        }
+
+        static LogReader start(MediaProcessor owner, JobScheduler.Job job, InputStream stderr) {
+            LogReader reader = new LogReader(owner, job, stderr);
+            reader.thread.start();
+            return reader;
+        }
+
+        String await() throws InterruptedException {
+            thread.join();
+            return lastLine;
+        }
+    }
+
+    // 解析 -progress 输出，更新任务的编码状态；drivesProgress 时同时更新任务内进度，
+    // encode 时把新输出的媒体时长计入编码吞吐（只复制流的命令不计）
+    private void readProgress(JobScheduler.Job job, InputStream output, double totalSeconds, boolean drivesProgress,
+                              boolean encode) throws IOException {
+        FfmpegProgress parser = new FfmpegProgress();
+        double counted = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(output, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                FfmpegProgress.Sample sample = parser.accept(line);
+                if (sample == null) {
+                    continue;
+                }
+                double fraction = sample.fraction(totalSeconds);
+                if (drivesProgress && !Double.isNaN(fraction)) {
+                    job.setProgress(fraction);
+                }
+                if (encode && sample.outTimeSeconds() > counted) {
+                    scheduler.metrics().addEncodedSeconds(sample.outTimeSeconds() - counted);
+                    counted = sample.outTimeSeconds();
+                }
+                job.setEncodeStatus(new JobScheduler.EncodeStatus(sample.fps(), sample.speed(),
+                        sample.etaSeconds(totalSeconds)));
+            }
+        }
+    }
+
+    // 命令预计输出的时长，用于换算进度；第一个输入不是媒体文件（如 concat 列表）或探测失败时为 NaN
+    private double expectedSeconds(List<String> command) {
+        String input = inputOf(command);
+        double inputDuration = Double.NaN;
+        if (input != null && isMediaFile(input)) {
+            try {
+                inputDuration = probeService.probe(input).durationSeconds();
+            } catch (Exception e) {
+                // 只影响进度显示
+            }
+        }
+        return FfmpegProgress.expectedSeconds(command, inputDuration);
+    }
+
+    private static String failureMessage(int exitCode, String lastLine) {
+        return lastLine == null ? "FFmpeg进程返回错误代码: " + exitCode
+                : "FFmpeg进程返回错误代码: " + exitCode + "（" + lastLine.trim() + "）";
+    }
+
+    // 申请资源配额；需要等待时输出原因，等待较久时输出等待时间，便于判断瓶颈
+    private ResourceGovernor.Lease acquireResources(JobScheduler.Job job, ResourceGovernor.Demand demand)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        ResourceGovernor.Lease lease = scheduler.governor().acquire(demand,
+                reason -> log(job, "暂缓启动 %s: %s".formatted(demand, reason)));
+        double waited = (System.nanoTime() - start) / 1e9;
+        if (waited >= 1) {
+            log(job, "等待资源 %.1f 秒: %s，当前占用 %s".formatted(waited, demand, scheduler.governor().describe()));
+        }
+        return lease;
+    }
+
+    // 命令中第一个输入文件
+    private static String inputOf(List<String> command) {
+        int index = command.indexOf("-i");
+        return index >= 0 && index + 1 < command.size() ? command.get(index + 1) : null;
+    }
+
+    // 视频宽高，用于估算编码的资源需求；探测失败时返回 {0, 0}
+    int[] getVideoResolution(String inputPath) {
+        if (inputPath == null) {
+            return new int[2];
+        }
+        try {
+            MediaInfo.Stream video = probeService.probe(inputPath).video();
+            if (video != null) {
+                return new int[]{video.width(), video.height()};
+            }
+        } catch (Exception e) {
+            // 探测不到按默认分辨率估算
+        }
+        return new int[2];
+    }
+
+    // 视频关键帧时间表，结果按文件大小和修改时间缓存
+    KeyframeIndex keyframes(String inputPath) throws Exception {
+        return probeService.keyframes(inputPath);
+    }
+
+    // 自动检测整集固定不动的小字、台标区域，返回 delogo 参数（没有检测到时为空），结果按文件缓存
+    String detectRegions(File input) throws Exception {
+        return regionDetector.detect(input);
+    }
+
+    // 去未完待续的 delogo 参数：整集的小字区域在前，最后 seconds 秒新出现的区域（未完待续）放在最后；
+    // 没有检测到未完待续时为空
+    String detectTrailerRegion(File input, double seconds) throws Exception {
+        String tail = regionDetector.detectTail(input, seconds);
+        if (tail.isEmpty()) {
+            return "";
+        }
+        String episode = regionDetector.detect(input);
+        return episode.isEmpty() ? tail : episode + "&" + tail;
+    }
+
+    // 探测媒体信息，结果按文件大小和修改时间缓存
+    MediaInfo probe(String inputPath) throws Exception {
+        return probeService.probe(inputPath);
+    }
+
+    String getVideoDuration(String inputPath) throws Exception {
+        String duration = probeService.probe(inputPath).duration();
+        if (duration == null || duration.trim().isEmpty()) {
+            throw new Exception("无法获取视频时长");
+        }
+
+        log.accept("视频时长: " + duration + " 秒");
+        return duration.trim();
+    }
+
+    static boolean isValidDelogoParams(String params) {
+        // 检查格式是否为四个数字，用逗号分隔
+        String regex = "\\d+,\\d+,\\d+,\\d+";
+        return Pattern.matches(regex, params);
+    }
+
+    /**
+     * @author Ocean
+     * @date: 2025/4/18 15:54
+     * @description: 验证多个的参数
+     * 369,576,280,150&369,576,280,150
+     */
+    static boolean isValidMultipleDelogoParams(String params) {
+        // Split the input string by '&' to handle multiple sets of parameters
+        String[] paramSets = params.split("&");
+        for (String paramSet : paramSets) {
+            if (!isValidDelogoParams(paramSet)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 拆分用户输入的压缩参数
+    static List<String> splitArgs(String ffmpegArgs) {
+        List<String> args = new ArrayList<>();
+        for (String arg : ffmpegArgs.split("\\s+")) {
+            if (!arg.trim().isEmpty()) {
+                args.add(arg.trim());
+            }
+        }
+        return args;
+    }
+
+    static String generateOutputPath(String inputPath, String suffix) {
+        int dotIndex = inputPath.lastIndexOf('.');
+        if (dotIndex > 0) {
+            String basePath = inputPath.substring(0, dotIndex);
+            String extension = inputPath.substring(dotIndex);
+            int gangIndex = inputPath.lastIndexOf(File.separator);
+            if (gangIndex > 0) {
+                String baseFolderPath = basePath.substring(0, gangIndex);
+                // 这个里面带一个 /
+                String baseName = basePath.substring(gangIndex + 1);
+
+                return baseFolderPath + File.separator + "OK" + File.separator + baseName + "_" + suffix + ".mp4";
+            } else{
+                return basePath + "_" + suffix + extension;
+            }
+        } else {
+            return inputPath + "_" + suffix;
+        }
+    }
+
+    static boolean isMediaFile(String fileName) {
+        String lowerName = fileName.toLowerCase();
+        return lowerName.endsWith(".mp4") || lowerName.endsWith(".avi") ||
+                lowerName.endsWith(".mkv") || lowerName.endsWith(".mov") ||
+                lowerName.endsWith(".wmv") || lowerName.endsWith(".flv") ||
+                lowerName.endsWith(".mp3") || lowerName.endsWith(".wav") ||
+                lowerName.endsWith(".webm") || lowerName.endsWith(".m4a") || lowerName.endsWith(".mxf");
+    }
+}
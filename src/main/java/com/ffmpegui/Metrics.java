@@ -0,0 +1,250 @@
+package com.ffmpegui;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * @description: 运行指标：任务数、编码吞吐、ffprobe 调用、临时空间和日志队列
+ * 由调度器持有，调度、编码和探测环节直接更新计数（LongAdder，不加锁）；
+ * 通过 JMX（com.ffmpegui:type=Metrics）和可选的 HTTP 接口（{@link MetricsServer}，Prometheus 文本格式）查看。
+ */
+final class Metrics implements MetricsMXBean {
+    static final String OBJECT_NAME = "com.ffmpegui:type=Metrics";
+    // 吞吐按秒分桶，统计最近这么多秒的平均值
+    private static final int RATE_WINDOW_SECONDS = 60;
+
+    private final AtomicInteger jobsQueued = new AtomicInteger();
+    private final AtomicInteger jobsRunning = new AtomicInteger();
+    private final LongAdder jobsDone = new LongAdder();
+    private final LongAdder jobsFailed = new LongAdder();
+    private final LongAdder jobsCancelled = new LongAdder();
+    private final Set<JobScheduler.Job> runningJobs = ConcurrentHashMap.newKeySet();
+    private final DoubleAdder encodedSeconds = new DoubleAdder();
+    private final LongAdder probeCalls = new LongAdder();
+    private final LongAdder probeNanos = new LongAdder();
+    // 每秒一个桶：桶对应的秒数和这一秒内输出的媒体时长
+    private final long[] rateStamps = new long[RATE_WINDOW_SECONDS];
+    private final double[] rateBuckets = new double[RATE_WINDOW_SECONDS];
+    private volatile LongSupplier scratchReserved = () -> 0;
+    private volatile LongSupplier scratchUsed = () -> 0;
+    private volatile IntSupplier logQueueDepth = () -> 0;
+
+    // 注册到平台 MBeanServer；同一进程里已经注册过时沿用先注册的那个
+    void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // 一个进程通常只有一个调度器
+        } catch (JMException e) {
+            System.err.println("注册 JMX 指标失败: " + e.getMessage());
+        }
+    }
+
+    // 临时目录的预留和实际占用，由创建 ScratchManager 的一方绑定
+    void bindScratch(LongSupplier reserved, LongSupplier used) {
+        scratchReserved = reserved;
+        scratchUsed = used;
+    }
+
+    // 界面日志队列的长度，只有图形界面绑定
+    void bindLogQueue(IntSupplier depth) {
+        logQueueDepth = depth;
+    }
+
+    // 任务生命周期：加入批次 → 开始编码 → 编码结束 → 完成（校验之后）
+    void jobQueued() {
+        jobsQueued.incrementAndGet();
+    }
+
+    void jobStarted(JobScheduler.Job job) {
+        jobsQueued.decrementAndGet();
+        jobsRunning.incrementAndGet();
+        runningJobs.add(job);
+    }
+
+    void jobEncoded(JobScheduler.Job job) {
+        if (runningJobs.remove(job)) {
+            jobsRunning.decrementAndGet();
+        }
+    }
+
+    // started 为 false 表示任务在排队时就被取消了
+    void jobFinished(JobScheduler.Job job, boolean started) {
+        if (!started) {
+            jobsQueued.decrementAndGet();
+        }
+        switch (job.state()) {
+            case DONE -> jobsDone.increment();
+            case FAILED -> jobsFailed.increment();
+            case CANCELLED -> jobsCancelled.increment();
+            default -> {
+            }
+        }
+    }
+
+    // 编码命令新输出的媒体时长（秒）
+    void addEncodedSeconds(double seconds) {
+        if (!(seconds > 0)) {
+            return;
+        }
+        encodedSeconds.add(seconds);
+        long now = System.currentTimeMillis() / 1000;
+        int index = (int) (now % RATE_WINDOW_SECONDS);
+        synchronized (rateBuckets) {
+            if (rateStamps[index] != now) {
+                rateStamps[index] = now;
+                rateBuckets[index] = 0;
+            }
+            rateBuckets[index] += seconds;
+        }
+    }
+
+    void recordProbe(long nanos) {
+        probeCalls.increment();
+        probeNanos.add(nanos);
+    }
+
+    @Override
+    public int getJobsQueued() {
+        return Math.max(0, jobsQueued.get());
+    }
+
+    @Override
+    public int getJobsRunning() {
+        return jobsRunning.get();
+    }
+
+    @Override
+    public long getJobsDone() {
+        return jobsDone.sum();
+    }
+
+    @Override
+    public long getJobsFailed() {
+        return jobsFailed.sum();
+    }
+
+    @Override
+    public long getJobsCancelled() {
+        return jobsCancelled.sum();
+    }
+
+    @Override
+    public double getEncodedMediaSeconds() {
+        return encodedSeconds.sum();
+    }
+
+    @Override
+    public double getEncodedMediaSecondsPerSecond() {
+        long now = System.currentTimeMillis() / 1000;
+        double sum = 0;
+        synchronized (rateBuckets) {
+            for (int i = 0; i < RATE_WINDOW_SECONDS; i++) {
+                if (now - rateStamps[i] < RATE_WINDOW_SECONDS) {
+                    sum += rateBuckets[i];
+                }
+            }
+        }
+        return sum / RATE_WINDOW_SECONDS;
+    }
+
+    @Override
+    public Map<String, Double> getJobRealtimeFactors() {
+        Map<String, Double> factors = new TreeMap<>();
+        for (JobScheduler.Job job : runningJobs) {
+            JobScheduler.EncodeStatus status = job.encodeStatus();
+            if (status != null && !Double.isNaN(status.speed())) {
+                factors.put(job.name(), status.speed());
+            }
+        }
+        return factors;
+    }
+
+    @Override
+    public long getProbeCalls() {
+        return probeCalls.sum();
+    }
+
+    @Override
+    public double getProbeSeconds() {
+        return probeNanos.sum() / 1e9;
+    }
+
+    @Override
+    public long getScratchReservedBytes() {
+        return scratchReserved.getAsLong();
+    }
+
+    @Override
+    public long getScratchUsedBytes() {
+        return scratchUsed.getAsLong();
+    }
+
+    @Override
+    public int getLogQueueDepth() {
+        return logQueueDepth.getAsInt();
+    }
+
+    // Prometheus 文本格式（0.0.4）
+    String scrape() {
+        StringBuilder sb = new StringBuilder(2048);
+        gauge(sb, "ffmpegui_jobs_queued", "排队中的任务数", getJobsQueued());
+        gauge(sb, "ffmpegui_jobs_running", "正在编码的任务数", getJobsRunning());
+        counter(sb, "ffmpegui_jobs_done_total", "成功完成的任务数", getJobsDone());
+        counter(sb, "ffmpegui_jobs_failed_total", "失败的任务数", getJobsFailed());
+        counter(sb, "ffmpegui_jobs_cancelled_total", "取消的任务数", getJobsCancelled());
+        counter(sb, "ffmpegui_encoded_media_seconds_total", "编码命令累计输出的媒体时长（秒）", getEncodedMediaSeconds());
+        gauge(sb, "ffmpegui_encoded_media_seconds_per_second", "最近一分钟平均每秒输出的媒体时长",
+                getEncodedMediaSecondsPerSecond());
+        header(sb, "ffmpegui_job_realtime_factor", "正在编码的任务的实时倍数", "gauge");
+        getJobRealtimeFactors().forEach((job, factor) ->
+                sb.append("ffmpegui_job_realtime_factor{job=\"").append(escapeLabel(job)).append("\"} ")
+                        .append(format(factor)).append('\n'));
+        counter(sb, "ffmpegui_probe_calls_total", "ffprobe 调用次数", getProbeCalls());
+        counter(sb, "ffmpegui_probe_seconds_total", "ffprobe 调用的累计耗时（秒）", getProbeSeconds());
+        gauge(sb, "ffmpegui_scratch_reserved_bytes", "临时目录按估算预留的字节数", getScratchReservedBytes());
+        gauge(sb, "ffmpegui_scratch_used_bytes", "临时目录实际占用的字节数", getScratchUsedBytes());
+        gauge(sb, "ffmpegui_log_queue_depth", "界面日志队列中还没显示的消息数", getLogQueueDepth());
+        return sb.toString();
+    }
+
+    private static void gauge(StringBuilder sb, String name, String help, double value) {
+        header(sb, name, help, "gauge");
+        sb.append(name).append(' ').append(format(value)).append('\n');
+    }
+
+    private static void counter(StringBuilder sb, String name, String help, double value) {
+        header(sb, name, help, "counter");
+        sb.append(name).append(' ').append(format(value)).append('\n');
+    }
+
+    private static void header(StringBuilder sb, String name, String help, String type) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    // 整数值不带小数部分
+    private static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
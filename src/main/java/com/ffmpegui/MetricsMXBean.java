@@ -0,0 +1,44 @@
+package com.ffmpegui;
+
+import java.util.Map;
+
+/**
+ * @description: 运行指标的 JMX 接口，注册为 com.ffmpegui:type=Metrics，可用 jconsole/VisualVM 查看
+ * （JMX 要求接口是 public 的）
+ */
+public interface MetricsMXBean {
+    // 排队中（还没开始编码）的任务数
+    int getJobsQueued();
+
+    // 正在编码的任务数
+    int getJobsRunning();
+
+    long getJobsDone();
+
+    long getJobsFailed();
+
+    long getJobsCancelled();
+
+    // 编码命令累计输出的媒体时长（秒）
+    double getEncodedMediaSeconds();
+
+    // 最近一分钟平均每秒输出的媒体时长（秒），即整机的实时倍数
+    double getEncodedMediaSecondsPerSecond();
+
+    // 正在编码的任务的实时倍数（ffmpeg 报告的 speed），键为文件名
+    Map<String, Double> getJobRealtimeFactors();
+
+    long getProbeCalls();
+
+    // ffprobe 调用的累计耗时（秒）
+    double getProbeSeconds();
+
+    // 临时目录按估算预留的字节数
+    long getScratchReservedBytes();
+
+    // 临时目录实际占用的字节数
+    long getScratchUsedBytes();
+
+    // 界面日志队列中还没显示的消息数
+    int getLogQueueDepth();
+}
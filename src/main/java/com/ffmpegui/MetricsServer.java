@@ -0,0 +1,93 @@
+package com.ffmpegui;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * @description: 本机 HTTP 指标接口，GET /metrics 返回 Prometheus 文本格式
+ * 只监听 127.0.0.1，需要远程采集时用反向代理或 SSH 转发；使用 JDK 自带的 HttpServer，不引入依赖。
+ * 命令行用 --metrics-port 开启，图形界面和分布式 worker 用系统属性 ffmpegui.metrics.port 开启。
+ */
+final class MetricsServer implements AutoCloseable {
+    static final String PORT_PROPERTY = "ffmpegui.metrics.port";
+    static final String PATH = "/metrics";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private MetricsServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    static MetricsServer start(Metrics metrics, int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext(PATH, exchange -> respond(exchange, metrics));
+        // 采集请求很少，一个线程足够
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+        return new MetricsServer(server, executor);
+    }
+
+    // 按系统属性开启，未设置或端口无效时返回 null
+    static MetricsServer fromSystemProperties(Metrics metrics, Consumer<String> log) {
+        String value = System.getProperty(PORT_PROPERTY);
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            int port = Integer.parseInt(value.trim());
+            MetricsServer server = start(metrics, port);
+            log.accept("指标接口: http://127.0.0.1:%d%s".formatted(server.port(), PATH));
+            return server;
+        } catch (NumberFormatException e) {
+            log.accept("忽略无效的指标端口: " + value);
+        } catch (IOException e) {
+            log.accept("指标接口启动失败: " + e.getMessage());
+        }
+        return null;
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    private static void respond(HttpExchange exchange, Metrics metrics) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET") && !exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = metrics.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,29 @@
+package com.ffmpegui;
+
+// 页面类型
+enum PageType {
+    COMPRESS("转小", "c"),
+    REMOVE_SUBTITLE("去小字", "s"),
+    REMOVE_TRAILER("去未完待续", "w"),
+    // 多个操作合并成一次编码，后缀由选中的操作组成（见 JobSettings#outputSuffix）
+    COMBINED("组合处理", null),
+    // 拼接的输出文件名按拼接模式加前缀，没有后缀
+    VIDEO_SPLICE_ADVANCED("高级拼接", null);
+
+    private final String title;
+    private final String outputSuffix;
+
+    PageType(String title, String outputSuffix) {
+        this.title = title;
+        this.outputSuffix = outputSuffix;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    // 输出文件名后缀，如 a.mp4 → OK/a_c.mp4
+    public String getOutputSuffix() {
+        return outputSuffix;
+    }
+}
@@ -0,0 +1,201 @@
+package com.ffmpegui;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * @description: 媒体探测服务，每个文件只运行一次 ffprobe（JSON 输出）并缓存结果
+ * 缓存按 路径 + 文件大小 + 修改时间 判断是否有效，同时写入磁盘（默认 ~/.ffmpeg-batch-processor/probe-cache.tsv），
+ * 重复处理同一批文件时不再启动 ffprobe。临时目录中的文件（中间文件）只缓存在内存中。
+ * 关键帧时间表（智能剪切用）同样按文件缓存，只保存在内存中。
+ */
+final class ProbeService {
+    // 磁盘缓存中失效的记录超过有效记录数时，加载后整理一次
+    private static final int COMPACT_SLACK = 100;
+
+    // 一条缓存：探测时文件的大小和修改时间，以及 ffprobe 的原始 JSON（单行）
+    private record Entry(long size, long modified, String json, MediaInfo info) {
+    }
+
+    private record KeyframeEntry(long size, long modified, KeyframeIndex index) {
+    }
+
+    private final ProcessController processes;
+    private final Metrics metrics;
+    private final File cacheFile;
+    private final Consumer<String> log;
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+    private final Map<String, KeyframeEntry> keyframeCache = new ConcurrentHashMap<>();
+    private final String tempDir = new File(System.getProperty("java.io.tmpdir")).getAbsolutePath();
+    private final String scratchDir;
+    private volatile boolean loaded;
+
+    /**
+     * @param cacheFile  磁盘缓存文件，为 null 时只缓存在内存中
+     * @param scratchDir 中间文件的临时根目录，其中的文件只缓存在内存中
+     */
+    ProbeService(ProcessController processes, Metrics metrics, File cacheFile, Path scratchDir, Consumer<String> log) {
+        this.processes = processes;
+        this.metrics = metrics;
+        this.cacheFile = cacheFile;
+        this.scratchDir = scratchDir.toAbsolutePath().toString();
+        this.log = log;
+    }
+
+    static File defaultCacheFile() {
+        return new File(System.getProperty("user.home"), ".ffmpeg-batch-processor" + File.separator + "probe-cache.tsv");
+    }
+
+    MediaInfo probe(String path) throws Exception {
+        ensureLoaded();
+        File file = new File(path).getAbsoluteFile();
+        String key = file.getPath();
+        // 先取大小和修改时间再探测，探测期间文件被改写时下次会重新探测
+        long size = file.length();
+        long modified = file.lastModified();
+
+        Entry entry = cache.get(key);
+        if (entry != null && entry.size() == size && entry.modified() == modified) {
+            return entry.info();
+        }
+
+        String json = runFfprobe(List.of("ffprobe", "-v", "quiet", "-print_format", "json",
+                "-show_format", "-show_streams", key)).replace('\r', ' ').replace('\n', ' ');
+        entry = new Entry(size, modified, json, MediaInfo.fromJson(json));
+        cache.put(key, entry);
+        if (isPersistent(key)) {
+            append(key, entry);
+        }
+        return entry.info();
+    }
+
+    // 第一路视频流的关键帧时间表；只读 packet 标志，不解码，长片也只需几秒
+    KeyframeIndex keyframes(String path) throws Exception {
+        File file = new File(path).getAbsoluteFile();
+        String key = file.getPath();
+        long size = file.length();
+        long modified = file.lastModified();
+
+        KeyframeEntry entry = keyframeCache.get(key);
+        if (entry != null && entry.size() == size && entry.modified() == modified) {
+            return entry.index();
+        }
+
+        KeyframeIndex index = KeyframeIndex.parse(runFfprobe(List.of("ffprobe", "-v", "error",
+                "-select_streams", "v:0", "-show_entries", "packet=pts_time,flags", "-of", "csv=p=0", key)));
+        keyframeCache.put(key, new KeyframeEntry(size, modified, index));
+        return index;
+    }
+
+    private String runFfprobe(List<String> command) throws Exception {
+        log.accept("执行命令: " + String.join(" ", command));
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+        pb.environment().put("LC_ALL", "zh_CN.UTF-8");
+
+        long start = System.nanoTime();
+        Process process = processes.start(pb);
+        try (InputStream in = process.getInputStream()) {
+            String output = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new Exception("FFprobe进程返回错误代码: " + exitCode);
+            }
+            return output;
+        } finally {
+            processes.release(process);
+            metrics.recordProbe(System.nanoTime() - start);
+        }
+    }
+
+    private boolean isPersistent(String key) {
+        return cacheFile != null && !key.startsWith(tempDir) && !key.startsWith(scratchDir) && key.indexOf('\t') < 0 && key.indexOf('\n') < 0;
+    }
+
+    // 第一次探测时读取磁盘缓存，同一路径以最后一条记录为准
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            if (cacheFile != null && cacheFile.isFile()) {
+                load();
+            }
+            // 读完再标记，其他线程不会看到读了一半的缓存
+            loaded = true;
+        }
+    }
+
+    private void load() {
+        int lines = 0;
+        try {
+            for (String line : Files.readAllLines(cacheFile.toPath(), StandardCharsets.UTF_8)) {
+                lines++;
+                String[] fields = line.split("\t", 4);
+                if (fields.length < 4) {
+                    continue;
+                }
+                try {
+                    cache.put(fields[0], new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                            fields[3], MediaInfo.fromJson(fields[3])));
+                } catch (RuntimeException e) {
+                    // 崩溃时写了一半的记录
+                }
+            }
+            if (lines > cache.size() * 2 + COMPACT_SLACK) {
+                compact();
+            }
+        } catch (IOException e) {
+            log.accept("读取探测缓存失败: " + e.getMessage());
+        }
+    }
+
+    // 去掉重复和已删除文件的记录后整体重写
+    private void compact() throws IOException {
+        cache.keySet().removeIf(key -> !new File(key).isFile());
+        List<String> lines = new ArrayList<>(cache.size());
+        cache.forEach((key, entry) -> lines.add(line(key, entry)));
+        File temp = new File(cacheFile.getPath() + ".tmp");
+        Files.write(temp.toPath(), lines, StandardCharsets.UTF_8);
+        Files.move(temp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private synchronized void append(String key, Entry entry) {
+        try {
+            File dir = cacheFile.getParentFile();
+            if (dir != null && !dir.exists()) {
+                dir.mkdirs();
+            }
+            try (FileChannel channel = FileChannel.open(cacheFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap((line(key, entry) + "\n").getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        } catch (IOException e) {
+            log.accept("写入探测缓存失败: " + e.getMessage());
+        }
+    }
+
+    private static String line(String key, Entry entry) {
+        return key + "\t" + entry.size() + "\t" + entry.modified() + "\t" + entry.json();
+    }
+}
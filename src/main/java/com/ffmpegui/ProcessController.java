@@ -0,0 +1,136 @@
+package com.ffmpegui;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @description: ffmpeg/ffprobe 进程控制
+ * 所有外部进程都通过这里启动并登记，用于整批取消（结束整个进程树）、
+ * 暂停与继续（Linux/macOS 上发送 SIGSTOP/SIGCONT；Windows 上只能暂停启动新进程）。
+ */
+final class ProcessController {
+    private static final boolean WINDOWS = System.getProperty("os.name", "").toLowerCase().contains("win");
+
+    private final Set<Process> processes = ConcurrentHashMap.newKeySet();
+    private final Object stateLock = new Object();
+    private volatile boolean cancelled;
+    private volatile boolean paused;
+
+    // 启动进程并登记；已取消时直接抛出，暂停中则等待继续后再启动
+    Process start(ProcessBuilder pb) throws IOException, InterruptedException {
+        synchronized (stateLock) {
+            while (paused && !cancelled) {
+                stateLock.wait();
+            }
+            checkCancelled();
+            Process process = pb.start();
+            processes.add(process);
+            return process;
+        }
+    }
+
+    // 启动首尾相连的一组进程（前一个的标准输出接到后一个的标准输入）并全部登记
+    List<Process> startPipeline(List<ProcessBuilder> builders) throws IOException, InterruptedException {
+        synchronized (stateLock) {
+            while (paused && !cancelled) {
+                stateLock.wait();
+            }
+            checkCancelled();
+            List<Process> started = ProcessBuilder.startPipeline(builders);
+            processes.addAll(started);
+            return started;
+        }
+    }
+
+    // 进程结束后注销，传入 null 时忽略
+    void release(Process process) {
+        if (process != null) {
+            processes.remove(process);
+        }
+    }
+
+    void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("批处理已取消");
+        }
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    boolean isPaused() {
+        return paused;
+    }
+
+    // 新批次开始前清除取消和暂停状态
+    void reset() {
+        synchronized (stateLock) {
+            cancelled = false;
+            paused = false;
+            stateLock.notifyAll();
+        }
+    }
+
+    // 取消：不再启动新进程，并强制结束所有正在运行的进程及其子进程
+    void cancelAll() {
+        synchronized (stateLock) {
+            cancelled = true;
+            paused = false;
+            stateLock.notifyAll();
+        }
+        for (Process process : processes) {
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.destroyForcibly();
+        }
+    }
+
+    // 暂停：挂起正在运行的进程树，新进程等到继续后再启动
+    void pauseAll() {
+        synchronized (stateLock) {
+            paused = true;
+        }
+        signalAll("-STOP");
+    }
+
+    void resumeAll() {
+        signalAll("-CONT");
+        synchronized (stateLock) {
+            paused = false;
+            stateLock.notifyAll();
+        }
+    }
+
+    // Windows 没有 SIGSTOP/SIGCONT，只能阻止新进程启动
+    boolean supportsSuspend() {
+        return !WINDOWS;
+    }
+
+    int runningCount() {
+        return processes.size();
+    }
+
+    private void signalAll(String signal) {
+        if (!supportsSuspend() || processes.isEmpty()) {
+            return;
+        }
+        List<String> command = new ArrayList<>();
+        command.add("kill");
+        command.add(signal);
+        for (Process process : processes) {
+            command.add(String.valueOf(process.pid()));
+            process.descendants().forEach(child -> command.add(String.valueOf(child.pid())));
+        }
+        try {
+            new ProcessBuilder(command).redirectErrorStream(true).start().waitFor();
+        } catch (IOException e) {
+            System.err.println("发送信号失败: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package com.ffmpegui;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * @description: 自动检测画面中固定不动的小字、台标区域，给出 delogo 参数建议
+ * ffmpeg 只解码关键帧（-skip_frame nokey），每隔约 10 秒取一帧，缩小成 320 宽的灰度图，以 rawvideo 经管道输出；
+ * 对每个像素统计出现边缘的帧数比例：叠加的文字和台标几乎每一帧都在同一位置有清晰边缘，正片画面的边缘随镜头变化。
+ * 边缘稳定的像素连成区域后换算回原视频坐标。整集只解码几百个关键帧，几秒就能完成。
+ * 片尾模式只分析最后几秒，给出整集检测中没有的区域（如"未完待续"）。
+ * 结果按 路径 + 文件大小 + 修改时间 缓存到磁盘（默认 ~/.ffmpeg-batch-processor/region-cache.tsv），
+ * 同一部剧只需用其中一集检测一次，整批沿用。
+ */
+final class RegionDetector {
+    // 分析用的画面宽度，高度按原视频比例
+    private static final int SAMPLE_WIDTH = 320;
+    private static final int SAMPLE_INTERVAL_SECONDS = 10;
+    private static final int MAX_FRAMES = 600;
+    private static final int MIN_FRAMES = 8;
+    // 片尾模式每秒取的帧数
+    private static final int TAIL_FPS = 5;
+    // 相邻像素灰度差之和超过这个值算边缘
+    private static final int EDGE_THRESHOLD = 48;
+    // 超过这个比例的帧都有边缘的像素算固定叠加
+    private static final double PERSISTENT_RATIO = 0.6;
+    // 分析画面上相距不超过这个像素数的区域合并（同一行字的各个字）
+    private static final int MERGE_GAP = 4;
+    // 画面本身静止时会有大量零碎区域，只合并最大的这些
+    private static final int MAX_COMPONENTS = 400;
+    private static final int MIN_AREA = 12;
+    private static final int MAX_REGIONS = 4;
+    // 换算回原视频坐标后四周各留出的像素，delogo 也要求区域不贴边
+    private static final int PADDING = 6;
+
+    // 一条缓存：检测时文件的大小和修改时间，以及结果（delogo 参数，没有检测到时为空）
+    private record Entry(long size, long modified, String params) {
+    }
+
+    // 分析画面上的区域，坐标包含两端
+    private record Box(int minX, int minY, int maxX, int maxY) {
+        int area() {
+            return (maxX - minX + 1) * (maxY - minY + 1);
+        }
+
+        boolean near(Box other, int gap) {
+            return minX - gap <= other.maxX && other.minX - gap <= maxX
+                    && minY - gap <= other.maxY && other.minY - gap <= maxY;
+        }
+
+        Box union(Box other) {
+            return new Box(Math.min(minX, other.minX), Math.min(minY, other.minY),
+                    Math.max(maxX, other.maxX), Math.max(maxY, other.maxY));
+        }
+    }
+
+    private final ProcessController processes;
+    private final ProbeService probes;
+    private final File cacheFile;
+    private final Consumer<String> log;
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    /**
+     * @param cacheFile 磁盘缓存文件，为 null 时只缓存在内存中
+     */
+    RegionDetector(ProcessController processes, ProbeService probes, File cacheFile, Consumer<String> log) {
+        this.processes = processes;
+        this.probes = probes;
+        this.cacheFile = cacheFile;
+        this.log = log;
+    }
+
+    static File defaultCacheFile() {
+        return new File(System.getProperty("user.home"), ".ffmpeg-batch-processor" + File.separator + "region-cache.tsv");
+    }
+
+    /**
+     * 整集中固定不动的区域（小字、台标）
+     *
+     * @return delogo 参数，多个区域用 & 分隔；没有检测到时为空字符串
+     */
+    String detect(File input) throws Exception {
+        return cached(input, "episode", () -> DelogoParams.format(detectBoxes(input, null)));
+    }
+
+    /**
+     * 最后 seconds 秒中新出现的固定区域（如"未完待续"），整集都有的区域不算
+     *
+     * @return 面积最大的一个区域的 delogo 参数；没有检测到时为空字符串
+     */
+    String detectTail(File input, double seconds) throws Exception {
+        String mode = String.format(Locale.ROOT, "tail:%.2f", seconds);
+        return cached(input, mode, () -> {
+            String episode = detect(input);
+            List<DelogoParams> known = episode.isEmpty() ? List.of() : DelogoParams.parseList(episode);
+            for (DelogoParams params : detectBoxes(input, seconds)) {
+                if (known.stream().noneMatch(other -> overlaps(params, other))) {
+                    return DelogoParams.format(List.of(params));
+                }
+            }
+            return "";
+        });
+    }
+
+    @FunctionalInterface
+    private interface Detection {
+        String run() throws Exception;
+    }
+
+    private String cached(File input, String mode, Detection detection) throws Exception {
+        ensureLoaded();
+        File file = input.getAbsoluteFile();
+        String key = mode + "\t" + file.getPath();
+        long size = file.length();
+        long modified = file.lastModified();
+        Entry entry = cache.get(key);
+        if (entry != null && entry.size() == size && entry.modified() == modified) {
+            return entry.params();
+        }
+
+        long start = System.nanoTime();
+        String params = detection.run();
+        log.accept("区域检测 %s：%s（%.1f 秒）".formatted(file.getName(),
+                params.isEmpty() ? "没有检测到固定区域" : params, (System.nanoTime() - start) / 1e9));
+        entry = new Entry(size, modified, params);
+        cache.put(key, entry);
+        append(key, entry);
+        return params;
+    }
+
+    // tailSeconds 为 null 时按关键帧采样整集，否则逐帧采样最后几秒；按面积从大到小返回
+    private List<DelogoParams> detectBoxes(File input, Double tailSeconds) throws Exception {
+        MediaInfo.Stream video = probes.probe(input.getAbsolutePath()).video();
+        if (video == null || video.width() <= 0 || video.height() <= 0) {
+            throw new Exception("无法读取视频分辨率: " + input.getName());
+        }
+        int width = SAMPLE_WIDTH;
+        int height = Math.max(2, (int) Math.round((double) SAMPLE_WIDTH * video.height() / video.width() / 2) * 2);
+
+        List<String> command = new ArrayList<>();
+        command.add("ffmpeg");
+        command.add("-v");
+        command.add("error");
+        String select;
+        if (tailSeconds == null) {
+            // 只解码关键帧，再从中每隔一段时间取一帧
+            command.add("-skip_frame");
+            command.add("nokey");
+            select = "select='isnan(prev_selected_t)+gte(t-prev_selected_t\\,%d)',".formatted(SAMPLE_INTERVAL_SECONDS);
+        } else {
+            command.add("-sseof");
+            command.add(String.format(Locale.ROOT, "-%.2f", tailSeconds));
+            select = "fps=%d,".formatted(TAIL_FPS);
+        }
+        command.add("-i");
+        command.add(input.getAbsolutePath());
+        command.add("-an");
+        command.add("-sn");
+        command.add("-vf");
+        command.add(select + "scale=%d:%d,format=gray".formatted(width, height));
+        // 按原样输出选中的帧，不按帧率补帧
+        command.add("-vsync");
+        command.add("passthrough");
+        command.add("-frames:v");
+        command.add(String.valueOf(MAX_FRAMES));
+        command.add("-f");
+        command.add("rawvideo");
+        command.add("pipe:1");
+        log.accept("执行命令: " + String.join(" ", command));
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+        pb.environment().put("LC_ALL", "zh_CN.UTF-8");
+
+        int pixels = width * height;
+        int[] edgeCounts = new int[pixels];
+        byte[] frame = new byte[pixels];
+        int frames = 0;
+        Process process = processes.start(pb);
+        try (DataInputStream in = new DataInputStream(process.getInputStream())) {
+            while (true) {
+                try {
+                    in.readFully(frame);
+                } catch (EOFException e) {
+                    break;
+                }
+                countEdges(frame, width, height, edgeCounts);
+                frames++;
+            }
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new Exception("FFmpeg进程返回错误代码: " + exitCode);
+            }
+        } finally {
+            processes.release(process);
+        }
+        if (frames < MIN_FRAMES) {
+            throw new Exception("采样帧太少（%d 帧），无法检测: %s".formatted(frames, input.getName()));
+        }
+
+        // 固定叠加的像素，膨胀后把相邻的笔画和字连起来
+        int minCount = (int) Math.ceil(frames * PERSISTENT_RATIO);
+        boolean[] mask = new boolean[pixels];
+        for (int i = 0; i < pixels; i++) {
+            mask[i] = edgeCounts[i] >= minCount;
+        }
+        List<Box> boxes = merge(components(dilate(mask, width, height, MERGE_GAP / 2), width, height));
+
+        List<DelogoParams> result = new ArrayList<>();
+        double scaleX = (double) video.width() / width;
+        double scaleY = (double) video.height() / height;
+        for (Box box : boxes) {
+            // 贴满整行或整列的是黑边、画中画边框，不是叠加的文字
+            if (box.area() < MIN_AREA || box.maxX() - box.minX() + 1 >= width * 0.9
+                    || box.maxY() - box.minY() + 1 >= height * 0.9) {
+                continue;
+            }
+            DelogoParams params = toSource(box, scaleX, scaleY, video.width(), video.height());
+            if (params != null) {
+                result.add(params);
+            }
+            if (result.size() == MAX_REGIONS) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    // 简化的梯度：左右、上下相邻像素灰度差的绝对值之和
+    private static void countEdges(byte[] frame, int width, int height, int[] edgeCounts) {
+        for (int y = 1; y < height - 1; y++) {
+            int row = y * width;
+            for (int x = 1; x < width - 1; x++) {
+                int i = row + x;
+                int gx = (frame[i + 1] & 0xFF) - (frame[i - 1] & 0xFF);
+                int gy = (frame[i + width] & 0xFF) - (frame[i - width] & 0xFF);
+                if (Math.abs(gx) + Math.abs(gy) > EDGE_THRESHOLD) {
+                    edgeCounts[i]++;
+                }
+            }
+        }
+    }
+
+    private static boolean[] dilate(boolean[] mask, int width, int height, int radius) {
+        boolean[] dilated = new boolean[mask.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (!mask[y * width + x]) {
+                    continue;
+                }
+                for (int dy = -radius; dy <= radius; dy++) {
+                    for (int dx = -radius; dx <= radius; dx++) {
+                        int nx = x + dx;
+                        int ny = y + dy;
+                        if (nx >= 0 && nx < width && ny >= 0 && ny < height) {
+                            dilated[ny * width + nx] = true;
+                        }
+                    }
+                }
+            }
+        }
+        return dilated;
+    }
+
+    // 四邻域连通区域的外接框
+    private static List<Box> components(boolean[] mask, int width, int height) {
+        boolean[] visited = new boolean[mask.length];
+        int[] queue = new int[mask.length];
+        List<Box> boxes = new ArrayList<>();
+        for (int start = 0; start < mask.length; start++) {
+            if (!mask[start] || visited[start]) {
+                continue;
+            }
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = start;
+            visited[start] = true;
+            int minX = width;
+            int minY = height;
+            int maxX = -1;
+            int maxY = -1;
+            while (head < tail) {
+                int i = queue[head++];
+                int x = i % width;
+                int y = i / width;
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, y);
+                maxX = Math.max(maxX, x);
+                maxY = Math.max(maxY, y);
+                int[] neighbors = {x > 0 ? i - 1 : -1, x < width - 1 ? i + 1 : -1,
+                        y > 0 ? i - width : -1, y < height - 1 ? i + width : -1};
+                for (int next : neighbors) {
+                    if (next >= 0 && mask[next] && !visited[next]) {
+                        visited[next] = true;
+                        queue[tail++] = next;
+                    }
+                }
+            }
+            boxes.add(new Box(minX, minY, maxX, maxY));
+        }
+        return boxes;
+    }
+
+    // 反复合并外接框重叠的区域，结果按面积从大到小
+    private static List<Box> merge(List<Box> boxes) {
+        List<Box> merged = new ArrayList<>(boxes);
+        merged.sort(Comparator.comparingInt(Box::area).reversed());
+        if (merged.size() > MAX_COMPONENTS) {
+            merged = new ArrayList<>(merged.subList(0, MAX_COMPONENTS));
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            outer:
+            for (int i = 0; i < merged.size(); i++) {
+                for (int j = i + 1; j < merged.size(); j++) {
+                    if (merged.get(i).near(merged.get(j), 0)) {
+                        merged.set(i, merged.get(i).union(merged.remove(j)));
+                        changed = true;
+                        break outer;
+                    }
+                }
+            }
+        }
+        merged.sort(Comparator.comparingInt(Box::area).reversed());
+        return merged;
+    }
+
+    // 换算回原视频坐标，四周留出余量，并保证不贴边（delogo 的区域碰到画面边缘会报错）
+    private static DelogoParams toSource(Box box, double scaleX, double scaleY, int sourceWidth, int sourceHeight) {
+        int x = Math.max(1, (int) Math.floor(box.minX() * scaleX) - PADDING);
+        int y = Math.max(1, (int) Math.floor(box.minY() * scaleY) - PADDING);
+        int right = Math.min(sourceWidth - 2, (int) Math.ceil((box.maxX() + 1) * scaleX) + PADDING);
+        int bottom = Math.min(sourceHeight - 2, (int) Math.ceil((box.maxY() + 1) * scaleY) + PADDING);
+        if (right <= x || bottom <= y) {
+            return null;
+        }
+        return new DelogoParams(x, y, right - x, bottom - y);
+    }
+
+    private static boolean overlaps(DelogoParams a, DelogoParams b) {
+        return a.x() < b.x() + b.width() && b.x() < a.x() + a.width()
+                && a.y() < b.y() + b.height() && b.y() < a.y() + a.height();
+    }
+
+    // 第一次检测时读取磁盘缓存，同一文件以最后一条记录为准
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            if (cacheFile != null && cacheFile.isFile()) {
+                try {
+                    for (String line : Files.readAllLines(cacheFile.toPath(), StandardCharsets.UTF_8)) {
+                        String[] fields = line.split("\t", 5);
+                        if (fields.length < 5) {
+                            continue;
+                        }
+                        try {
+                            cache.put(fields[0] + "\t" + fields[1], new Entry(Long.parseLong(fields[2]),
+                                    Long.parseLong(fields[3]), fields[4]));
+                        } catch (NumberFormatException e) {
+                            // 崩溃时写了一半的记录
+                        }
+                    }
+                } catch (IOException e) {
+                    log.accept("读取区域检测缓存失败: " + e.getMessage());
+                }
+            }
+            loaded = true;
+        }
+    }
+
+    private synchronized void append(String key, Entry entry) {
+        if (cacheFile == null || key.indexOf('\n') >= 0 || key.chars().filter(c -> c == '\t').count() != 1) {
+            return;
+        }
+        try {
+            File dir = cacheFile.getParentFile();
+            if (dir != null && !dir.exists()) {
+                dir.mkdirs();
+            }
+            String line = key + "\t" + entry.size() + "\t" + entry.modified() + "\t" + entry.params() + "\n";
+            try (FileChannel channel = FileChannel.open(cacheFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        } catch (IOException e) {
+            log.accept("写入区域检测缓存失败: " + e.getMessage());
+        }
+    }
+}
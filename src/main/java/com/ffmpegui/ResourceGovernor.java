@@ -0,0 +1,235 @@
+package com.ffmpegui;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * @description: ffmpeg 进程的资源配额
+ * 每条命令按类型估算需要的 CPU、内存和磁盘 I/O 份额，配额不够时等待其他进程结束再启动：
+ * 编码按输入分辨率占用 CPU 和内存（4K 比 720p 占得多），只复制流的拼接、封装、提取音频只占 I/O 份额，不挤占编码；
+ * 系统负载（load average）超过阈值时暂缓启动新进程。
+ * CPU 份额总数为核心数，内存份额为可用物理内存的 90%（没有进程运行时重新采样）：Linux 上读取 /proc/meminfo 的 MemAvailable，
+ * 包含可回收的页缓存，连续读写大文件后 MemFree 会很小，按它计算会把编码压成一个一个地跑；
+ * 也可以用系统属性 ffmpegui.governor.memoryMb 指定固定的内存份额（MB）。
+ */
+final class ResourceGovernor {
+    // 1080p 作为基准，编码占用按像素数缩放
+    private static final long REFERENCE_PIXELS = 1920L * 1080;
+    private static final int IO_BUDGET = 2;
+    private static final long WAIT_MILLIS = 500;
+    private static final Set<String> CODEC_OPTIONS = Set.of("-c", "-codec", "-c:v", "-codec:v", "-vcodec");
+    static final String MEMORY_PROPERTY = "ffmpegui.governor.memoryMb";
+    private static final Path MEMINFO = Path.of("/proc/meminfo");
+
+    enum CostClass {
+        ENCODE("编码"),
+        IO("复制/封装");
+
+        private final String title;
+
+        CostClass(String title) {
+            this.title = title;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+    }
+
+    record Demand(CostClass costClass, int cpu, long memoryMb, int io) {
+        @Override
+        public String toString() {
+            return "%s（CPU %d, 内存 %d MB, I/O %d）".formatted(costClass.getTitle(), cpu, memoryMb, io);
+        }
+    }
+
+    // 已获得的配额，进程结束后 close 归还
+    final class Lease implements AutoCloseable {
+        private final Demand demand;
+        private boolean closed;
+
+        private Lease(Demand demand) {
+            this.demand = demand;
+        }
+
+        @Override
+        public void close() {
+            synchronized (ResourceGovernor.this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                cpuUsed -= demand.cpu();
+                memoryUsedMb -= demand.memoryMb();
+                ioUsed -= demand.io();
+                leases--;
+                ResourceGovernor.this.notifyAll();
+            }
+        }
+    }
+
+    private final ProcessController processes;
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    private final int cores = Runtime.getRuntime().availableProcessors();
+    private final int cpuBudget = cores;
+    private final double loadThreshold = cores * 1.5;
+    // 系统属性指定的内存份额（MB），未指定时为 0，按可用内存采样
+    private final long fixedMemoryMb = fixedMemoryBudget();
+    private long memoryBudgetMb;
+
+    private int cpuUsed;
+    private long memoryUsedMb;
+    private int ioUsed;
+    private int leases;
+
+    ResourceGovernor(ProcessController processes) {
+        this.processes = processes;
+        this.memoryBudgetMb = sampleMemoryBudget();
+    }
+
+    // 视频流直接复制或不输出视频的命令只占 I/O，其余按编码处理
+    static CostClass classify(List<String> command) {
+        for (int i = 0; i < command.size(); i++) {
+            String arg = command.get(i);
+            if (arg.equals("-vn")) {
+                return CostClass.IO;
+            }
+            if (CODEC_OPTIONS.contains(arg) && i + 1 < command.size() && command.get(i + 1).equals("copy")) {
+                return CostClass.IO;
+            }
+        }
+        return CostClass.ENCODE;
+    }
+
+    /**
+     * 估算一条命令需要的配额
+     *
+     * @param width  输入视频宽度，未知时传 0，按 1080p 估算
+     * @param height 输入视频高度
+     */
+    Demand demand(CostClass costClass, int width, int height) {
+        if (costClass == CostClass.IO) {
+            return new Demand(costClass, 0, 64, 1);
+        }
+        double scale = width > 0 && height > 0 ? (double) width * height / REFERENCE_PIXELS : 1;
+        scale = Math.max(0.25, Math.min(4, scale));
+        int cpu = (int) Math.max(1, Math.min(cpuBudget, Math.round(cores / 4.0 * scale)));
+        long memoryMb = 256 + Math.round(512 * scale);
+        return new Demand(costClass, cpu, memoryMb, 0);
+    }
+
+    /**
+     * 等待配额足够后占用；单条命令的需求超过总配额时按总配额计算，保证总能运行。
+     * 没有其他进程占用配额时不受系统负载限制，避免被外部负载饿死。
+     */
+    Lease acquire(Demand demand) throws InterruptedException {
+        return acquire(demand, reason -> { });
+    }
+
+    /**
+     * 同 {@link #acquire(Demand)}，需要等待时通过 throttled 报告原因（如"内存不足"），原因变化时再报告一次
+     */
+    synchronized Lease acquire(Demand demand, Consumer<String> throttled) throws InterruptedException {
+        String reported = null;
+        while (true) {
+            processes.checkCancelled();
+            if (leases == 0) {
+                memoryBudgetMb = sampleMemoryBudget();
+            }
+            Demand capped = new Demand(demand.costClass(), Math.min(demand.cpu(), cpuBudget),
+                    Math.min(demand.memoryMb(), memoryBudgetMb), Math.min(demand.io(), IO_BUDGET));
+            if (leases == 0 || (fits(capped) && !overloaded())) {
+                cpuUsed += capped.cpu();
+                memoryUsedMb += capped.memoryMb();
+                ioUsed += capped.io();
+                leases++;
+                return new Lease(capped);
+            }
+            String reason = throttleReason(capped);
+            if (!reason.equals(reported)) {
+                reported = reason;
+                throttled.accept(reason);
+            }
+            wait(WAIT_MILLIS);
+        }
+    }
+
+    synchronized String describe() {
+        return "CPU %d/%d, 内存 %d/%d MB, I/O %d/%d".formatted(cpuUsed, cpuBudget,
+                memoryUsedMb, memoryBudgetMb, ioUsed, IO_BUDGET);
+    }
+
+    private boolean fits(Demand demand) {
+        return cpuUsed + demand.cpu() <= cpuBudget
+                && memoryUsedMb + demand.memoryMb() <= memoryBudgetMb
+                && ioUsed + demand.io() <= IO_BUDGET;
+    }
+
+    // 不能立即启动的原因，用于日志
+    private String throttleReason(Demand demand) {
+        if (cpuUsed + demand.cpu() > cpuBudget) {
+            return "CPU 份额不足（%d/%d，需要 %d）".formatted(cpuUsed, cpuBudget, demand.cpu());
+        }
+        if (memoryUsedMb + demand.memoryMb() > memoryBudgetMb) {
+            return "内存份额不足（%d/%d MB，需要 %d MB）".formatted(memoryUsedMb, memoryBudgetMb, demand.memoryMb());
+        }
+        if (ioUsed + demand.io() > IO_BUDGET) {
+            return "I/O 份额不足（%d/%d）".formatted(ioUsed, IO_BUDGET);
+        }
+        return "系统负载过高（%.1f，阈值 %.1f）".formatted(os.getSystemLoadAverage(), loadThreshold);
+    }
+
+    // Windows 上没有 load average（返回负数），不做限制
+    private boolean overloaded() {
+        double load = os.getSystemLoadAverage();
+        return load >= 0 && load > loadThreshold;
+    }
+
+    private long sampleMemoryBudget() {
+        if (fixedMemoryMb > 0) {
+            return fixedMemoryMb;
+        }
+        long availableMb = memAvailableMb();
+        if (availableMb < 0 && os instanceof com.sun.management.OperatingSystemMXBean hotspot) {
+            // 其他系统上没有 MemAvailable，按空闲内存估算
+            availableMb = hotspot.getFreeMemorySize() / (1024 * 1024);
+        }
+        if (availableMb < 0) {
+            return Long.MAX_VALUE / 4;
+        }
+        return Math.max(1024, availableMb * 9 / 10);
+    }
+
+    // /proc/meminfo 中的 MemAvailable（MB），读不到时（非 Linux、内核 3.14 之前）返回 -1
+    private static long memAvailableMb() {
+        try {
+            for (String line : Files.readAllLines(MEMINFO)) {
+                if (line.startsWith("MemAvailable:")) {
+                    String[] parts = line.substring("MemAvailable:".length()).trim().split("\\s+");
+                    return Long.parseLong(parts[0]) / 1024;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // 按其他方式估算
+        }
+        return -1;
+    }
+
+    private static long fixedMemoryBudget() {
+        String value = System.getProperty(MEMORY_PROPERTY);
+        if (value == null || value.isBlank()) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.ffmpegui;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @description: 完整日志文件，按大小轮转
+ * 每行加上时间写入 64 KB 的缓冲区，满了或每秒一次整块写入 FileChannel；写满上限后改名为 .1、.2…，只保留最近几个。
+ * 写入在调用线程上进行，磁盘跟不上时调用方（ffmpeg 输出的读取线程）自然变慢。
+ * 默认位置 ~/.ffmpeg-batch-processor/logs/ffmpeg-batch.log，可以用系统属性 ffmpegui.log.dir 指定目录。
+ */
+final class RotatingLogFile implements AutoCloseable {
+    static final String DIR_PROPERTY = "ffmpegui.log.dir";
+    private static final String FILE_NAME = "ffmpeg-batch.log";
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final long MAX_FILE_BYTES = 16L * 1024 * 1024;
+    // 轮转后保留的旧文件数
+    private static final int KEEP_FILES = 5;
+    private static final long FLUSH_MILLIS = 1_000;
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS ");
+
+    private final Path file;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+    private final ScheduledExecutorService flusher;
+    private FileChannel channel;
+    private long size;
+    // 写入失败后不再尝试，避免每行都报错
+    private boolean failed;
+
+    RotatingLogFile(Path file) {
+        this.file = file.toAbsolutePath();
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "log-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "log-close"));
+    }
+
+    static RotatingLogFile fromSystemProperties() {
+        String dir = System.getProperty(DIR_PROPERTY);
+        Path root = dir == null || dir.isBlank()
+                ? Path.of(System.getProperty("user.home"), ".ffmpeg-batch-processor", "logs") : Path.of(dir);
+        return new RotatingLogFile(root.resolve(FILE_NAME));
+    }
+
+    Path path() {
+        return file;
+    }
+
+    synchronized void append(String line) {
+        if (failed) {
+            return;
+        }
+        byte[] bytes = (LocalDateTime.now().format(TIME) + line + "\n").getBytes(StandardCharsets.UTF_8);
+        try {
+            if (bytes.length > buffer.remaining()) {
+                writeBuffer();
+            }
+            if (bytes.length > buffer.capacity()) {
+                write(ByteBuffer.wrap(bytes));
+            } else {
+                buffer.put(bytes);
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    synchronized void flush() {
+        if (failed || buffer.position() == 0) {
+            return;
+        }
+        try {
+            writeBuffer();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        flush();
+        flusher.shutdown();
+        closeChannel();
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        try {
+            write(buffer);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private void write(ByteBuffer data) throws IOException {
+        if (channel == null) {
+            open();
+        }
+        while (data.hasRemaining()) {
+            size += channel.write(data);
+        }
+        if (size >= MAX_FILE_BYTES) {
+            rotate();
+        }
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(file.getParent());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        size = channel.size();
+    }
+
+    // ffmpeg-batch.log → .1 → .2 …，最旧的被覆盖
+    private void rotate() throws IOException {
+        closeChannel();
+        for (int i = KEEP_FILES - 1; i >= 1; i--) {
+            Path older = rotated(i);
+            if (Files.exists(older)) {
+                Files.move(older, rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+        open();
+    }
+
+    private Path rotated(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("关闭日志文件失败: " + e.getMessage());
+        }
+        channel = null;
+    }
+
+    private void fail(IOException e) {
+        failed = true;
+        buffer.clear();
+        closeChannel();
+        System.err.println("写入日志文件失败，之后只在界面显示: " + file + " " + e.getMessage());
+    }
+}
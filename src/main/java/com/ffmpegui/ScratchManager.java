@@ -0,0 +1,260 @@
+package com.ffmpegui;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * @description: 中间文件的临时目录管理
+ * 分段编码、拼接等产生的中间文件都放在临时根目录下，每个任务一个独立子目录，任务结束后整个子目录删除。
+ * 开始前按预计占用检查剩余空间，所有并发任务的预计占用总和不超过上限，不够时等待其他任务结束；
+ * 子目录中记录所属进程，启动时清理进程已经不存在（崩溃、被强制结束）遗留的子目录。
+ * 根目录默认为 java.io.tmpdir/ffmpeg-batch-scratch，可以用系统属性 ffmpegui.scratch.dir 指向 tmpfs 或 NVMe 盘，
+ * 用 ffmpegui.scratch.limitGb 限制总占用。
+ */
+final class ScratchManager {
+    static final String DIR_PROPERTY = "ffmpegui.scratch.dir";
+    static final String LIMIT_PROPERTY = "ffmpegui.scratch.limitGb";
+
+    private static final String DIR_PREFIX = "job-";
+    private static final String OWNER_FILE = ".owner";
+    // 磁盘上至少保留的剩余空间
+    private static final long FREE_MARGIN = 512L * 1024 * 1024;
+    private static final long WAIT_MILLIS = 1_000;
+    // 没有所属进程记录的子目录，超过这个时间才当作遗留目录清理（可能正在被其他进程创建）
+    private static final long UNOWNED_GRACE_MILLIS = 60 * 60 * 1000;
+
+    // 一个任务的临时子目录，close 时删除并归还预计占用
+    final class Scratch implements AutoCloseable {
+        private final Path dir;
+        private final long reserved;
+        private boolean closed;
+
+        private Scratch(Path dir, long reserved) {
+            this.dir = dir;
+            this.reserved = reserved;
+        }
+
+        Path dir() {
+            return dir;
+        }
+
+        // 在子目录中创建一个唯一命名的空文件
+        File newFile(String prefix, String suffix) throws IOException {
+            return Files.createTempFile(dir, prefix, suffix).toFile();
+        }
+
+        @Override
+        public void close() {
+            synchronized (ScratchManager.this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                reservedBytes -= reserved;
+                openCount--;
+                ScratchManager.this.notifyAll();
+            }
+            deleteRecursively(dir);
+        }
+    }
+
+    private final Path root;
+    private final long limitBytes;
+    private final ProcessController processes;
+    private final Consumer<String> log;
+    private final AtomicLong sequence = new AtomicLong();
+    private final String owner = ownerOf(ProcessHandle.current());
+
+    private long reservedBytes;
+    private int openCount;
+
+    /**
+     * @param limitBytes 所有任务临时文件的总上限，0 表示只受磁盘剩余空间限制
+     */
+    ScratchManager(Path root, long limitBytes, ProcessController processes, Consumer<String> log) {
+        this.root = root.toAbsolutePath();
+        this.limitBytes = limitBytes;
+        this.processes = processes;
+        this.log = log;
+    }
+
+    // 按系统属性配置，图形界面和分布式 worker 使用
+    static ScratchManager fromSystemProperties(ProcessController processes, Consumer<String> log) {
+        String dir = System.getProperty(DIR_PROPERTY);
+        Path root = dir == null || dir.isBlank() ? defaultRoot() : Path.of(dir);
+        long limit = 0;
+        String limitGb = System.getProperty(LIMIT_PROPERTY);
+        if (limitGb != null && !limitGb.isBlank()) {
+            try {
+                limit = gigabytes(Double.parseDouble(limitGb.trim()));
+            } catch (NumberFormatException e) {
+                log.accept("忽略无效的临时目录上限: " + limitGb);
+            }
+        }
+        return new ScratchManager(root, limit, processes, log);
+    }
+
+    static Path defaultRoot() {
+        return Path.of(System.getProperty("java.io.tmpdir"), "ffmpeg-batch-scratch");
+    }
+
+    static long gigabytes(double value) {
+        return (long) (value * 1024 * 1024 * 1024);
+    }
+
+    Path root() {
+        return root;
+    }
+
+    // 当前所有任务的预计占用之和
+    synchronized long reservedBytes() {
+        return reservedBytes;
+    }
+
+    // 本进程各任务子目录实际占用的字节数（遍历目录，只在读取指标时调用）
+    long usedBytes() {
+        String prefix = DIR_PREFIX + ProcessHandle.current().pid() + "-";
+        File[] dirs = root.toFile().listFiles(file -> file.isDirectory() && file.getName().startsWith(prefix));
+        if (dirs == null) {
+            return 0;
+        }
+        long bytes = 0;
+        for (File dir : dirs) {
+            bytes += sizeOf(dir.toPath());
+        }
+        return bytes;
+    }
+
+    /**
+     * 为任务分配临时子目录。剩余空间或总上限不够时等待其他任务释放；
+     * 没有其他任务占用时仍然不够，说明磁盘本身放不下，直接报错。
+     *
+     * @param estimateBytes 预计占用
+     */
+    Scratch open(JobScheduler.Job job, long estimateBytes) throws IOException, InterruptedException {
+        Files.createDirectories(root);
+        long estimate = Math.max(0, estimateBytes);
+        synchronized (this) {
+            boolean waited = false;
+            while (true) {
+                processes.checkCancelled();
+                long usable = root.toFile().getUsableSpace();
+                boolean fitsDisk = usable - reservedBytes - estimate >= FREE_MARGIN;
+                boolean fitsLimit = limitBytes <= 0 || reservedBytes + estimate <= limitBytes;
+                if (fitsDisk && (fitsLimit || openCount == 0)) {
+                    break;
+                }
+                if (openCount == 0) {
+                    throw new IOException("临时目录空间不足：预计需要 %s，%s 剩余 %s".formatted(
+                            formatSize(estimate), root, formatSize(usable)));
+                }
+                if (!waited) {
+                    waited = true;
+                    log.accept(prefix(job) + "临时目录空间不足（预计需要 %s，已占用 %s），等待其他任务结束..."
+                            .formatted(formatSize(estimate), formatSize(reservedBytes)));
+                }
+                wait(WAIT_MILLIS);
+            }
+            reservedBytes += estimate;
+            openCount++;
+        }
+
+        try {
+            Path dir = root.resolve(DIR_PREFIX + ProcessHandle.current().pid() + "-" + sequence.incrementAndGet());
+            Files.createDirectories(dir);
+            Files.writeString(dir.resolve(OWNER_FILE), owner, StandardCharsets.UTF_8);
+            return new Scratch(dir, estimate);
+        } catch (IOException e) {
+            synchronized (this) {
+                reservedBytes -= estimate;
+                openCount--;
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    // 删除所属进程已经不存在的子目录
+    void sweepOrphans() {
+        File[] dirs = root.toFile().listFiles(file -> file.isDirectory() && file.getName().startsWith(DIR_PREFIX));
+        if (dirs == null) {
+            return;
+        }
+        int count = 0;
+        long bytes = 0;
+        for (File dir : dirs) {
+            if (isOrphan(dir.toPath())) {
+                bytes += sizeOf(dir.toPath());
+                deleteRecursively(dir.toPath());
+                count++;
+            }
+        }
+        if (count > 0) {
+            log.accept("清理遗留的临时目录 %d 个，释放 %s".formatted(count, formatSize(bytes)));
+        }
+    }
+
+    private boolean isOrphan(Path dir) {
+        Path ownerFile = dir.resolve(OWNER_FILE);
+        String recorded;
+        try {
+            recorded = Files.readString(ownerFile, StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            return System.currentTimeMillis() - dir.toFile().lastModified() > UNOWNED_GRACE_MILLIS;
+        }
+        // 记录的是 进程号 + 启动时间，进程号被复用时启动时间不同
+        String[] fields = recorded.split("\t");
+        try {
+            Optional<ProcessHandle> process = ProcessHandle.of(Long.parseLong(fields[0]));
+            return process.isEmpty() || !ownerOf(process.get()).equals(recorded);
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private static String ownerOf(ProcessHandle process) {
+        long started = process.info().startInstant().map(instant -> instant.toEpochMilli()).orElse(0L);
+        return process.pid() + "\t" + started;
+    }
+
+    private static String prefix(JobScheduler.Job job) {
+        return job == null ? "" : "[" + job.name() + "] ";
+    }
+
+    static String formatSize(long bytes) {
+        if (bytes >= 1024L * 1024 * 1024) {
+            return "%.1f GB".formatted(bytes / (1024.0 * 1024 * 1024));
+        }
+        return "%d MB".formatted(bytes / (1024 * 1024));
+    }
+
+    private static long sizeOf(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            return paths.map(Path::toFile).filter(File::isFile).mapToLong(File::length).sum();
+        } catch (IOException | UncheckedIOException e) {
+            // 遍历期间目录被任务删除
+            return 0;
+        }
+    }
+
+    static void deleteRecursively(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            List<Path> sorted = paths.sorted(Comparator.reverseOrder()).toList();
+            for (Path path : sorted) {
+                path.toFile().delete();
+            }
+        } catch (IOException e) {
+            System.err.println("删除临时目录失败: " + dir + " " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.ffmpegui;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * @description: 智能剪切拼接（只处理视频轨）
+ * 按关键帧时间表把每个片段分成三部分：切点到下一个关键帧之间重新编码，关键帧之间的完整 GOP 直接流复制，
+ * 最后一个关键帧到切点之间重新编码；重新编码时沿用原视频的编码器、档次、像素格式和帧率，
+ * 各部分写成 MPEG-TS 后用 concat 分离器流复制拼接，最长的流复制部分经管道直接送给拼接命令，不写临时文件。
+ * 绝大部分画面不经过编码，长片拼接只需几秒。
+ */
+final class SmartCutSplicer {
+    // 时间比较的容差（秒）
+    private static final double EPSILON = 0.001;
+    // 能流复制的部分短于这个时长时整段重新编码，不值得多切一刀
+    private static final double MIN_COPY_SECONDS = 1.0;
+    private static final Map<String, String> ENCODERS = Map.of("h264", "libx264", "hevc", "libx265");
+    private static final Map<String, String> ANNEXB_FILTERS = Map.of("h264", "h264_mp4toannexb", "hevc", "hevc_mp4toannexb");
+
+    /**
+     * 拼接的一个片段
+     *
+     * @param end 结束时间（秒），{@link Double#POSITIVE_INFINITY} 表示到文件末尾
+     */
+    record Segment(String path, double start, double end) {
+    }
+
+    // 切分后的一部分：copy 为 true 时流复制；open 为 true 时一直复制到文件末尾
+    private record Piece(String path, double start, double end, boolean copy, boolean open) {
+        double length() {
+            return end - start;
+        }
+    }
+
+    private final JobScheduler scheduler;
+    private final CommandExecutor executor;
+    private final ProbeService probes;
+    private final BiConsumer<JobScheduler.Job, String> log;
+
+    SmartCutSplicer(JobScheduler scheduler, CommandExecutor executor, ProbeService probes,
+                    BiConsumer<JobScheduler.Job, String> log) {
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.probes = probes;
+        this.log = log;
+    }
+
+    /**
+     * 切分各片段的视频轨并写出 concat 列表（无音频）。最长的一个流复制部分不落盘，列表中记为 pipe:0，
+     * 由返回的命令写到标准输出，调用方把它用管道接到读取列表的合并命令上；其余部分写在任务的临时目录中，返回时已完成。
+     *
+     * @return 写出最长部分的命令；null 表示不适合智能剪切（编码格式不支持、各来源参数不一致或没有可复制的 GOP），调用方应改为完整重新编码
+     */
+    List<String> splice(JobScheduler.Job job, List<Segment> segments, File listFile, ScratchManager.Scratch scratch)
+            throws Exception {
+        // 1. 所有来源的视频参数必须一致，流复制的部分和重新编码的部分才能直接拼在一起
+        MediaInfo.Stream reference = null;
+        Map<String, Double> durations = new LinkedHashMap<>();
+        for (Segment segment : segments) {
+            if (durations.containsKey(segment.path())) {
+                continue;
+            }
+            MediaInfo info = probes.probe(segment.path());
+            MediaInfo.Stream video = info.video();
+            if (!supports(video)) {
+                log.accept(job, "智能剪切不支持 %s 编码，改为完整重新编码".formatted(video == null ? "无视频" : video.codecName()));
+                return null;
+            }
+            if (reference != null && !compatible(reference, video)) {
+                log.accept(job, "片段来源的视频参数不一致（%s %dx%d %s 与 %s %dx%d %s），改为完整重新编码".formatted(
+                        reference.codecName(), reference.width(), reference.height(), reference.pixelFormat(),
+                        video.codecName(), video.width(), video.height(), video.pixelFormat()));
+                return null;
+            }
+            reference = video;
+            durations.put(segment.path(), info.durationSeconds());
+        }
+
+        // 2. 按关键帧划分流复制和重新编码的部分
+        List<Piece> pieces = new ArrayList<>();
+        for (Segment segment : segments) {
+            plan(segment, probes.keyframes(segment.path()), durations.get(segment.path()), pieces);
+        }
+        double copied = 0;
+        double encoded = 0;
+        int streamed = -1;
+        for (int i = 0; i < pieces.size(); i++) {
+            Piece piece = pieces.get(i);
+            if (piece.copy()) {
+                copied += piece.length();
+                if (streamed < 0 || piece.length() > pieces.get(streamed).length()) {
+                    streamed = i;
+                }
+            } else {
+                encoded += piece.length();
+            }
+        }
+        if (copied == 0) {
+            log.accept(job, "切点之间没有完整的 GOP，改为完整重新编码");
+            return null;
+        }
+        log.accept(job, String.format("智能剪切：%d 部分，流复制 %.1f 秒，重新编码 %.1f 秒",
+                pieces.size(), copied, encoded));
+
+        Path workDir = scratch.dir();
+        List<CompletableFuture<Void>> stages = new ArrayList<>();
+        try {
+            // 3. 其余部分互不依赖，并行处理
+            MediaInfo.Stream video = reference;
+            AtomicInteger finished = new AtomicInteger();
+            int fileCount = pieces.size() - 1;
+            List<String> entries = new ArrayList<>();
+            for (int i = 0; i < pieces.size(); i++) {
+                if (i == streamed) {
+                    entries.add("pipe:0");
+                    continue;
+                }
+                Path pieceFile = workDir.resolve("smartcut_%03d.ts".formatted(i));
+                entries.add(pieceFile.toString());
+                List<String> command = pieceCommand(pieces.get(i), video, pieceFile.toString());
+                stages.add(scheduler.runStage(() -> {
+                    executor.execute(job, command);
+                    job.setProgress(0.5 * finished.incrementAndGet() / fileCount);
+                }));
+            }
+
+            // 4. concat 列表，合并时按顺序读取
+            try (PrintWriter writer = new PrintWriter(listFile, "UTF-8")) {
+                for (String entry : entries) {
+                    writer.println("file '" + entry.replace("\\", "\\\\") + "'");
+                }
+            }
+            JobScheduler.awaitAll(stages);
+            return pieceCommand(pieces.get(streamed), video, "pipe:1");
+        } finally {
+            // 等待仍在运行的部分结束，临时目录由调用方删除
+            for (CompletableFuture<Void> stage : stages) {
+                try {
+                    stage.join();
+                } catch (Exception ignored) {
+                    // 失败原因已经由 awaitAll 抛出
+                }
+            }
+        }
+    }
+
+    // 片段 [start, end) 中第一个关键帧之前和最后一个关键帧之后重新编码，中间流复制
+    private static void plan(Segment segment, KeyframeIndex keyframes, double sourceDuration, List<Piece> pieces) {
+        String path = segment.path();
+        double start = Math.max(0, segment.start());
+        double end = Math.min(segment.end(), sourceDuration);
+        if (end - start <= EPSILON) {
+            return;
+        }
+        boolean toEnd = end >= sourceDuration - EPSILON;
+        double first = keyframes.atOrAfter(start - EPSILON);
+        double last = toEnd ? end : keyframes.atOrBefore(end + EPSILON);
+        if (Double.isNaN(first) || Double.isNaN(last) || last - first < MIN_COPY_SECONDS) {
+            pieces.add(new Piece(path, start, end, false, false));
+            return;
+        }
+        if (first - start > EPSILON) {
+            pieces.add(new Piece(path, start, first, false, false));
+        }
+        pieces.add(new Piece(path, first, last, true, toEnd));
+        if (!toEnd && end - last > EPSILON) {
+            pieces.add(new Piece(path, last, end, false, false));
+        }
+    }
+
+    // target 为文件路径或 pipe:1
+    private static List<String> pieceCommand(Piece piece, MediaInfo.Stream video, String target) {
+        List<String> command = new ArrayList<>();
+        command.add("ffmpeg");
+        // 输入端定位：流复制时从关键帧开始，重新编码时精确到帧
+        command.add("-ss");
+        command.add(String.format(Locale.ROOT, "%.6f", piece.start()));
+        command.add("-i");
+        command.add(piece.path());
+        if (!piece.open()) {
+            command.add("-t");
+            command.add(String.format(Locale.ROOT, "%.6f", piece.length()));
+        }
+        command.add("-map");
+        command.add("0:v:0");
+        if (piece.copy()) {
+            command.add("-c");
+            command.add("copy");
+            command.add("-bsf:v");
+            command.add(annexbFilter(video));
+        } else {
+            command.addAll(encoderArgs(video));
+        }
+        command.add("-avoid_negative_ts");
+        command.add("make_zero");
+        command.add("-f");
+        command.add("mpegts");
+        command.add("-y");
+        command.add(target);
+        return command;
+    }
+
+    // 能按 GOP 流复制并与重新编码的部分拼接的视频编码
+    static boolean supports(MediaInfo.Stream video) {
+        return video != null && ENCODERS.containsKey(video.codecName());
+    }
+
+    // 流复制写入 MPEG-TS 时把 MP4 的码流格式转换为 Annex B
+    static String annexbFilter(MediaInfo.Stream video) {
+        return ANNEXB_FILTERS.get(video.codecName());
+    }
+
+    // 与流复制部分保持同样的编码参数：编码器、档次、像素格式和帧率
+    static List<String> encoderArgs(MediaInfo.Stream video) {
+        List<String> args = new ArrayList<>();
+        args.add("-c:v");
+        args.add(ENCODERS.get(video.codecName()));
+        String profile = profileOption(video.profile());
+        if (profile != null) {
+            args.add("-profile:v");
+            args.add(profile);
+        }
+        if (video.pixelFormat() != null) {
+            args.add("-pix_fmt");
+            args.add(video.pixelFormat());
+        }
+        if (video.frameRateValue() > 0) {
+            args.add("-r");
+            args.add(video.frameRate());
+        }
+        args.add("-crf");
+        args.add("18");
+        return args;
+    }
+
+    private static boolean compatible(MediaInfo.Stream a, MediaInfo.Stream b) {
+        return a.codecName().equals(b.codecName())
+                && a.width() == b.width() && a.height() == b.height()
+                && Objects.equals(a.pixelFormat(), b.pixelFormat())
+                && Math.abs(a.frameRateValue() - b.frameRateValue()) < 0.01;
+    }
+
+    // ffprobe 的档次名换算成编码器的 -profile:v 取值，如 "High" -> high、"Main 10" -> main10
+    private static String profileOption(String profile) {
+        if (profile == null) {
+            return null;
+        }
+        String name = profile.toLowerCase(Locale.ROOT).replace("constrained ", "").replace(" ", "");
+        return switch (name) {
+            case "baseline", "main", "high", "high10", "high422", "main10" -> name;
+            default -> null;
+        };
+    }
+}
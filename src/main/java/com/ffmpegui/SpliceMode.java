@@ -0,0 +1,28 @@
+package com.ffmpegui;
+
+/**
+ * @description: 高级拼接的处理方式
+ * 分段编码：片头、中间、片尾分别重新编码到临时文件后拼接；
+ * 智能剪切：只重新编码切点附近的 GOP，其余流复制（见 {@link SmartCutSplicer}）；
+ * 单次滤镜：一条 ffmpeg 命令用 trim/concat 滤镜直接生成成品，不写中间文件，AAC 音频直接复制。
+ */
+enum SpliceMode {
+    SEGMENTS("分段编码"),
+    SMART_CUT("智能剪切"),
+    SINGLE_PASS("单次滤镜");
+
+    private final String title;
+
+    SpliceMode(String title) {
+        this.title = title;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    @Override
+    public String toString() {
+        return title;
+    }
+}
@@ -0,0 +1,140 @@
+package com.ffmpegui;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * @description: 经 Java 中转的管道，下游可以晚于上游启动
+ * 下游启动前，上游的标准输出写入缓冲文件，上游不会因为没人读而停下；下游启动后先送出缓冲的数据，之后直接转发，
+ * 上游结束时关闭下游的标准输入。拼接时最长的中间部分和片头片尾同时开始编码，合并命令等片头片尾写完后再启动，
+ * 落盘的只有等待期间产生的那一部分。
+ */
+final class SpooledPipe {
+    private static final int BUFFER_BYTES = 256 * 1024;
+
+    private final Path spoolFile;
+    private final CompletableFuture<Void> started = new CompletableFuture<>();
+    private final CompletableFuture<OutputStream> downstream = new CompletableFuture<>();
+    private Process source;
+    private Thread thread;
+    private volatile IOException error;
+
+    /**
+     * @param spoolFile 缓冲文件，放在任务的临时目录中，中转结束后删除
+     */
+    SpooledPipe(Path spoolFile) {
+        this.spoolFile = spoolFile;
+    }
+
+    // 上游进程启动后调用，开始读取它的标准输出；已放弃时直接结束上游
+    synchronized void start(Process process) {
+        source = process;
+        if (downstream.isCancelled()) {
+            process.destroyForcibly();
+            return;
+        }
+        thread = new Thread(() -> relay(process.getInputStream()), "pipe-relay");
+        thread.setDaemon(true);
+        thread.start();
+        started.complete(null);
+    }
+
+    // 上游已启动（已拿到进程槽位和配额）
+    CompletableFuture<Void> started() {
+        return started;
+    }
+
+    // 下游进程启动后调用，stdin 为它的标准输入
+    void connect(OutputStream stdin) {
+        downstream.complete(stdin);
+    }
+
+    // 放弃中转并结束上游；中转已经完成时没有影响
+    synchronized void abort() {
+        downstream.cancel(false);
+        if (source != null && source.isAlive()) {
+            source.destroyForcibly();
+        }
+    }
+
+    // 等待上游的数据全部送给下游；中转出错（如缓冲文件写入失败）时下游读到的数据不完整，抛出原因
+    void await() throws IOException, InterruptedException {
+        Thread relay;
+        synchronized (this) {
+            relay = thread;
+        }
+        if (relay != null) {
+            relay.join();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void relay(InputStream in) {
+        OutputStream out = null;
+        try (in; FileChannel spool = FileChannel.open(spoolFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[BUFFER_BYTES];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                if (out == null && (out = downstream.getNow(null)) != null) {
+                    drain(spool, out);
+                }
+                if (out != null) {
+                    out.write(buffer, 0, n);
+                } else {
+                    ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, n);
+                    while (chunk.hasRemaining()) {
+                        spool.write(chunk);
+                    }
+                }
+            }
+            // 上游先结束：等下游启动后一次送出
+            if (out == null) {
+                out = downstream.join();
+                drain(spool, out);
+            }
+        } catch (IOException e) {
+            // 下游提前退出或缓冲文件写入失败，上游不能停在写管道上
+            error = e;
+            abort();
+        } catch (CancellationException | CompletionException e) {
+            abort();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                    // 下游已经退出
+                }
+            }
+            try {
+                Files.deleteIfExists(spoolFile);
+            } catch (IOException ignored) {
+                // 临时目录在任务结束时整个删除
+            }
+        }
+    }
+
+    // 送出缓冲文件中的全部数据
+    private static void drain(FileChannel spool, OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        long size = spool.size();
+        for (long position = 0; position < size; ) {
+            position += spool.transferTo(position, size - position, target);
+        }
+        out.flush();
+    }
+}
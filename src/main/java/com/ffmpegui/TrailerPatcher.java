@@ -0,0 +1,117 @@
+package com.ffmpegui;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.BiConsumer;
+
+/**
+ * @description: 去未完待续的局部处理
+ * 只有最后几秒需要涂抹时，从结尾处理开始前的最后一个关键帧切开：前面的视频直接流复制（经管道送给合并命令，不写临时文件），
+ * 只重新编码关键帧之后的一小段并加上 delogo（沿用原视频的编码器、档次、像素格式和帧率），音频从原文件流复制。
+ * 45 分钟的剧集只需编码十几秒；代价是前面的画面不经过压缩参数处理，保持原样。
+ */
+final class TrailerPatcher {
+    // 时间比较的容差（秒）
+    private static final double EPSILON = 0.001;
+    // 能流复制的部分短于这个时长时整片重新编码，不值得多切一刀
+    private static final double MIN_COPY_SECONDS = 1.0;
+
+    private final CommandExecutor executor;
+    private final ProbeService probes;
+    private final BiConsumer<JobScheduler.Job, String> log;
+
+    TrailerPatcher(CommandExecutor executor, ProbeService probes, BiConsumer<JobScheduler.Job, String> log) {
+        this.executor = executor;
+        this.probes = probes;
+        this.log = log;
+    }
+
+    /**
+     * 重新编码结尾部分并写出 concat 列表（前面部分记为 pipe:0）。
+     *
+     * @param box          未完待续区域，只在最后 lastDuration 秒生效
+     * @param lastDuration 结尾处理时长（秒）
+     * @return 首尾相连的两条命令（流复制前面部分 | 合并输出）；null 表示不适合局部处理（编码格式不支持或找不到合适的关键帧），调用方应整片重新编码
+     */
+    List<List<String>> patch(JobScheduler.Job job, DelogoParams box, double lastDuration, File output,
+                             ScratchManager.Scratch scratch) throws Exception {
+        String input = job.input().getAbsolutePath();
+        MediaInfo info = probes.probe(input);
+        MediaInfo.Stream video = info.video();
+        if (!SmartCutSplicer.supports(video)) {
+            log.accept(job, "局部处理不支持 %s 编码，改为整片重新编码".formatted(video == null ? "无视频" : video.codecName()));
+            return null;
+        }
+        double duration = info.durationSeconds();
+        double trailerStart = Math.max(0, duration - lastDuration);
+        double cut = probes.keyframes(input).atOrBefore(trailerStart + EPSILON);
+        if (Double.isNaN(cut) || cut < MIN_COPY_SECONDS) {
+            log.accept(job, "结尾处理开始前没有合适的关键帧，改为整片重新编码");
+            return null;
+        }
+        log.accept(job, String.format("局部处理：流复制 0 - %.2f 秒，重新编码 %.2f - %.2f 秒",
+                cut, cut, duration));
+
+        // 1. 从关键帧开始重新编码结尾，-ss 在输入端时滤镜的时间从 0 开始，delogo 的起点相应前移
+        File tailFile = scratch.newFile("trailer_", ".ts");
+        List<String> tailCommand = new ArrayList<>();
+        tailCommand.add("ffmpeg");
+        tailCommand.add("-ss");
+        tailCommand.add(seconds(cut));
+        tailCommand.add("-i");
+        tailCommand.add(input);
+        tailCommand.add("-map");
+        tailCommand.add("0:v:0");
+        tailCommand.add("-vf");
+        tailCommand.add("delogo=x=%d:y=%d:w=%d:h=%d:enable='gte(t,%s)'".formatted(
+                box.x(), box.y(), box.width(), box.height(), seconds(trailerStart - cut)));
+        tailCommand.addAll(SmartCutSplicer.encoderArgs(video));
+        tailCommand.add("-avoid_negative_ts");
+        tailCommand.add("make_zero");
+        tailCommand.add("-f");
+        tailCommand.add("mpegts");
+        tailCommand.add("-y");
+        tailCommand.add(tailFile.getAbsolutePath());
+        executor.execute(job, tailCommand);
+        job.setProgress(0.5);
+
+        // 2. concat 列表：前面部分经管道读取，结尾部分读临时文件
+        File listFile = scratch.newFile("trailer_list_", ".txt");
+        try (PrintWriter writer = new PrintWriter(listFile, "UTF-8")) {
+            writer.println("file 'pipe:0'");
+            writer.println("file '" + tailFile.getAbsolutePath().replace("\\", "\\\\") + "'");
+        }
+
+        // 3. 流复制关键帧之前的视频
+        List<String> headCommand = new ArrayList<>();
+        headCommand.add("ffmpeg");
+        headCommand.add("-i");
+        headCommand.add(input);
+        headCommand.add("-t");
+        headCommand.add(seconds(cut));
+        headCommand.add("-map");
+        headCommand.add("0:v:0");
+        headCommand.add("-c");
+        headCommand.add("copy");
+        headCommand.add("-bsf:v");
+        headCommand.add(SmartCutSplicer.annexbFilter(video));
+        headCommand.add("-avoid_negative_ts");
+        headCommand.add("make_zero");
+        headCommand.add("-f");
+        headCommand.add("mpegts");
+        headCommand.add("pipe:1");
+
+        // 4. 拼接视频，音频从原文件流复制
+        List<String> mergeCommand = List.of("ffmpeg", "-f", "concat", "-safe", "0",
+                "-protocol_whitelist", "file,pipe", "-i", listFile.getAbsolutePath(), "-i", input,
+                "-map", "0:v:0", "-map", "1:a?", "-c", "copy", "-map_metadata", "1", "-y", output.getAbsolutePath());
+        return List.of(headCommand, mergeCommand);
+    }
+
+    private static String seconds(double value) {
+        return String.format(Locale.ROOT, "%.6f", value);
+    }
+}
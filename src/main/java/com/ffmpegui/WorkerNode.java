@@ -0,0 +1,215 @@
+package com.ffmpegui;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * @description: 分布式模式的 worker 进程，不使用任何界面组件
+ * 连接到 {@link DistributedCoordinator}，在本机执行分配来的任务并回报日志、进度和结果；
+ * 与协调端断开后会结束手上的任务并自动重连。
+ * <pre>
+ * java -cp ffmpeg-batch-processor-1.0-SNAPSHOT.jar com.ffmpegui.WorkerNode --connect host:9527 [--slots 2] [--name box1]
+ *     [--token 令牌]
+ * </pre>
+ * 令牌也可以用系统属性 ffmpegui.cluster.token 设置，需要与协调端一致。
+ */
+public final class WorkerNode {
+    private static final long RECONNECT_DELAY_MILLIS = 5_000;
+    private static final long PROGRESS_INTERVAL_MILLIS = 2_000;
+
+    private final String host;
+    private final int port;
+    private final String name;
+    private final int slots;
+    private final String token;
+    private final JobScheduler scheduler;
+    private final MediaProcessor mediaProcessor;
+    private final ExecutorService jobExecutor;
+    private final Map<Long, JobScheduler.Job> inflight = new ConcurrentHashMap<>();
+    private volatile BufferedWriter writer;
+
+    WorkerNode(String host, int port, String name, int slots, String token) {
+        this.host = host;
+        this.port = port;
+        this.name = name;
+        this.slots = slots;
+        this.token = token;
+        this.scheduler = new JobScheduler(slots);
+        this.mediaProcessor = new MediaProcessor(scheduler, line -> send(WorkerProtocol.LOG + " " + WorkerProtocol.singleLine(line)));
+        this.jobExecutor = Executors.newFixedThreadPool(slots, runnable -> {
+            Thread thread = new Thread(runnable, "worker-job");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = "localhost";
+        int port = WorkerProtocol.DEFAULT_PORT;
+        int slots = Math.max(1, Runtime.getRuntime().availableProcessors() / 8);
+        String name = java.net.InetAddress.getLocalHost().getHostName() + "-" + ProcessHandle.current().pid();
+        String token = WorkerProtocol.tokenFromSystemProperties();
+
+        for (int i = 0; i < args.length - 1; i += 2) {
+            switch (args[i]) {
+                case "--connect" -> {
+                    String[] hostPort = args[i + 1].split(":");
+                    host = hostPort[0];
+                    if (hostPort.length > 1) {
+                        port = Integer.parseInt(hostPort[1]);
+                    }
+                }
+                case "--slots" -> slots = Integer.parseInt(args[i + 1]);
+                case "--name" -> name = args[i + 1];
+                case "--token" -> token = args[i + 1].trim();
+                default -> {
+                    System.err.println("未知参数: " + args[i]);
+                    System.exit(2);
+                }
+            }
+        }
+
+        WorkerNode worker = new WorkerNode(host, port, name, slots, token);
+        Runtime.getRuntime().addShutdownHook(new Thread(worker.scheduler.processes()::cancelAll, "ffmpeg-shutdown"));
+        MetricsServer.fromSystemProperties(worker.scheduler.metrics(), WorkerNode::log);
+        worker.run();
+    }
+
+    // 连接协调端并处理消息，断线后等待一段时间重连
+    void run() throws InterruptedException {
+        startHeartbeat();
+        while (true) {
+            try (Socket socket = new Socket(host, port)) {
+                log("已连接协调端 " + host + ":" + port);
+                writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+                send(WorkerProtocol.HELLO + " " + slots + " " + WorkerProtocol.encodeToken(token) + " " + name);
+
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        handle(line);
+                    } catch (RuntimeException e) {
+                        // 格式错误或版本不一致的消息只丢弃这一条，不结束 worker
+                        log("忽略无效消息: " + line + "（" + e + "）");
+                    }
+                }
+            } catch (IOException e) {
+                log("与协调端的连接中断: " + e.getMessage());
+            }
+
+            // 协调端会把未完成的任务重新分配，本机上的进程直接结束
+            writer = null;
+            abandonInflight();
+            Thread.sleep(RECONNECT_DELAY_MILLIS);
+        }
+    }
+
+    private void handle(String line) {
+        String[] parts = line.split(" ", 3);
+        switch (parts[0]) {
+            case WorkerProtocol.JOB -> startJob(Long.parseLong(parts[1]), parts.length > 2 ? parts[2] : "");
+            case WorkerProtocol.CANCEL -> scheduler.processes().cancelAll();
+            case WorkerProtocol.PAUSE -> scheduler.processes().pauseAll();
+            case WorkerProtocol.RESUME -> scheduler.processes().resumeAll();
+            default -> log("未知消息: " + line);
+        }
+    }
+
+    private void startJob(long jobId, String payload) {
+        // 上一批被取消后，空闲时清除取消状态再接新任务
+        if (inflight.isEmpty() && scheduler.processes().isCancelled()) {
+            scheduler.processes().reset();
+        }
+
+        // 参数无法解析（如协调端版本更新、有本机不认识的操作）时回报失败，不影响其他任务
+        JobSettings settings;
+        JobScheduler.Job job;
+        try {
+            Properties props = WorkerProtocol.decode(payload);
+            settings = JobSettings.fromProperties(props);
+            job = new JobScheduler.Job(new File(props.getProperty("input")), props.getProperty("output"));
+        } catch (IOException | RuntimeException e) {
+            log("任务 " + jobId + " 的参数无法解析: " + e);
+            send(WorkerProtocol.FAILED + " " + jobId + " " + WorkerProtocol.singleLine("任务参数无法解析: " + e));
+            return;
+        }
+        inflight.put(jobId, job);
+        jobExecutor.execute(() -> {
+            try {
+                mediaProcessor.process(job, settings);
+                send(WorkerProtocol.DONE + " " + jobId);
+            } catch (Exception e) {
+                send(WorkerProtocol.FAILED + " " + jobId + " " + WorkerProtocol.singleLine(e.getMessage()));
+            } finally {
+                inflight.remove(jobId);
+            }
+        });
+    }
+
+    // 结束手上的任务并等它们退出，再清除取消状态
+    private void abandonInflight() throws InterruptedException {
+        if (inflight.isEmpty()) {
+            return;
+        }
+        scheduler.processes().cancelAll();
+        while (!inflight.isEmpty()) {
+            Thread.sleep(100);
+        }
+        scheduler.processes().reset();
+    }
+
+    // 定期发送心跳和各任务的进度
+    private void startHeartbeat() {
+        Thread heartbeat = new Thread(() -> {
+            long lastPing = 0;
+            while (true) {
+                try {
+                    Thread.sleep(PROGRESS_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                inflight.forEach((jobId, job) -> send(WorkerProtocol.PROGRESS + " " + jobId + " " + job.progress()));
+                long now = System.currentTimeMillis();
+                if (now - lastPing >= WorkerProtocol.PING_INTERVAL_MILLIS) {
+                    send(WorkerProtocol.PING);
+                    lastPing = now;
+                }
+            }
+        }, "worker-heartbeat");
+        heartbeat.setDaemon(true);
+        heartbeat.start();
+    }
+
+    private static void log(String message) {
+        System.out.println(message);
+    }
+
+    private void send(String message) {
+        BufferedWriter out = writer;
+        if (out == null) {
+            return;
+        }
+        synchronized (this) {
+            try {
+                out.write(message);
+                out.newLine();
+                out.flush();
+            } catch (IOException e) {
+                // 连接已断开，读循环会负责重连
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.ffmpegui;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Properties;
+
+/**
+ * @description: 协调端与 worker 之间的文本协议，每行一条消息：类型 + 空格 + 内容
+ * <pre>
+ * worker → 协调端: HELLO 槽位数 令牌 名称 | PING | LOG 文本 | PROGRESS 任务号 进度 | DONE 任务号 | FAILED 任务号 原因
+ * 协调端 → worker: JOB 任务号 参数(Base64) | CANCEL | PAUSE | RESUME
+ * </pre>
+ * 任务参数是 {@link JobSettings#toProperties()} 加上输入输出路径，输入输出都在共享目录中，
+ * 所有节点需要以相同的路径访问该目录。
+ * 令牌是协调端和 worker 共享的密钥（系统属性 ffmpegui.cluster.token），HELLO 中以 Base64 发送，未设置时为 "-"。
+ */
+final class WorkerProtocol {
+    static final int DEFAULT_PORT = 9527;
+    static final String TOKEN_PROPERTY = "ffmpegui.cluster.token";
+    private static final String NO_TOKEN = "-";
+    static final int PING_INTERVAL_MILLIS = 10_000;
+    static final int READ_TIMEOUT_MILLIS = 30_000;
+
+    static final String HELLO = "HELLO";
+    static final String PING = "PING";
+    static final String LOG = "LOG";
+    static final String PROGRESS = "PROGRESS";
+    static final String DONE = "DONE";
+    static final String FAILED = "FAILED";
+    static final String JOB = "JOB";
+    static final String CANCEL = "CANCEL";
+    static final String PAUSE = "PAUSE";
+    static final String RESUME = "RESUME";
+
+    private WorkerProtocol() {
+    }
+
+    static String encode(Properties props) {
+        StringWriter writer = new StringWriter();
+        try {
+            props.store(writer, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getEncoder().encodeToString(writer.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Properties decode(String text) throws IOException {
+        Properties props = new Properties();
+        props.load(new StringReader(new String(Base64.getDecoder().decode(text), StandardCharsets.UTF_8)));
+        return props;
+    }
+
+    // 未设置时为空字符串
+    static String tokenFromSystemProperties() {
+        return System.getProperty(TOKEN_PROPERTY, "").trim();
+    }
+
+    static String encodeToken(String token) {
+        return token.isEmpty() ? NO_TOKEN : Base64.getEncoder().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // 比较 HELLO 中的令牌，用定长比较避免按耗时猜测令牌
+    static boolean tokenMatches(String expected, String encoded) {
+        return MessageDigest.isEqual(encodeToken(expected).getBytes(StandardCharsets.UTF_8),
+                encoded.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // 消息按行分隔，内容中的换行替换为空格
+    static String singleLine(String text) {
+        return text == null ? "" : text.replace('\r', ' ').replace('\n', ' ');
+    }
+}